@@ -0,0 +1,69 @@
+package org.spicefactory.lib.command.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spicefactory.lib.command.data.DefaultCommandData;
+
+/**
+ * Lookups in a <code>DefaultCommandData</code> holding N values.
+ * <p>
+ * The first value added is the only <code>String</code>, so that looking it up scans the whole instance, while the last value added is found
+ * immediately.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDataBenchmark {
+
+	@Param({"1", "10", "100", "1000"})
+	public int size;
+
+	private DefaultCommandData data;
+
+	@Setup
+	public void fill() {
+		data = new DefaultCommandData(new DefaultCommandData());
+		data.addValue("first");
+		for (int i = 1; i < size; i++) {
+			data.addValue(Integer.valueOf(i));
+		}
+	}
+
+	@Benchmark
+	public Object lookupLast() {
+		return data.getObject();
+	}
+
+	@Benchmark
+	public String lookupFirst() {
+		return data.getObject(String.class);
+	}
+
+	@Benchmark
+	public Long lookupMissing() {
+		return data.getObject(Long.class);
+	}
+
+	@Benchmark
+	public List<Integer> lookupAll() {
+		return data.getObjects(Integer.class);
+	}
+
+}
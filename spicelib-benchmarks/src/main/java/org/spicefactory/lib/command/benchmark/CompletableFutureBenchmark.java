@@ -0,0 +1,65 @@
+package org.spicefactory.lib.command.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Baseline running the same work as <code>SequenceBenchmark</code> and <code>ParallelBenchmark</code> through plain
+ * <code>CompletableFuture</code> chains.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompletableFutureBenchmark {
+
+	private static final Object RESULT = new Object();
+	private static final Function<Object, Object> STEP = new Function<Object, Object>() {
+		@Override
+		public Object apply(Object value) {
+			return RESULT;
+		}
+	};
+
+	@Param({"1", "10", "100"})
+	public int size;
+
+	@Benchmark
+	public Object sequence() {
+		CompletableFuture<Object> future = CompletableFuture.completedFuture(null);
+		for (int i = 0; i < size; i++) {
+			future = future.thenApply(STEP);
+		}
+		return future.join();
+	}
+
+	@Benchmark
+	public Object deferredFanOut() {
+		@SuppressWarnings("unchecked")
+		CompletableFuture<Object>[] futures = new CompletableFuture[size];
+		for (int i = 0; i < size; i++) {
+			futures[i] = new CompletableFuture<Object>();
+		}
+		CompletableFuture<Void> all = CompletableFuture.allOf(futures);
+		for (CompletableFuture<Object> future : futures) {
+			future.complete(RESULT);
+		}
+		return all.join();
+	}
+
+}
@@ -0,0 +1,30 @@
+package org.spicefactory.lib.command.benchmark;
+
+import org.spicefactory.lib.command.base.AbstractCancellableCommand;
+
+/**
+ * An asynchronous command that stays active until <code>finish</code> is invoked.
+ * <p>
+ * Used to keep many children active at the same time in an executor.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class DeferredCommand extends AbstractCancellableCommand {
+
+	private static final Object RESULT = new Object();
+
+	public void finish() {
+		complete(RESULT);
+	}
+
+	@Override
+	protected void doExecute() {
+		// Completed through finish().
+	}
+
+	@Override
+	protected void doCancel() {
+		// Nothing to cancel.
+	}
+
+}
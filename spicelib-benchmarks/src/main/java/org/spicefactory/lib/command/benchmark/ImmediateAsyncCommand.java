@@ -0,0 +1,18 @@
+package org.spicefactory.lib.command.benchmark;
+
+import org.spicefactory.lib.command.base.AbstractAsyncCommand;
+
+/**
+ * An asynchronous command completing from within <code>doExecute</code>.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class ImmediateAsyncCommand extends AbstractAsyncCommand {
+
+	private static final Object RESULT = new Object();
+
+	@Override
+	protected void doExecute() {
+		complete(RESULT);
+	}
+
+}
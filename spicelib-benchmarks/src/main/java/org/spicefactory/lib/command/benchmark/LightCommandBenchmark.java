@@ -0,0 +1,48 @@
+package org.spicefactory.lib.command.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spicefactory.lib.command.adapter.CommandAdapters;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.light.LightCommandAdapterFactory;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * Light commands executed through the <code>LightCommandAdapterFactory</code>, compared with a direct <code>AbstractAsyncCommand</code>
+ * subclass doing the same work.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LightCommandBenchmark {
+
+	@Setup
+	public void registerAdapter() {
+		CommandAdapters.addFactory(new LightCommandAdapterFactory());
+	}
+
+	@Benchmark
+	public CommandProxy lightCommand() {
+		return Commands.wrap(new LightNoOpCommand()).execute();
+	}
+
+	@Benchmark
+	public CommandProxy directCommand() {
+		return Commands.wrap(new ImmediateAsyncCommand()).execute();
+	}
+
+}
@@ -0,0 +1,15 @@
+package org.spicefactory.lib.command.benchmark;
+
+/**
+ * A light command, executed through the <code>LightCommandAdapterFactory</code>.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class LightNoOpCommand {
+
+	private static final Object RESULT = new Object();
+
+	public Object execute() {
+		return RESULT;
+	}
+
+}
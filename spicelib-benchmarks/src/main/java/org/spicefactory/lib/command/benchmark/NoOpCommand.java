@@ -0,0 +1,18 @@
+package org.spicefactory.lib.command.benchmark;
+
+import org.spicefactory.lib.command.Command;
+
+/**
+ * A synchronous command doing nothing but counting its executions.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class NoOpCommand implements Command {
+
+	public int executions;
+
+	@Override
+	public void execute() {
+		executions++;
+	}
+
+}
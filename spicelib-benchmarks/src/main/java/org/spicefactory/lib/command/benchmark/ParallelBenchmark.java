@@ -0,0 +1,61 @@
+package org.spicefactory.lib.command.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spicefactory.lib.command.builder.CommandGroupBuilder;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * Fan-out of N children with <code>Commands.inParallel()</code>.
+ * <p>
+ * The immediate variant completes every child while it is started, the deferred variant keeps all children active before completing them,
+ * which exercises the bookkeeping of active children in the executor.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelBenchmark {
+
+	@Param({"10", "100", "1000"})
+	public int size;
+
+	@Benchmark
+	public CommandProxy immediateFanOut() {
+		CommandGroupBuilder builder = Commands.inParallel();
+		for (int i = 0; i < size; i++) {
+			builder.add(new ImmediateAsyncCommand());
+		}
+		return builder.execute();
+	}
+
+	@Benchmark
+	public CommandProxy deferredFanOut() {
+		DeferredCommand[] commands = new DeferredCommand[size];
+		CommandGroupBuilder builder = Commands.inParallel();
+		for (int i = 0; i < size; i++) {
+			builder.add(commands[i] = new DeferredCommand());
+		}
+		CommandProxy proxy = builder.execute();
+		for (DeferredCommand command : commands) {
+			command.finish();
+		}
+		return proxy;
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.spicefactory.lib.command.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
+
+/**
+ * The cost of a <code>DefaultCommandProxy</code> around an asynchronous command, with and without a timeout.
+ * <p>
+ * The target completes after the proxy has been started, so that the timeout is actually scheduled and cancelled.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyBenchmark {
+
+	@Benchmark
+	public DefaultCommandProxy withoutTimeout() {
+		return execute(0);
+	}
+
+	@Benchmark
+	public DefaultCommandProxy withTimeout() {
+		return execute(60000);
+	}
+
+	private DefaultCommandProxy execute(long timeout) {
+		DeferredCommand target = new DeferredCommand();
+		DefaultCommandProxy proxy = new DefaultCommandProxy();
+		proxy.setTarget(target);
+		proxy.setTimeout(timeout);
+		proxy.execute();
+		target.finish();
+		return proxy;
+	}
+
+}
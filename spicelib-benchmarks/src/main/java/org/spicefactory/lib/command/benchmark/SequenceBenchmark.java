@@ -0,0 +1,80 @@
+package org.spicefactory.lib.command.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spicefactory.lib.command.builder.CommandGroupBuilder;
+import org.spicefactory.lib.command.builder.CommandPlan;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * Sequences of N commands built with <code>Commands.asSequence()</code>, including the cost of the builder and the command instances, compared
+ * to the same sequence compiled once into a <code>CommandPlan</code>.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceBenchmark {
+
+	@Param({"1", "10", "100"})
+	public int size;
+
+	private CommandPlan plan;
+
+	@Setup
+	public void compile() {
+		CommandGroupBuilder builder = Commands.asSequence();
+		for (int i = 0; i < size; i++) {
+			builder.create(NoOpCommand.class);
+		}
+		plan = builder.compile();
+	}
+
+	@Benchmark
+	public CommandProxy synchronousSequence() {
+		CommandGroupBuilder builder = Commands.asSequence();
+		for (int i = 0; i < size; i++) {
+			builder.add(new NoOpCommand());
+		}
+		return builder.execute();
+	}
+
+	@Benchmark
+	public CommandProxy asynchronousSequence() {
+		CommandGroupBuilder builder = Commands.asSequence();
+		for (int i = 0; i < size; i++) {
+			builder.add(new ImmediateAsyncCommand());
+		}
+		return builder.execute();
+	}
+
+	@Benchmark
+	public CommandProxy typedSequence() {
+		CommandGroupBuilder builder = Commands.asSequence();
+		for (int i = 0; i < size; i++) {
+			builder.create(NoOpCommand.class);
+		}
+		return builder.execute();
+	}
+
+	@Benchmark
+	public CommandProxy compiledSequence() {
+		return plan.execute();
+	}
+
+}
@@ -7,9 +7,23 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 
+/**
+ * Marks a command whose execution runs in the background.
+ * <p>
+ * The execution runs on the pool registered with <code>CommandPools</code> under the name given by <code>pool</code>, or on the default
+ * executor of the adapter factory when no pool is named. Giving slow IO commands and CPU bound commands their own pools keeps one kind of work
+ * from starving the other.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
 @Documented
 @Target(TYPE)
 @Retention(RUNTIME)
 public @interface Async {
 
+	/**
+	 * The name of the pool running the command, empty for the default executor.
+	 */
+	String pool() default "";
+
 }
@@ -1,10 +1,11 @@
 package org.spicefactory.lib.command.base;
 
 import java.text.MessageFormat;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.spicefactory.lib.command.AsyncCommand;
 import org.spicefactory.lib.command.CancellableCommand;
@@ -13,6 +14,7 @@ import org.spicefactory.lib.command.CommandExecutor;
 import org.spicefactory.lib.command.CommandResult;
 import org.spicefactory.lib.command.CommandUtil;
 import org.spicefactory.lib.command.SuspendableCommand;
+import org.spicefactory.lib.command.adapter.CommandAdapter;
 import org.spicefactory.lib.command.data.CommandData;
 import org.spicefactory.lib.command.data.DefaultCommandData;
 import org.spicefactory.lib.command.events.CommandEvent;
@@ -20,6 +22,9 @@ import org.spicefactory.lib.command.events.CommandException;
 import org.spicefactory.lib.command.events.CommandResultEvent;
 import org.spicefactory.lib.command.lifecycle.CommandLifecycle;
 import org.spicefactory.lib.command.lifecycle.DefaultCommandLifecycle;
+import org.spicefactory.lib.command.trace.CommandSpan;
+import org.spicefactory.lib.command.trace.CommandTracer;
+import org.spicefactory.lib.command.trace.CommandTracers;
 import org.spicefactory.lib.event.EventListener;
 
 /**
@@ -28,6 +33,10 @@ import org.spicefactory.lib.event.EventListener;
  * It knows how to execute other commands and deal with their events. Subclasses are expected to call the protected <code>executeCommand</code>
  * method to start a command and override the protected template method <code>commandComplete</code> for dealing with the result.
  * </p>
+ * <p>
+ * While the executor is suspended, the results of child commands that complete anyway are buffered and passed to <code>commandComplete</code>
+ * in completion order once the executor gets resumed, so that a subclass never starts a new command while suspended.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
  */
 public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand implements CommandExecutor {
@@ -38,12 +47,27 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 	private DefaultCommandData data;
 	private final List<Object> values = new LinkedList<Object>();
 
-	/** The active commands list. */
-	private final List<Command> activeCommands = new LinkedList<Command>();
+	/** The active commands, indexed by identity, each one also linked in start order from <code>firstActive</code>. */
+	private final Map<Command, ActiveCommand> activeCommands = new IdentityHashMap<Command, ActiveCommand>();
+	private ActiveCommand firstActive;
+	private ActiveCommand lastActive;
+
+	/** Number of active commands that can never be cancelled or suspended. */
+	private int nonCancellableCommands;
+	private int nonSuspendableCommands;
+
+	/** The active executors whose capabilities depend on their own active commands, linked from <code>firstExecutor</code>. */
+	private ActiveCommand firstExecutor;
+
+	/** Child commands that completed while this executor was suspended, in completion order. */
+	private final LinkedList<ActiveCommand> buffered = new LinkedList<ActiveCommand>();
 
 	private final boolean processExceptions;
 	private final boolean processCancellations;
 
+	/** The trace span of this executor, set by the parent executor or opened by this executor itself when executed at the top level. */
+	private CommandSpan traceSpan;
+
 	/**
 	 * Creates a new instance.
 	 */
@@ -80,6 +104,14 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 		}
 	}
 
+	@Override
+	public void execute() {
+		if (!isActive() && traceSpan == null) {
+			startRootTrace();
+		}
+		super.execute();
+	}
+
 	@Override
 	public void suspend() {
 		if (!isSuspendable()) {
@@ -98,8 +130,11 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 
 	@Override
 	public boolean isCancellable() {
-		for (Command c : activeCommands) {
-			if (!CommandUtil.isCancellable(c)) {
+		if (nonCancellableCommands > 0) {
+			return false;
+		}
+		for (ActiveCommand a = firstExecutor; a != null; a = a.nextExecutor) {
+			if (!CommandUtil.isCancellable(a.command)) {
 				return false;
 			}
 		}
@@ -108,8 +143,14 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 
 	@Override
 	public boolean isSuspendable() {
-		for (Command c : activeCommands) {
-			if (!CommandUtil.isSuspendable(c)) {
+		if (isPausable()) {
+			return true;
+		}
+		if (nonSuspendableCommands > 0) {
+			return false;
+		}
+		for (ActiveCommand a = firstExecutor; a != null; a = a.nextExecutor) {
+			if (!CommandUtil.isSuspendable(a.command)) {
 				return false;
 			}
 		}
@@ -123,6 +164,57 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 		addValues();
 	}
 
+	/**
+	 * Whether this executor can be suspended while it executes commands that cannot be suspended.
+	 * <p>
+	 * Such commands keep running, their completion is buffered until this executor gets resumed. Groups that decide on the next command to
+	 * execute from <code>commandComplete</code> can thereby be paused as a whole. Default implementation returns false, so that the
+	 * capabilities of this executor are those of its active commands.
+	 * </p>
+	 * @return true if this executor can always be suspended
+	 */
+	protected boolean isPausable() {
+		return false;
+	}
+
+	/**
+	 * Whether the life-cycle hook gets invoked for the specified child command.
+	 * <p>
+	 * Default implementation returns true. An executor wrapping some of its children into commands that report the execution of the wrapped
+	 * child to the life-cycle themselves returns false for these wrappers, so that each execution is reported only once.
+	 * </p>
+	 * @param command a child command of this executor
+	 * @return true if this executor reports the execution of the command to the life-cycle
+	 */
+	protected boolean isReported(Command command) {
+		return true;
+	}
+
+	/**
+	 * Whether the result of the specified child command gets added to the data of this executor.
+	 * <p>
+	 * Default implementation returns true, so that the commands executed later can use the results of the previous ones. An executor passing
+	 * results on itself, without exposing them to its other children, returns false.
+	 * </p>
+	 * @param command a child command of this executor
+	 * @return true if the result of the command gets added to the data of this executor
+	 */
+	protected boolean isResultAdded(Command command) {
+		return true;
+	}
+
+	/**
+	 * The executor processing the completions of the child commands.
+	 * <p>
+	 * Default implementation returns null, the completions are processed on the thread delivering them. An executor starting its children from
+	 * other threads than the one executing it returns an executor serializing the completions with its own actions.
+	 * </p>
+	 * @return the executor processing the completions of the child commands, null to process them on the delivering thread
+	 */
+	protected Executor getCompletionExecutor() {
+		return null;
+	}
+
 	/**
 	 * Creates a new instance of the life-cycle hook.
 	 * <p>
@@ -178,6 +270,28 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 		return new DefaultCommandData();
 	}
 
+	private void startRootTrace() {
+		CommandTracer tracer = CommandTracers.getTracer();
+		if (tracer != null) {
+			// The sampling decision is taken here once, children inherit it through the span of this executor.
+			traceSpan = tracer.start(null, null, this);
+			addEventListener(CommandResultEvent.COMPLETE, rootTrace);
+			addEventListener(CommandResultEvent.EXCEPTION, rootTrace);
+			addEventListener(CommandEvent.CANCEL, rootTrace);
+		}
+	}
+
+	private static AbstractCommandExecutor executorOf(Command command) {
+		if (command instanceof AbstractCommandExecutor) {
+			return (AbstractCommandExecutor) command;
+		}
+		// Adapters running an executor elsewhere, like forked commands, keep it in the same trace.
+		if (command instanceof CommandAdapter && ((CommandAdapter) command).getTarget() instanceof AbstractCommandExecutor) {
+			return (AbstractCommandExecutor) ((CommandAdapter) command).getTarget();
+		}
+		return null;
+	}
+
 	private void addValues() {
 		for (Object value : values) {
 			data.addValue(value);
@@ -196,29 +310,53 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 
 	@Override
 	protected void doSuspend() {
-		for (Command c : activeCommands) {
-			if (!((SuspendableCommand) c).isSuspended())
-				((SuspendableCommand) c).suspend();
+		for (ActiveCommand a = firstActive; a != null; a = a.next) {
+			if (a.pending == null && CommandUtil.isSuspendable(a.command) && !((SuspendableCommand) a.command).isSuspended())
+				((SuspendableCommand) a.command).suspend();
 		}
 	}
 
 	@Override
 	protected void doResume() {
-		for (Command c : activeCommands) {
-			if (((SuspendableCommand) c).isSuspended())
-				((SuspendableCommand) c).resume();
+		// Completions first, in the order they happened, then the commands that were suspended along with this executor.
+		while (!buffered.isEmpty() && isActive() && !isSuspended()) {
+			ActiveCommand a = buffered.removeFirst();
+			CommandEvent event = a.pending;
+			a.pending = null;
+			a.handle(event);
+		}
+		ActiveCommand a = firstActive;
+		while (a != null && !isSuspended()) {
+			ActiveCommand next = a.next;
+			if (a.command instanceof SuspendableCommand && ((SuspendableCommand) a.command).isSuspended())
+				((SuspendableCommand) a.command).resume();
+			a = next;
 		}
 	}
 
 	@Override
 	protected void doCancel() {
-		for (Command c : activeCommands) {
-			removeListeners((AsyncCommand) c);
-			if (CommandUtil.isCancellable(c)) {
-				((CancellableCommand) c).cancel();
+		ActiveCommand a = firstActive;
+		firstActive = lastActive = firstExecutor = null;
+		activeCommands.clear();
+		nonCancellableCommands = nonSuspendableCommands = 0;
+		buffered.clear();
+		while (a != null) {
+			ActiveCommand next = a.next;
+			boolean completed = a.pending != null;
+			a.previous = a.next = a.previousExecutor = a.nextExecutor = null;
+			a.linked = false;
+			a.pending = null;
+			a.removeListeners();
+			// A command that completed while suspended has nothing left to cancel, its result never got processed.
+			if (!completed && CommandUtil.isCancellable(a.command)) {
+				((CancellableCommand) a.command).cancel();
 			}
+			CommandResult result = DefaultCommandResult.forCancellation(a.command);
+			reportCompletion(a.command, result);
+			a.endTrace(result);
+			a = next;
 		}
-		activeCommands.clear();
 	}
 
 	/**
@@ -230,13 +368,13 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 	 * @param com the command to execute
 	 */
 	protected void executeCommand(Command command) {
-		if (activeCommands.contains(command))
+		if (activeCommands.containsKey(command))
 			return;
 
-		activeCommands.add(command);
+		ActiveCommand active = addActiveCommand(command);
 
 		if (command instanceof AsyncCommand) {
-			addListeners((AsyncCommand) command);
+			active.addListeners();
 			if (((AsyncCommand) command).isActive())
 				return;
 		}
@@ -246,20 +384,29 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 		}
 
 		try {
-			getLifecycle().beforeExecution(command, getData());
+			if (isReported(command)) {
+				getLifecycle().beforeExecution(command, getData());
+			}
 			logger.debug("Executing command '{}'.", command);
 			command.execute();
 		}
 		catch (Exception e) {
-			activeCommands.remove(command);
+			if (active.linked) {
+				CommandResult result = DefaultCommandResult.forException(command, e);
+				active.removeListeners();
+				removeActiveCommand(active);
+				reportCompletion(command, result);
+				active.endTrace(result);
+			}
 			commandException(command, e);
 			return;
 		}
 
 		if (!(command instanceof AsyncCommand)) {
-			activeCommands.remove(command);
+			removeActiveCommand(active);
 			CommandResult result = DefaultCommandResult.forCompletion(command, null);
-			getLifecycle().afterCompletion(command, result);
+			reportCompletion(command, result);
+			active.endTrace(result);
 			commandComplete(result);
 		}
 	}
@@ -280,47 +427,92 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 	// Internal implementation.
 	/////////////////////////////////////////////////////////////////////////////
 
-	@SuppressWarnings("rawtypes")
-	private final Map<AsyncCommand, EventListener[]> listeners = new HashMap<AsyncCommand, EventListener[]>();
-
-	@SuppressWarnings({"rawtypes", "unchecked"})
-	private void addListeners(AsyncCommand command) {
-		EventListener[] listenersGroup = new EventListener[3];
-		command.addEventListener(CommandResultEvent.COMPLETE, listenersGroup[0] = new CommandCompleteHandler());
-		command.addEventListener(CommandResultEvent.EXCEPTION, listenersGroup[1] = new CommandExceptionHandler());
-		command.addEventListener(CommandEvent.CANCEL, listenersGroup[2] = new CommandCancelledHandler());
-
-		listeners.put(command, listenersGroup);
+	private ActiveCommand addActiveCommand(Command command) {
+		ActiveCommand active = new ActiveCommand(command);
+		activeCommands.put(command, active);
+		active.linked = true;
+		active.previous = lastActive;
+		if (lastActive != null) {
+			lastActive.next = active;
+		} else {
+			firstActive = active;
+		}
+		lastActive = active;
+		if (active.executor) {
+			active.nextExecutor = firstExecutor;
+			if (firstExecutor != null) {
+				firstExecutor.previousExecutor = active;
+			}
+			firstExecutor = active;
+		} else {
+			if (!active.cancellable)
+				nonCancellableCommands++;
+			if (!active.suspendable)
+				nonSuspendableCommands++;
+		}
+		active.startTrace();
+		return active;
 	}
 
-	@SuppressWarnings({"rawtypes", "unchecked"})
-	private void removeListeners(AsyncCommand command) {
-		EventListener[] listenersGroup = listeners.get(command);
-		command.removeEventListener(CommandResultEvent.COMPLETE, listenersGroup[0]);
-		command.removeEventListener(CommandResultEvent.EXCEPTION, listenersGroup[1]);
-		command.removeEventListener(CommandEvent.CANCEL, listenersGroup[2]);
+	private void removeActiveCommand(ActiveCommand active) {
+		if (!active.linked) {
+			return;
+		}
+		active.linked = false;
+		activeCommands.remove(active.command);
+		if (active.previous != null) {
+			active.previous.next = active.next;
+		} else {
+			firstActive = active.next;
+		}
+		if (active.next != null) {
+			active.next.previous = active.previous;
+		} else {
+			lastActive = active.previous;
+		}
+		active.previous = active.next = null;
+		if (active.executor) {
+			if (active.previousExecutor != null) {
+				active.previousExecutor.nextExecutor = active.nextExecutor;
+			} else {
+				firstExecutor = active.nextExecutor;
+			}
+			if (active.nextExecutor != null) {
+				active.nextExecutor.previousExecutor = active.previousExecutor;
+			}
+			active.previousExecutor = active.nextExecutor = null;
+		} else {
+			if (!active.cancellable)
+				nonCancellableCommands--;
+			if (!active.suspendable)
+				nonSuspendableCommands--;
+		}
 	}
 
-	private void removeActiveCommand(AsyncCommand command, CommandResult result) {
-		if (isSuspended()) {
-			throw new IllegalStateException(MessageFormat.format("Child command {0} completed while executor was suspended.", command));
+	private void reportCompletion(Command command, CommandResult result) {
+		if (isReported(command)) {
+			getLifecycle().afterCompletion(command, result);
 		}
-		removeListeners(command);
-		activeCommands.remove(command);
-		lifecycle.afterCompletion(command, result);
 	}
 
-	private void commandCompleteHandler(CommandResultEvent event) {
-		AsyncCommand command = (AsyncCommand) event.getSource();
-		removeActiveCommand(command, event);
-		getData().addValue(event.getValue());
+	private void removeActiveCommand(ActiveCommand active, CommandResult result) {
+		active.removeListeners();
+		removeActiveCommand(active);
+		reportCompletion(active.command, result);
+		active.endTrace(result);
+	}
+
+	private void commandCompleteHandler(ActiveCommand active, CommandResultEvent event) {
+		removeActiveCommand(active, event);
+		if (isResultAdded(active.command)) {
+			getData().addValue(event.getValue());
+		}
 		commandComplete(event);
 	}
 
-	private void commandExceptionHandler(CommandResultEvent event) {
-		AsyncCommand command = (AsyncCommand) event.getSource();
-		removeActiveCommand(command, event);
-		commandException(command, event.getValue());
+	private void commandExceptionHandler(ActiveCommand active, CommandResultEvent event) {
+		removeActiveCommand(active, event);
+		commandException(active.command, event.getValue());
 	}
 
 	private void commandException(Command command, Object cause) {
@@ -332,10 +524,9 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 		}
 	}
 
-	private void commandCancelledHandler(CommandEvent event) {
-		AsyncCommand command = (AsyncCommand) event.getSource();
-		CommandResult result = DefaultCommandResult.forCancellation(command);
-		removeActiveCommand(command, result);
+	private void commandCancelledHandler(ActiveCommand active) {
+		CommandResult result = DefaultCommandResult.forCancellation(active.command);
+		removeActiveCommand(active, result);
 		if (processCancellations) {
 			commandComplete(result);
 		} else {
@@ -343,32 +534,140 @@ public abstract class AbstractCommandExecutor extends AbstractSuspendableCommand
 		}
 	}
 
-	// Java 1.8 forward compatibility.
-	private class CommandCompleteHandler implements EventListener<CommandResultEvent> {
-
+	// Java 1.6 legacy for Java 1.8.
+	private final EventListener<CommandEvent> rootTrace = new EventListener<CommandEvent>() {
 		@Override
-		public void process(CommandResultEvent event) {
-			commandCompleteHandler(event);
+		public void process(CommandEvent event) {
+			removeEventListener(CommandResultEvent.COMPLETE, this);
+			removeEventListener(CommandResultEvent.EXCEPTION, this);
+			removeEventListener(CommandEvent.CANCEL, this);
+			CommandSpan span = traceSpan;
+			traceSpan = null;
+			if (span == null) {
+				return;
+			}
+			if (event.getID() == CommandResultEvent.COMPLETE) {
+				span.end(DefaultCommandResult.forCompletion(AbstractCommandExecutor.this, ((CommandResultEvent) event).getValue()));
+			} else if (event.getID() == CommandResultEvent.EXCEPTION) {
+				span.end(DefaultCommandResult.forException(AbstractCommandExecutor.this, ((CommandResultEvent) event).getValue()));
+			} else {
+				span.end(DefaultCommandResult.forCancellation(AbstractCommandExecutor.this));
+			}
 		}
+	};
 
-	}
+	/**
+	 * The bookkeeping slot of a single active command.
+	 * <p>
+	 * A slot is linked into the list of active commands of its executor and also acts as the only event listener registered on the command, so
+	 * that starting a child command allocates a single object.
+	 * </p>
+	 */
+	private final class ActiveCommand implements EventListener<CommandEvent> {
+
+		private final Command command;
+		/** Whether the capabilities of the command depend on its own state. */
+		private final boolean executor;
+		private final boolean cancellable;
+		private final boolean suspendable;
+
+		private boolean linked;
+		private ActiveCommand previous;
+		private ActiveCommand next;
+		private ActiveCommand previousExecutor;
+		private ActiveCommand nextExecutor;
+		private CommandSpan span;
+		/** The completion event received while the executor was suspended. */
+		private CommandEvent pending;
+
+		ActiveCommand(Command command) {
+			this.command = command;
+			this.executor = command instanceof CommandExecutor && !(command instanceof CommandAdapter);
+			this.cancellable = CommandUtil.isCancellable(command);
+			this.suspendable = CommandUtil.isSuspendable(command);
+		}
 
-	// Java 1.8 forward compatibility.
-	private class CommandExceptionHandler implements EventListener<CommandResultEvent> {
+		void addListeners() {
+			AsyncCommand c = (AsyncCommand) command;
+			c.addEventListener(CommandResultEvent.COMPLETE, this);
+			c.addEventListener(CommandResultEvent.EXCEPTION, this);
+			c.addEventListener(CommandEvent.CANCEL, this);
+		}
 
-		@Override
-		public void process(CommandResultEvent event) {
-			commandExceptionHandler(event);
+		void removeListeners() {
+			if (command instanceof AsyncCommand) {
+				AsyncCommand c = (AsyncCommand) command;
+				c.removeEventListener(CommandResultEvent.COMPLETE, this);
+				c.removeEventListener(CommandResultEvent.EXCEPTION, this);
+				c.removeEventListener(CommandEvent.CANCEL, this);
+			}
 		}
 
-	}
+		void startTrace() {
+			CommandTracer tracer = CommandTracers.getTracer();
+			if (tracer != null) {
+				span = tracer.start(traceSpan, AbstractCommandExecutor.this, command);
+				AbstractCommandExecutor child = executorOf(command);
+				if (child != null) {
+					child.traceSpan = span;
+				}
+			}
+		}
 
-	// Java 1.8 forward compatibility.
-	private class CommandCancelledHandler implements EventListener<CommandEvent> {
+		void endTrace(CommandResult result) {
+			if (span != null) {
+				span.end(result);
+				span = null;
+				AbstractCommandExecutor child = executorOf(command);
+				if (child != null) {
+					child.traceSpan = null;
+				}
+			}
+		}
 
 		@Override
-		public void process(CommandEvent event) {
-			commandCancelledHandler(event);
+		public void process(final CommandEvent event) {
+			Executor completionExecutor = getCompletionExecutor();
+			if (completionExecutor != null && isCompletion(event)) {
+				// Java 1.8 forward compatibility.
+				completionExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						// The command may have been cancelled along with this executor in the meantime.
+						if (linked) {
+							handle(event);
+						}
+					}
+				});
+				return;
+			}
+			handle(event);
+		}
+
+		private void handle(CommandEvent event) {
+			if (isSuspended() && isCompletion(event)) {
+				pending = event;
+				buffered.add(this);
+				return;
+			}
+			switch (event.getID()) {
+				case CommandResultEvent.COMPLETE:
+					commandCompleteHandler(this, (CommandResultEvent) event);
+					break;
+				case CommandResultEvent.EXCEPTION:
+					commandExceptionHandler(this, (CommandResultEvent) event);
+					break;
+				case CommandEvent.CANCEL:
+					commandCancelledHandler(this);
+					break;
+				default:
+					break;
+			}
+		}
+
+		private boolean isCompletion(CommandEvent event) {
+			return event.getID() == CommandResultEvent.COMPLETE || event.getID() == CommandResultEvent.EXCEPTION
+					|| event.getID() == CommandEvent.CANCEL;
 		}
 
 	}
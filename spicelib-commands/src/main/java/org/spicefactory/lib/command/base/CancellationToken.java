@@ -0,0 +1,121 @@
+package org.spicefactory.lib.command.base;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Lets a long running command find out that its result is no longer wanted.
+ * <p>
+ * A light command receives a token by declaring it as a parameter of its <code>execute</code> method, like a <code>Callback</code>. The token is
+ * signalled when the command gets cancelled, which includes the cancellation by a parent group that failed or by a proxy that timed out, and
+ * when the deadline passed down by an enclosing proxy expired. The command is expected to check it regularly and return early.
+ * </p>
+ * <p>
+ * A command running on a pool thread can additionally ask for its thread to be interrupted on cancellation, so that blocking calls return as
+ * well.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public final class CancellationToken {
+
+	private final Deadline deadline;
+	private volatile boolean cancelled;
+	private boolean interruptible;
+	/** The thread executing the command, while it executes. */
+	private Thread thread;
+	private boolean interrupted;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a token that is only signalled by cancellation.
+	 */
+	public CancellationToken() {
+		this(null);
+	}
+
+	/**
+	 * Creates a token also signalled when the specified deadline expires.
+	 * @param deadline the deadline of the command, may be null
+	 */
+	public CancellationToken(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Whether the command should stop.
+	 * @return true if the command got cancelled or its deadline expired
+	 */
+	public boolean isCancellationRequested() {
+		return cancelled || deadline != null && deadline.isExpired();
+	}
+
+	/**
+	 * Throws if the command should stop, a convenience for computations that check the token at many places.
+	 * @throws CancellationException if the command got cancelled or its deadline expired
+	 */
+	public void throwIfCancellationRequested() {
+		if (isCancellationRequested()) {
+			throw new CancellationException(cancelled ? "Command cancelled." : "Deadline expired.");
+		}
+	}
+
+	/**
+	 * Sets whether the thread executing the command gets interrupted on cancellation.
+	 * <p>
+	 * Only meaningful for commands executed on a thread of their own, like a pool thread. A thread interrupted by this token has its interrupt
+	 * status cleared when the command returns.
+	 * </p>
+	 * @param interruptible true to interrupt the executing thread on cancellation
+	 */
+	public synchronized void setInterruptible(boolean interruptible) {
+		this.interruptible = interruptible;
+	}
+
+	/**
+	 * Signals this token.
+	 */
+	public synchronized void cancel() {
+		if (cancelled) {
+			return;
+		}
+		cancelled = true;
+		if (interruptible && thread != null && thread != Thread.currentThread()) {
+			interrupted = true;
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Invoked by the command adapter on the executing thread before the command executes.
+	 */
+	public synchronized void enter() {
+		thread = Thread.currentThread();
+	}
+
+	/**
+	 * Invoked by the command adapter on the executing thread after the command returned.
+	 */
+	public synchronized void exit() {
+		thread = null;
+		if (interrupted) {
+			// Do not leak our interrupt to the next task of a pool thread.
+			interrupted = false;
+			Thread.interrupted();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CancellationToken(" + (cancelled ? "cancelled" : deadline != null ? deadline : "active") + ")";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+}
@@ -0,0 +1,113 @@
+package org.spicefactory.lib.command.base;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of the named executor pools selected by <code>@Async(pool = "...")</code>.
+ * <p>
+ * Each pool runs at most as many commands at the same time as it has threads, the others wait in its queue. Commands of different pools never
+ * compete for the same threads, so that for instance slow IO commands filling up an "io" pool do not delay the commands of a "cpu" pool.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public final class CommandPools {
+
+	private static final ConcurrentMap<String, ExecutorService> pools = new ConcurrentHashMap<String, ExecutorService>();
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private CommandPools() {
+		// Static registry.
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Registers a new pool of daemon threads, idle threads are released after one minute.
+	 * @param name the name of the pool
+	 * @param threads the maximum number of commands of the pool running at the same time
+	 * @return the executor of the new pool
+	 * @throws IllegalStateException if a pool with the same name is already registered
+	 */
+	public static ExecutorService register(String name, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required: " + threads);
+		}
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new PoolThreadFactory(name));
+		pool.allowCoreThreadTimeOut(true);
+		register(name, pool);
+		return pool;
+	}
+
+	/**
+	 * Registers an existing executor as a pool.
+	 * @param name the name of the pool
+	 * @param executor the executor running the commands of the pool
+	 * @throws IllegalStateException if a pool with the same name is already registered
+	 */
+	public static void register(String name, ExecutorService executor) {
+		if (name == null || name.length() == 0) {
+			throw new IllegalArgumentException("A pool requires a name.");
+		}
+		if (pools.putIfAbsent(name, executor) != null) {
+			throw new IllegalStateException("Pool '" + name + "' is already registered.");
+		}
+	}
+
+	/**
+	 * Returns a registered pool.
+	 * @param name the name of the pool
+	 * @return the executor of the pool, null if no pool with that name is registered
+	 */
+	public static ExecutorService get(String name) {
+		return pools.get(name);
+	}
+
+	/**
+	 * Removes a pool from the registry and shuts it down, the commands already submitted to it still complete.
+	 * @param name the name of the pool
+	 * @return true if the pool was registered
+	 */
+	public static boolean shutdown(String name) {
+		ExecutorService pool = pools.remove(name);
+		if (pool == null) {
+			return false;
+		}
+		pool.shutdown();
+		return true;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private static class PoolThreadFactory implements ThreadFactory {
+
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		PoolThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "spicelib-pool-" + name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+}
@@ -0,0 +1,114 @@
+package org.spicefactory.lib.command.base;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared scheduler for all delayed actions of the command executors, like timeouts.
+ * <p>
+ * All tasks run on a single daemon thread, they are expected to be short and to hand over any real work to the commands themselves. Using one
+ * shared thread avoids creating a <code>java.util.Timer</code> (and its thread) for every execution of a command with a timeout.
+ * </p>
+ * <p>
+ * Delayed actions that start commands, which may be synchronous and take any time, are scheduled with <code>scheduleWork</code> instead: the
+ * scheduler thread only hands them over to a shared pool of worker threads.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public final class CommandScheduler {
+
+	/** Number of cancelled tasks after which the queue of the scheduler gets purged. */
+	private static final int PURGE_THRESHOLD = 1024;
+
+	private static final AtomicInteger cancellations = new AtomicInteger(0);
+	private static final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "spicelib-command-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private static final AtomicInteger workerCount = new AtomicInteger(0);
+	// Java 1.8 forward compatibility.
+	private static final ExecutorService workers = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "spicelib-command-worker-" + workerCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private CommandScheduler() {
+		// Static scheduler.
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Schedules a task to run once after the specified delay.
+	 * @param task the task to run
+	 * @param delay the delay after which the task runs
+	 * @param unit the unit of the delay
+	 * @return the handle to pass to <code>cancel</code>
+	 */
+	public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return scheduler.schedule(task, delay, unit);
+	}
+
+	/**
+	 * Schedules a task to run once after the specified delay on a worker thread rather than on the scheduler thread.
+	 * @param task the task to run, it may start commands
+	 * @param delay the delay after which the task runs
+	 * @param unit the unit of the delay
+	 * @return the handle to pass to <code>cancel</code>, cancelling it once the task was handed over to a worker has no effect
+	 */
+	public static ScheduledFuture<?> scheduleWork(final Runnable task, long delay, TimeUnit unit) {
+		// Java 1.8 forward compatibility.
+		return scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				workers.execute(task);
+			}
+		}, delay, unit);
+	}
+
+	/**
+	 * The shared pool of worker threads to which delayed actions hand over the commands they start.
+	 * @return the shared pool of daemon worker threads
+	 */
+	public static Executor getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Cancels a scheduled task.
+	 * <p>
+	 * Cancelled tasks are purged from the queue of the scheduler from time to time, so that frequent short executions with long timeouts do not
+	 * accumulate in memory.
+	 * </p>
+	 * @param task the handle returned by <code>schedule</code>, may be null
+	 */
+	public static void cancel(ScheduledFuture<?> task) {
+		if (task != null && task.cancel(false) && cancellations.incrementAndGet() % PURGE_THRESHOLD == 0) {
+			scheduler.purge();
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+}
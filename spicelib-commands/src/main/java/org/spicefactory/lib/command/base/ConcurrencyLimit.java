@@ -0,0 +1,203 @@
+package org.spicefactory.lib.command.base;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of commands in flight, adapting the limit to the latency of the completed commands.
+ * <p>
+ * The limit follows an AIMD scheme driven by latency: while commands complete within <code>tolerance</code> times the lowest latency seen
+ * recently and the limit is fully used, it grows by one for every <code>limit</code> completions, roughly one per round trip. A failed command
+ * or one slower than that threshold means that the downstream system starts queueing, the limit then shrinks by 10%, at most once per round
+ * trip so that a single slow burst does not collapse it. The lowest latency is re-learned from the samples of each window of 1000 completions,
+ * so that the limit follows a lasting change of the downstream system.
+ * </p>
+ * <p>
+ * A limit with equal minimum and maximum is a fixed limit. A limit can be shared by several executors calling the same system, an executor
+ * that did not get a slot is called back when a slot frees up.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class ConcurrencyLimit {
+
+	private static final int WINDOW = 1000;
+	private static final double BACKOFF = 0.9;
+
+	private final int min;
+	private final int max;
+	private final double tolerance;
+
+	private double limit;
+	private int inFlight;
+
+	private long minLatency = Long.MAX_VALUE;
+	private long windowMinLatency = Long.MAX_VALUE;
+	private int windowSamples;
+	private long lastDecrease;
+
+	private final LinkedList<Runnable> waiters = new LinkedList<Runnable>();
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a fixed limit.
+	 * @param limit the maximum number of commands in flight
+	 */
+	public ConcurrencyLimit(int limit) {
+		this(limit, limit, limit, 2);
+	}
+
+	/**
+	 * Creates an adaptive limit tolerating a doubling of the latency.
+	 * @param initial the initial limit
+	 * @param min the lowest value the limit may shrink to
+	 * @param max the highest value the limit may grow to
+	 */
+	public ConcurrencyLimit(int initial, int min, int max) {
+		this(initial, min, max, 2);
+	}
+
+	/**
+	 * Creates an adaptive limit.
+	 * @param initial the initial limit
+	 * @param min the lowest value the limit may shrink to
+	 * @param max the highest value the limit may grow to
+	 * @param tolerance the factor by which the latency may exceed the lowest latency before the limit shrinks
+	 */
+	public ConcurrencyLimit(int initial, int min, int max, double tolerance) {
+		if (min < 1 || min > initial || initial > max || tolerance <= 1) {
+			throw new IllegalArgumentException("Expected 1 <= min <= initial <= max and tolerance > 1.");
+		}
+		this.limit = initial;
+		this.min = min;
+		this.max = max;
+		this.tolerance = tolerance;
+		this.lastDecrease = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+	}
+
+	/**
+	 * Takes a slot if the limit allows another command in flight.
+	 * @param waiter invoked once when a slot frees up if none was available, may be null
+	 * @return true if a slot was taken
+	 */
+	public synchronized boolean tryAcquire(Runnable waiter) {
+		if (inFlight < (int) limit) {
+			inFlight++;
+			return true;
+		}
+		if (waiter != null && !waiters.contains(waiter)) {
+			waiters.add(waiter);
+		}
+		return false;
+	}
+
+	/**
+	 * Removes a waiter registered by <code>tryAcquire</code>, for an executor that no longer needs a slot.
+	 * @param waiter the waiter to remove
+	 */
+	public synchronized void removeWaiter(Runnable waiter) {
+		waiters.remove(waiter);
+	}
+
+	/**
+	 * Passes a wakeup on to the next waiter if a slot is free.
+	 * <p>
+	 * Each freed slot calls back a single waiter. A waiter that was called back but has nothing to start any more invokes this method, so that
+	 * the slot is not left unused while other executors wait for it.
+	 * </p>
+	 */
+	public void wakeNext() {
+		Runnable waiter;
+		synchronized (this) {
+			waiter = inFlight < (int) limit ? waiters.poll() : null;
+		}
+		if (waiter != null) {
+			waiter.run();
+		}
+	}
+
+	/**
+	 * Gives back a slot without a latency sample, for a command that got cancelled or never started.
+	 */
+	public void release() {
+		Runnable waiter;
+		synchronized (this) {
+			inFlight--;
+			waiter = waiters.poll();
+		}
+		if (waiter != null) {
+			waiter.run();
+		}
+	}
+
+	/**
+	 * Gives back the slot of a completed command and adapts the limit.
+	 * @param latencyNanos the time the command took in nanoseconds
+	 * @param success false if the command failed, which counts as a sign of overload
+	 */
+	public void release(long latencyNanos, boolean success) {
+		Runnable waiter;
+		synchronized (this) {
+			boolean saturated = inFlight >= (int) limit;
+			inFlight--;
+			sample(latencyNanos, success, saturated);
+			waiter = (int) limit > inFlight ? waiters.poll() : null;
+		}
+		if (waiter != null) {
+			waiter.run();
+		}
+	}
+
+	/**
+	 * The current limit.
+	 * @return the maximum number of commands currently allowed in flight
+	 */
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * The number of commands in flight.
+	 * @return the number of slots taken
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ConcurrencyLimit(" + inFlight + "/" + (int) limit + ")";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private void sample(long latency, boolean success, boolean saturated) {
+		if (min == max) {
+			return;
+		}
+		windowMinLatency = Math.min(windowMinLatency, latency);
+		minLatency = Math.min(minLatency, latency);
+		if (++windowSamples == WINDOW) {
+			minLatency = windowMinLatency;
+			windowMinLatency = Long.MAX_VALUE;
+			windowSamples = 0;
+		}
+		if (!success || latency > tolerance * minLatency) {
+			long now = System.nanoTime();
+			if (now - lastDecrease > latency) {
+				limit = Math.max(min, limit * BACKOFF);
+				lastDecrease = now;
+			}
+		} else if (saturated) {
+			limit = Math.min(max, limit + 1 / limit);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.spicefactory.lib.command.base;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An absolute point in time by which a command execution has to complete.
+ * <p>
+ * A proxy with a timeout passes its deadline down to the commands it executes through <code>CommandData</code>, so that nested proxies never
+ * wait longer than the enclosing budget and commands can check how much time they have left. Commands receive it like any other data, as a
+ * constructor parameter or as a parameter of the <code>execute</code> method of a light command, but it is not part of the results.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public final class Deadline {
+
+	private final long nanos;
+	private final long budget;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private Deadline(long nanos, long budget) {
+		this.nanos = nanos;
+		this.budget = budget;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a deadline the specified amount of time from now.
+	 * @param milliseconds the time budget in milliseconds
+	 * @return a new deadline
+	 */
+	public static Deadline after(long milliseconds) {
+		return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(milliseconds), milliseconds);
+	}
+
+	/**
+	 * Returns the earlier of this deadline and the specified one.
+	 * @param other the other deadline, may be null
+	 * @return the earlier deadline
+	 */
+	public Deadline min(Deadline other) {
+		return other != null && other.nanos - nanos < 0 ? other : this;
+	}
+
+	/**
+	 * The time left until this deadline.
+	 * @param unit the unit of the returned value
+	 * @return the time left, 0 if the deadline has passed
+	 */
+	public long remaining(TimeUnit unit) {
+		long remaining = nanos - System.nanoTime();
+		return remaining > 0 ? unit.convert(remaining, TimeUnit.NANOSECONDS) : 0;
+	}
+
+	/**
+	 * The time budget this deadline was created with.
+	 * @return the time budget in milliseconds
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Whether this deadline has passed.
+	 * @return true if this deadline has passed
+	 */
+	public boolean isExpired() {
+		return nanos - System.nanoTime() <= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline(" + remaining(TimeUnit.MILLISECONDS) + "ms left)";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+}
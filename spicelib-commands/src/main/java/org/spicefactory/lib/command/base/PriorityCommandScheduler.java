@@ -0,0 +1,195 @@
+package org.spicefactory.lib.command.base;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of threads starting queued commands in priority order.
+ * <p>
+ * A task submitted with a higher priority starts before the tasks with a lower priority, tasks of the same priority start in submission order.
+ * To prevent starvation of low priority work under sustained load, the effective priority of a waiting task increases by one for every aging
+ * interval it spent in the queue, so that it eventually overtakes newer tasks of higher priority.
+ * </p>
+ * <p>
+ * The tasks are expected to start commands, not to block: an asynchronous command started by a task keeps running after its task returned and
+ * no longer occupies a thread of the pool.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class PriorityCommandScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(PriorityCommandScheduler.class);
+
+	/** Queued tasks by priority, each level in submission order. */
+	private final TreeMap<Integer, LinkedList<Task>> levels = new TreeMap<Integer, LinkedList<Task>>();
+	private final long agingNanos;
+	private int size;
+	private long sequence;
+	private boolean shutdown;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new scheduler.
+	 * @param threads the number of threads starting the queued tasks
+	 * @param agingMillis the time in milliseconds after which a waiting task gains one priority level, 0 to disable aging
+	 */
+	public PriorityCommandScheduler(int threads, long agingMillis) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required: " + threads);
+		}
+		this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(worker, "spicelib-priority-scheduler-" + (i + 1));
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * The scheduler used by the builders, with one thread per available processor and an aging interval of 100 milliseconds.
+	 * @return the shared scheduler
+	 */
+	public static PriorityCommandScheduler getDefault() {
+		return DefaultScheduler.INSTANCE;
+	}
+
+	/**
+	 * Queues a task.
+	 * @param task the task to run
+	 * @param priority the priority of the task, higher values start first
+	 * @return the handle to pass to <code>remove</code>
+	 */
+	public synchronized Object submit(Runnable task, int priority) {
+		if (shutdown) {
+			throw new IllegalStateException("Scheduler has been shut down.");
+		}
+		Task t = new Task(task, priority, System.nanoTime(), sequence++);
+		LinkedList<Task> level = levels.get(priority);
+		if (level == null) {
+			level = new LinkedList<Task>();
+			levels.put(priority, level);
+		}
+		level.add(t);
+		size++;
+		notify();
+		return t;
+	}
+
+	/**
+	 * Removes a task that did not start yet.
+	 * @param handle the handle returned by <code>submit</code>
+	 * @return true if the task was removed, false if it already started
+	 */
+	public synchronized boolean remove(Object handle) {
+		Task task = (Task) handle;
+		LinkedList<Task> level = levels.get(task.priority);
+		if (level == null || !level.remove(task)) {
+			return false;
+		}
+		if (level.isEmpty()) {
+			levels.remove(task.priority);
+		}
+		size--;
+		return true;
+	}
+
+	/**
+	 * The number of tasks waiting to start.
+	 * @return the number of tasks waiting to start
+	 */
+	public synchronized int getQueueSize() {
+		return size;
+	}
+
+	/**
+	 * Stops the threads of this scheduler once the queue is empty.
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+		notifyAll();
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private synchronized Task take() throws InterruptedException {
+		while (size == 0) {
+			if (shutdown) {
+				return null;
+			}
+			wait();
+		}
+		// The head of each level waited the longest, so it has the highest effective priority of its level.
+		long now = System.nanoTime();
+		Task next = null;
+		long nextPriority = 0;
+		for (Map.Entry<Integer, LinkedList<Task>> entry : levels.descendingMap().entrySet()) {
+			Task head = entry.getValue().getFirst();
+			long priority = head.priority + (agingNanos > 0 ? (now - head.submitted) / agingNanos : 0);
+			if (next == null || priority > nextPriority || priority == nextPriority && head.sequence < next.sequence) {
+				next = head;
+				nextPriority = priority;
+			}
+		}
+		remove(next);
+		return next;
+	}
+
+	// Java 1.8 forward compatibility.
+	private final Runnable worker = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				for (Task task = take(); task != null; task = take()) {
+					try {
+						task.runnable.run();
+					}
+					catch (Throwable e) {
+						logger.error("Scheduled task '{}' failed.", task.runnable, e);
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	};
+
+	private static class Task {
+
+		private final Runnable runnable;
+		private final int priority;
+		private final long submitted;
+		private final long sequence;
+
+		Task(Runnable runnable, int priority, long submitted, long sequence) {
+			this.runnable = runnable;
+			this.priority = priority;
+			this.submitted = submitted;
+			this.sequence = sequence;
+		}
+
+	}
+
+	/**
+	 * Lazily created scheduler shared by the builders.
+	 */
+	private static class DefaultScheduler {
+
+		private static final PriorityCommandScheduler INSTANCE = new PriorityCommandScheduler(Runtime.getRuntime().availableProcessors(), 100);
+
+	}
+}
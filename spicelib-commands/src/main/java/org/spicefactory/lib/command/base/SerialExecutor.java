@@ -0,0 +1,56 @@
+package org.spicefactory.lib.command.base;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks submitted from any thread one at a time, in submission order, without blocking.
+ * <p>
+ * The thread submitting a task while no other task runs drains the queue itself, a thread submitting while another one drains just leaves its
+ * task to that thread. The tasks of a command therefore never run concurrently, although they may run on different threads over time.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public final class SerialExecutor implements Executor {
+
+	private static final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	/** Number of submitted tasks that did not run yet, the submitter raising it from 0 drains the queue. */
+	private final AtomicInteger pending = new AtomicInteger(0);
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void execute(Runnable task) {
+		tasks.offer(task);
+		if (pending.getAndIncrement() > 0) {
+			return; // Run by the draining thread.
+		}
+		do {
+			Runnable next = tasks.poll();
+			try {
+				next.run();
+			}
+			catch (RuntimeException e) {
+				logger.error("Task '{}' failed.", next, e);
+			}
+		}
+		while (pending.decrementAndGet() > 0);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+}
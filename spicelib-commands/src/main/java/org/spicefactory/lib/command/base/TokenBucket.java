@@ -0,0 +1,80 @@
+package org.spicefactory.lib.command.base;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket limiting the rate at which commands get started.
+ * <p>
+ * The bucket holds up to <code>burst</code> permits and gains <code>permitsPerSecond</code> of them every second. Starting a command takes one
+ * permit, when none is left the caller learns how long to wait for the next one instead of being blocked. A bucket can be shared by several
+ * executors to limit the combined rate at which they call the same service.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class TokenBucket {
+
+	private final long intervalNanos;
+	private final int burst;
+
+	private double permits;
+	private long refilled;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a bucket without bursts, permits are handed out evenly spaced.
+	 * @param permitsPerSecond the sustained rate
+	 */
+	public TokenBucket(double permitsPerSecond) {
+		this(permitsPerSecond, 1);
+	}
+
+	/**
+	 * Creates a new bucket, initially full.
+	 * @param permitsPerSecond the sustained rate
+	 * @param burst the maximum number of permits that can be taken at once after an idle period
+	 */
+	public TokenBucket(double permitsPerSecond, int burst) {
+		if (permitsPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("Rate must be positive and burst at least 1: " + permitsPerSecond + ", " + burst);
+		}
+		this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+		this.burst = burst;
+		this.permits = burst;
+		this.refilled = System.nanoTime();
+	}
+
+	/**
+	 * Takes a permit if one is available.
+	 * @return 0 if a permit was taken, otherwise the time in nanoseconds until the next permit becomes available
+	 */
+	public synchronized long tryAcquire() {
+		long now = System.nanoTime();
+		if (intervalNanos > 0) {
+			permits = Math.min(burst, permits + (double) (now - refilled) / intervalNanos);
+		} else {
+			permits = burst;
+		}
+		refilled = now;
+		if (permits >= 1) {
+			permits--;
+			return 0;
+		}
+		return Math.max(1, (long) Math.ceil((1 - permits) * intervalNanos));
+	}
+
+	@Override
+	public String toString() {
+		return "TokenBucket(" + TimeUnit.SECONDS.toNanos(1) / Math.max(1, intervalNanos) + "/s, burst " + burst + ")";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+}
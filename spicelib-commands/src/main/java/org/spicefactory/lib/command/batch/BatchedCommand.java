@@ -0,0 +1,76 @@
+package org.spicefactory.lib.command.batch;
+
+import org.spicefactory.lib.command.base.AbstractCancellableCommand;
+
+/**
+ * A command loading a single input through a <code>CommandBatcher</code>.
+ * <p>
+ * Executing the command enqueues its input into the next batch of the batcher, the command then completes with its slice of the batch result,
+ * or with the exception of the batch. A command cancelled before its batch got executed is removed from the batch.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class BatchedCommand extends AbstractCancellableCommand {
+
+	private final CommandBatcher batcher;
+	private final Object input;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	BatchedCommand(CommandBatcher batcher, Object input) {
+		this.batcher = batcher;
+		this.input = input;
+	}
+
+	void resolve(Object value) {
+		if (isActive()) {
+			complete(value);
+		}
+	}
+
+	void fail(Object cause) {
+		if (isActive()) {
+			exception(cause);
+		}
+	}
+
+	void abort() {
+		if (isActive()) {
+			cancel();
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The input this command loads.
+	 * @return the input this command loads
+	 */
+	public Object getInput() {
+		return input;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchedCommand(" + input + ")";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		batcher.enqueue(this);
+	}
+
+	@Override
+	protected void doCancel() {
+		batcher.remove(this);
+	}
+
+}
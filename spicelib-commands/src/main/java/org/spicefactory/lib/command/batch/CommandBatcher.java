@@ -0,0 +1,234 @@
+package org.spicefactory.lib.command.batch;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.lib.command.base.CommandScheduler;
+import org.spicefactory.lib.command.events.CommandEvent;
+import org.spicefactory.lib.command.events.CommandResultEvent;
+import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
+import org.spicefactory.lib.event.EventListener;
+
+/**
+ * Coalesces the executions of many single-input commands into the execution of one batch command.
+ * <p>
+ * The commands returned by <code>load</code> collect their inputs until either the maximum batch size is reached or the batch window has
+ * elapsed since the first input of the batch. The batch command type then gets executed once, with the <code>List</code> of distinct inputs
+ * passed as data (e.g. injected into its constructor). Its result must be either a <code>List</code> holding one element per input, in the same
+ * order, or a <code>Map</code> keyed by input. Each batched command completes with its own slice of that result.
+ * </p>
+ * <p>
+ * A full batch is executed by the thread enqueuing the last input, a batch whose window elapsed is executed by a worker thread of the
+ * <code>CommandScheduler</code>, so that a slow batch command never delays the timers of other commands.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandBatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(CommandBatcher.class);
+
+	private final Class<?> batchType;
+	private final int maxBatchSize;
+	private final long window;
+
+	/** The commands of the next batch, grouped by input in enqueue order. */
+	private Map<Object, List<BatchedCommand>> pending = new LinkedHashMap<Object, List<BatchedCommand>>();
+	private ScheduledFuture<?> timer;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	void enqueue(BatchedCommand command) {
+		boolean full;
+		synchronized (this) {
+			List<BatchedCommand> commands = pending.get(command.getInput());
+			if (commands == null) {
+				commands = new ArrayList<BatchedCommand>(1);
+				pending.put(command.getInput(), commands);
+			}
+			commands.add(command);
+			full = pending.size() >= maxBatchSize;
+			if (!full && timer == null) {
+				timer = CommandScheduler.scheduleWork(windowElapsed(pending), window, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (full) {
+			flush();
+		}
+	}
+
+	synchronized void remove(BatchedCommand command) {
+		List<BatchedCommand> commands = pending.get(command.getInput());
+		if (commands != null && commands.remove(command) && commands.isEmpty()) {
+			pending.remove(command.getInput());
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new batcher.
+	 * @param batchType the type of command executing a batch, must accept a <code>List</code> of inputs as data
+	 * @param maxBatchSize the maximum number of distinct inputs in a batch
+	 * @param window the time in milliseconds to wait for more inputs after the first input of a batch
+	 */
+	public CommandBatcher(Class<?> batchType, int maxBatchSize, long window) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Maximum batch size must be at least 1: " + maxBatchSize);
+		}
+		if (window < 0) {
+			throw new IllegalArgumentException("Batch window must not be negative: " + window);
+		}
+		this.batchType = batchType;
+		this.maxBatchSize = maxBatchSize;
+		this.window = window;
+	}
+
+	/**
+	 * Creates a command loading the specified input as part of the next batch.
+	 * <p>
+	 * Equal inputs of the same batch are loaded once, all their commands complete with the same slice.
+	 * </p>
+	 * @param input the input to load, must implement <code>equals</code> and <code>hashCode</code>
+	 * @return a new command, not executed yet
+	 */
+	public BatchedCommand load(Object input) {
+		if (input == null) {
+			throw new NullPointerException("input");
+		}
+		return new BatchedCommand(this, input);
+	}
+
+	/**
+	 * Executes the pending batch right away, without waiting for the batch window to elapse.
+	 */
+	public void flush() {
+		flush(null);
+	}
+
+	@Override
+	public String toString() {
+		return "CommandBatcher(" + batchType.getSimpleName() + ")";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Executes the pending batch.
+	 * @param expected the batch whose window elapsed, null to execute any pending batch
+	 */
+	private void flush(Map<Object, List<BatchedCommand>> expected) {
+		Map<Object, List<BatchedCommand>> batch;
+		synchronized (this) {
+			if (expected != null && expected != pending) {
+				return; // Already executed, the window task got handed over to a worker before it could be cancelled.
+			}
+			CommandScheduler.cancel(timer);
+			timer = null;
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = pending;
+			pending = new LinkedHashMap<Object, List<BatchedCommand>>();
+		}
+		execute(batch);
+	}
+
+	private void execute(Map<Object, List<BatchedCommand>> batch) {
+		List<Object> inputs = new ArrayList<Object>(batch.keySet());
+		logger.debug("Executing batch of {} inputs with '{}'.", inputs.size(), batchType);
+		DefaultCommandProxy proxy = new DefaultCommandProxy();
+		proxy.setType(batchType);
+		proxy.addData(inputs);
+		Batch listener = new Batch(inputs, batch);
+		proxy.addEventListener(CommandResultEvent.COMPLETE, listener);
+		proxy.addEventListener(CommandResultEvent.EXCEPTION, listener);
+		proxy.addEventListener(CommandEvent.CANCEL, listener);
+		proxy.execute();
+	}
+
+	private Runnable windowElapsed(final Map<Object, List<BatchedCommand>> batch) {
+		// Java 1.8 forward compatibility.
+		return new Runnable() {
+			@Override
+			public void run() {
+				flush(batch);
+			}
+		};
+	}
+
+	private class Batch implements EventListener<CommandEvent> {
+
+		private final List<Object> inputs;
+		private final Map<Object, List<BatchedCommand>> commands;
+
+		Batch(List<Object> inputs, Map<Object, List<BatchedCommand>> commands) {
+			this.inputs = inputs;
+			this.commands = commands;
+		}
+
+		@Override
+		public void process(CommandEvent event) {
+			switch (event.getID()) {
+				case CommandResultEvent.COMPLETE:
+					complete(((CommandResultEvent) event).getValue());
+					break;
+				case CommandResultEvent.EXCEPTION:
+					fail(((CommandResultEvent) event).getValue());
+					break;
+				default:
+					for (List<BatchedCommand> callers : commands.values()) {
+						for (BatchedCommand caller : callers) {
+							caller.abort();
+						}
+					}
+					break;
+			}
+		}
+
+		private void complete(Object result) {
+			if (result instanceof List<?> && ((List<?>) result).size() == inputs.size()) {
+				List<?> values = (List<?>) result;
+				for (int i = 0; i < inputs.size(); i++) {
+					resolve(inputs.get(i), values.get(i));
+				}
+			} else if (result instanceof Map<?, ?>) {
+				Map<?, ?> values = (Map<?, ?>) result;
+				for (Object input : inputs) {
+					resolve(input, values.get(input));
+				}
+			} else {
+				fail(new IllegalStateException(MessageFormat.format(
+						"Batch command {0} must return a List with one element per input or a Map keyed by input, got {1}.", batchType.getName(),
+						result)));
+			}
+		}
+
+		private void resolve(Object input, Object value) {
+			for (BatchedCommand caller : commands.get(input)) {
+				caller.resolve(value);
+			}
+		}
+
+		private void fail(Object cause) {
+			for (List<BatchedCommand> callers : commands.values()) {
+				for (BatchedCommand caller : callers) {
+					caller.fail(cause);
+				}
+			}
+		}
+
+	}
+}
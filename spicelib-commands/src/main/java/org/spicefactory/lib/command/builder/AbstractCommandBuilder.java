@@ -1,7 +1,11 @@
 package org.spicefactory.lib.command.builder;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.spicefactory.lib.command.Command;
 import org.spicefactory.lib.command.adapter.CommandAdapters;
+import org.spicefactory.lib.command.base.PriorityCommandScheduler;
 import org.spicefactory.lib.command.callback.CancelCallback;
 import org.spicefactory.lib.command.callback.ExceptionCallback;
 import org.spicefactory.lib.command.callback.ResultCallback;
@@ -14,32 +18,76 @@ import org.spicefactory.lib.event.EventListener;
 /**
  * Abstract base class for all builder types.
  * <p>
- * The builder always produces a proxy responsible for executing the actual command.
+ * The builder always produces a proxy responsible for executing the actual command. The configuration is recorded by the builder and applied to
+ * the proxy when it gets built, so that it can also be compiled into a reusable <code>CommandPlan</code>.
  * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
  */
 public abstract class AbstractCommandBuilder implements CommandBuilder {
 
-	private final DefaultCommandProxy proxy;
+	private DefaultCommandProxy proxy;
+	private boolean configured;
+
+	private Command target;
+	private Class<?> type;
+	private long timeout;
+	private int priority;
+	private PriorityCommandScheduler scheduler;
+	private final List<Object> data = new ArrayList<Object>();
+	private final List<Listener> listeners = new ArrayList<Listener>();
 
 	/////////////////////////////////////////////////////////////////////////////
 	// Package-private.
 	/////////////////////////////////////////////////////////////////////////////
 
 	protected AbstractCommandBuilder() {
-		this(new DefaultCommandProxy());
+		this(null);
 	}
 
 	protected AbstractCommandBuilder(DefaultCommandProxy proxy) {
 		this.proxy = proxy;
 	}
 
+	/**
+	 * Returns the factory for the proxies of this builder.
+	 * <p>
+	 * Compiled plans use this factory to create a new proxy for each execution, so the returned factory must not depend on any state of the
+	 * builder that may still change.
+	 * </p>
+	 * @return the factory for the proxies of this builder
+	 */
+	ProxyFactory proxyFactory() {
+		if (proxy != null && proxy.getClass() != DefaultCommandProxy.class) {
+			throw new IllegalStateException("A builder using a custom proxy instance cannot be compiled: " + proxy);
+		}
+		return ProxyFactory.DEFAULT;
+	}
+
+	/**
+	 * Compiles the recorded configuration into a plan.
+	 * @param type the type of command to create for each execution, mutually exclusive with <code>target</code>
+	 * @param target the factory for the command to execute for each execution, mutually exclusive with <code>type</code>
+	 * @return a new plan
+	 */
+	@SuppressWarnings("rawtypes")
+	CommandPlan compile(Class<?> type, CommandTemplate target) {
+		List<EventListener> listeners = new ArrayList<EventListener>(this.listeners.size());
+		int[] listenerTypes = new int[this.listeners.size()];
+		for (int i = 0; i < listenerTypes.length; i++) {
+			listenerTypes[i] = this.listeners.get(i).type;
+			listeners.add(this.listeners.get(i).listener);
+		}
+		return new CommandPlan(proxyFactory(), type, target, timeout, priority, scheduler, data.toArray(), listenerTypes, listeners.toArray(new EventListener[listeners
+				.size()]));
+	}
+
 	/**
 	 * Sets the target command to execute.
 	 * @param target the target command to execute
 	 */
 	protected void setTarget(Command target) {
-		proxy.setTarget(target);
+		this.target = target;
+		this.type = null;
 	}
 
 	/**
@@ -50,7 +98,8 @@ public abstract class AbstractCommandBuilder implements CommandBuilder {
 	 * @param type the type of the command to execute
 	 */
 	protected void setType(Class<?> type) {
-		proxy.setType(type);
+		this.type = type;
+		this.target = null;
 	}
 
 	/**
@@ -58,7 +107,10 @@ public abstract class AbstractCommandBuilder implements CommandBuilder {
 	 * @param value the value to pass to the command proxy
 	 */
 	protected void addData(Object value) {
-		proxy.addData(value);
+		data.add(value);
+		if (configured) {
+			proxy.addData(value);
+		}
 	}
 
 	/**
@@ -69,7 +121,23 @@ public abstract class AbstractCommandBuilder implements CommandBuilder {
 	 * @param milliseconds the timeout for this proxy in milliseconds
 	 */
 	protected void setTimeout(long milliseconds) {
-		proxy.setTimeout(milliseconds);
+		timeout = milliseconds;
+		if (configured) {
+			proxy.setTimeout(milliseconds);
+		}
+	}
+
+	/**
+	 * Sets the priority with which the command gets started on the specified scheduler.
+	 * @param priority the priority of the command, higher values start first
+	 * @param scheduler the scheduler to queue the command with
+	 */
+	protected void setPriority(int priority, PriorityCommandScheduler scheduler) {
+		this.priority = priority;
+		this.scheduler = scheduler;
+		if (configured) {
+			proxy.setPriority(priority, scheduler);
+		}
 	}
 
 	/**
@@ -87,7 +155,7 @@ public abstract class AbstractCommandBuilder implements CommandBuilder {
 				callback.result((T) event.getValue());
 			}
 		};
-		proxy.addEventListener(CommandResultEvent.COMPLETE, l);
+		addListener(CommandResultEvent.COMPLETE, l);
 	}
 
 	/**
@@ -105,7 +173,7 @@ public abstract class AbstractCommandBuilder implements CommandBuilder {
 				callback.exception((T) event.getValue());
 			}
 		};
-		proxy.addEventListener(CommandResultEvent.EXCEPTION, l);
+		addListener(CommandResultEvent.EXCEPTION, l);
 	}
 
 	/**
@@ -123,7 +191,7 @@ public abstract class AbstractCommandBuilder implements CommandBuilder {
 				callback.cancel();
 			}
 		};
-		proxy.addEventListener(CommandEvent.CANCEL, l);
+		addListener(CommandEvent.CANCEL, l);
 	}
 
 	/**
@@ -148,6 +216,26 @@ public abstract class AbstractCommandBuilder implements CommandBuilder {
 		}
 	}
 
+	/**
+	 * Turns the specified instance into a plan that can be executed any number of times.
+	 * <p>
+	 * Legal parameters are a <code>Class</code> reference that specifies the type of the target command to create or a
+	 * <code>CommandBuilder</code>. Command instances cannot be part of a plan as they cannot be executed concurrently.
+	 * </p>
+	 * @param command the instance to turn into a plan
+	 * @return the plan created from the specified instance
+	 */
+	protected CommandPlan asPlan(Object command) {
+		if (command instanceof Class<?>) {
+			return Commands.create((Class<?>) command).compile();
+		} else if (command instanceof CommandBuilder) {
+			return ((CommandBuilder) command).compile();
+		} else {
+			throw new IllegalStateException("Only command types and builders can be compiled into a plan, use a type instead of instance "
+					+ command);
+		}
+	}
+
 	/////////////////////////////////////////////////////////////////////////////
 	// Public API.
 	/////////////////////////////////////////////////////////////////////////////
@@ -160,11 +248,54 @@ public abstract class AbstractCommandBuilder implements CommandBuilder {
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public CommandProxy build() {
+		if (!configured) {
+			if (proxy == null) {
+				proxy = proxyFactory().newProxy();
+			}
+			proxy.setTimeout(timeout);
+			if (scheduler != null) {
+				proxy.setPriority(priority, scheduler);
+			}
+			for (Object value : data) {
+				proxy.addData(value);
+			}
+			for (Listener l : listeners) {
+				proxy.addEventListener(l.type, l.listener);
+			}
+			configured = true;
+		}
+		if (type != null) {
+			proxy.setType(type);
+		} else {
+			proxy.setTarget(target);
+		}
 		return proxy;
 	}
 
 	/////////////////////////////////////////////////////////////////////////////
 	// Internal implementation.
 	/////////////////////////////////////////////////////////////////////////////
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private void addListener(int type, EventListener listener) {
+		listeners.add(new Listener(type, listener));
+		if (configured) {
+			proxy.addEventListener(type, listener);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static class Listener {
+
+		private final int type;
+		private final EventListener listener;
+
+		Listener(int type, EventListener listener) {
+			this.type = type;
+			this.listener = listener;
+		}
+
+	}
 }
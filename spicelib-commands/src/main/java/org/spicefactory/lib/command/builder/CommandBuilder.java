@@ -27,4 +27,16 @@ public interface CommandBuilder {
 	 */
 	CommandProxy build();
 
+	/**
+	 * Compiles the configuration of this builder into an immutable plan.
+	 * <p>
+	 * The plan captures the structure once and creates new proxies and target commands for each of its executions, so that it can be executed
+	 * any number of times, including concurrently. Only command types and nested builders can be compiled, command instances are rejected as
+	 * they cannot be shared between executions.
+	 * </p>
+	 * @return a new plan for the configuration of this builder
+	 * @throws IllegalStateException if the configuration contains command instances
+	 */
+	CommandPlan compile();
+
 }
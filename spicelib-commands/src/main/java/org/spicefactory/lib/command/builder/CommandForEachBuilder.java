@@ -0,0 +1,215 @@
+package org.spicefactory.lib.command.builder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.base.ConcurrencyLimit;
+import org.spicefactory.lib.command.callback.CancelCallback;
+import org.spicefactory.lib.command.callback.ExceptionCallback;
+import org.spicefactory.lib.command.callback.ResultCallback;
+import org.spicefactory.lib.command.group.CommandForEach;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * A builder DSL for creating CommandForEach instances.
+ * <p>
+ * Without a chunk size the items are split into one chunk per available processor. The items are copied when the builder gets created, later
+ * changes to the collection are not reflected.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandForEachBuilder extends AbstractCommandBuilder {
+
+	private final Class<?> type;
+	private final List<Object> items;
+	private int chunkSize;
+	private int parallelism;
+	private Executor fork;
+	private boolean skipExceptions;
+	private boolean skipCancellations;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	CommandForEachBuilder(Collection<?> items, Class<?> type) {
+		// Use Commands.forEach().
+		this.items = new ArrayList<Object>(items);
+		this.type = type;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Sets the maximum number of items passed to one command.
+	 * @param size the number of items per chunk, the last chunk may be smaller
+	 * @return this builder instance for method chaining
+	 */
+	public CommandForEachBuilder chunkSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1: " + size);
+		}
+		chunkSize = size;
+		return this;
+	}
+
+	/**
+	 * Limits the number of chunks processed at the same time.
+	 * @param chunks the maximum number of commands running at the same time
+	 * @return this builder instance for method chaining
+	 */
+	public CommandForEachBuilder parallelism(int chunks) {
+		if (chunks < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + chunks);
+		}
+		parallelism = chunks;
+		return this;
+	}
+
+	/**
+	 * Runs the commands processing the chunks on the specified executor, so that synchronous commands process their chunks on several threads.
+	 * @param executor the executor running the commands
+	 * @return this builder instance for method chaining
+	 */
+	public CommandForEachBuilder fork(Executor executor) {
+		fork = executor;
+		return this;
+	}
+
+	/**
+	 * Sets the timeout for processing all the items.
+	 * <p>
+	 * When the specified amount of time is elapsed the execution will abort with an error.
+	 * </p>
+	 * @param milliseconds the timeout in milliseconds
+	 * @return this builder instance for method chaining
+	 */
+	public CommandForEachBuilder timeout(long milliseconds) {
+		setTimeout(milliseconds);
+		return this;
+	}
+
+	/**
+	 * Adds a value that can get passed to the command of each chunk.
+	 * @param value the value to pass to the commands
+	 * @return this builder instance for method chaining
+	 */
+	public CommandForEachBuilder data(Object value) {
+		addData(value);
+		return this;
+	}
+
+	/**
+	 * Instructs the group to ignore exceptions produced by the command of a chunk, the result of that chunk is null.
+	 * @return this builder instance for method chaining
+	 */
+	public CommandForEachBuilder skipExceptions() {
+		skipExceptions = true;
+		return this;
+	}
+
+	/**
+	 * Instructs the group to ignore cancellations of the command of a chunk, the result of that chunk is null.
+	 * @return this builder instance for method chaining
+	 */
+	public CommandForEachBuilder skipCancellations() {
+		skipCancellations = true;
+		return this;
+	}
+
+	/**
+	 * Adds a callback to invoke when all the chunks were processed.
+	 * <p>
+	 * The callback receives the result of each chunk, in the order of the items.
+	 * </p>
+	 * @param callback the callback to invoke when all the chunks were processed
+	 * @return this builder instance for method chaining
+	 */
+	public CommandForEachBuilder results(ResultCallback<? super List<Object>> callback) {
+		addResultCallback(callback);
+		return this;
+	}
+
+	/**
+	 * Adds a callback to invoke when the command of a chunk produced an exception.
+	 * @param callback the callback to invoke when a chunk produced an error
+	 * @return this builder instance for method chaining
+	 */
+	public CommandForEachBuilder exception(ExceptionCallback<? super Throwable> callback) {
+		addExceptionCallback(callback);
+		return this;
+	}
+
+	/**
+	 * Adds a callback to invoke when the processing gets cancelled.
+	 * @param callback the callback to invoke when the processing gets cancelled
+	 * @return this builder instance for method chaining
+	 */
+	public CommandForEachBuilder cancel(CancelCallback callback) {
+		addCancelCallback(callback);
+		return this;
+	}
+
+	@Override
+	public CommandProxy build() {
+		setTarget(newTemplate().newCommand());
+		return super.build();
+	}
+
+	@Override
+	public CommandPlan compile() {
+		return compile(null, newTemplate());
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private ForEachTemplate newTemplate() {
+		int size = chunkSize;
+		if (size == 0) {
+			int processors = Runtime.getRuntime().availableProcessors();
+			size = Math.max(1, (items.size() + processors - 1) / processors);
+		}
+		return new ForEachTemplate(type, items, size, parallelism, fork, skipExceptions, skipCancellations);
+	}
+
+	private static class ForEachTemplate implements CommandTemplate {
+
+		private final Class<?> type;
+		private final List<Object> items;
+		private final int chunkSize;
+		private final int parallelism;
+		private final Executor fork;
+		private final boolean skipExceptions;
+		private final boolean skipCancellations;
+
+		ForEachTemplate(Class<?> type, List<Object> items, int chunkSize, int parallelism, Executor fork, boolean skipExceptions,
+				boolean skipCancellations) {
+			this.type = type;
+			this.items = items;
+			this.chunkSize = chunkSize;
+			this.parallelism = parallelism;
+			this.fork = fork;
+			this.skipExceptions = skipExceptions;
+			this.skipCancellations = skipCancellations;
+		}
+
+		@Override
+		public Command newCommand() {
+			CommandForEach group = new CommandForEach(type, items, chunkSize, skipExceptions, skipCancellations);
+			if (parallelism > 0) {
+				// Unlike the limit of a group builder, the parallelism applies to each execution of a plan on its own.
+				group.setConcurrencyLimit(new ConcurrencyLimit(parallelism));
+			}
+			group.setExecutor(fork);
+			return group;
+		}
+
+	}
+}
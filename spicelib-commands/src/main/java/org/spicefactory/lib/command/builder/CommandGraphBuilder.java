@@ -0,0 +1,194 @@
+package org.spicefactory.lib.command.builder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.callback.CancelCallback;
+import org.spicefactory.lib.command.callback.ExceptionCallback;
+import org.spicefactory.lib.command.callback.ResultCallback;
+import org.spicefactory.lib.command.data.CommandData;
+import org.spicefactory.lib.command.group.CommandGraph;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * A builder DSL for creating CommandGraph instances.
+ * <p>
+ * The dependencies of the graph are analyzed when it gets built or compiled, the types of the data added to this builder count as inputs
+ * provided to the graph.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandGraphBuilder extends AbstractCommandBuilder {
+
+	private final List<Class<?>> types = new ArrayList<Class<?>>();
+	private final List<Class<?>> produces = new ArrayList<Class<?>>();
+	private final Set<Class<?>> inputs = new LinkedHashSet<Class<?>>();
+	private boolean incremental;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	CommandGraphBuilder() {
+		// Use Commands.graph().
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Adds a command to the graph, its output is inferred from the <code>execute</code> method of a light command.
+	 * @param type the type of command to add
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGraphBuilder add(Class<?> type) {
+		return add(type, null);
+	}
+
+	/**
+	 * Adds a command to the graph.
+	 * @param type the type of command to add
+	 * @param produces the type of result the command produces
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGraphBuilder add(Class<?> type, Class<?> produces) {
+		types.add(type);
+		this.produces.add(produces);
+		return this;
+	}
+
+	/**
+	 * Declares a type of input that the graph receives from its parent executor.
+	 * @param type the type of input provided to the graph
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGraphBuilder input(Class<?> type) {
+		inputs.add(type);
+		return this;
+	}
+
+	/**
+	 * Makes the graph incremental: a command gets executed again only when its input values changed since its last successful execution.
+	 * <p>
+	 * The previous results are shared by all executions of the plan compiled from this builder, new input values are typically passed with
+	 * <code>CommandPlan.execute(Object...)</code>.
+	 * </p>
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGraphBuilder incremental() {
+		incremental = true;
+		return this;
+	}
+
+	/**
+	 * Sets the timeout for the graph.
+	 * <p>
+	 * When the specified amount of time is elapsed the graph execution will abort with an error.
+	 * </p>
+	 * @param milliseconds the timeout for this graph in milliseconds
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGraphBuilder timeout(long milliseconds) {
+		setTimeout(milliseconds);
+		return this;
+	}
+
+	/**
+	 * Adds a value that can get passed to the commands of the graph, its type counts as a provided input.
+	 * @param value the value to pass to the commands of the graph
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGraphBuilder data(Object value) {
+		addData(value);
+		inputs.add(value.getClass());
+		return this;
+	}
+
+	/**
+	 * Adds a callback to invoke when the graph completes successfully.
+	 * <p>
+	 * An instance of <code>CommandData</code> will get passed to the callback holding all results produced by the commands in the graph.
+	 * </p>
+	 * @param callback the callback to invoke when the graph completes successfully
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGraphBuilder results(ResultCallback<? super CommandData> callback) {
+		addResultCallback(callback);
+		return this;
+	}
+
+	/**
+	 * Adds a callback to invoke when a command of the graph produced an exception.
+	 * @param callback the callback to invoke when the graph produced an error
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGraphBuilder exception(ExceptionCallback<? super Throwable> callback) {
+		addExceptionCallback(callback);
+		return this;
+	}
+
+	/**
+	 * Adds a callback to invoke when the graph gets cancelled.
+	 * @param callback the callback to invoke when the graph gets cancelled
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGraphBuilder cancel(CancelCallback callback) {
+		addCancelCallback(callback);
+		return this;
+	}
+
+	/**
+	 * Builds the graph.
+	 * @throws IllegalStateException if an input of a command has no producer or more than one, or if the dependencies contain a cycle
+	 */
+	@Override
+	public CommandProxy build() {
+		setTarget(new GraphTemplate(newGraph()).newCommand());
+		return super.build();
+	}
+
+	/**
+	 * Compiles the graph, which gets analyzed only once for all executions of the plan.
+	 * @throws IllegalStateException if an input of a command has no producer or more than one, or if the dependencies contain a cycle
+	 */
+	@Override
+	public CommandPlan compile() {
+		return compile(null, new GraphTemplate(newGraph()));
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private CommandGraph newGraph() {
+		CommandGraph graph = new CommandGraph();
+		graph.setIncremental(incremental);
+		for (int i = 0; i < types.size(); i++) {
+			graph.addCommand(types.get(i), produces.get(i));
+		}
+		for (Class<?> input : inputs) {
+			graph.addInput(input);
+		}
+		graph.validate();
+		return graph;
+	}
+
+	private static class GraphTemplate implements CommandTemplate {
+
+		private final CommandGraph graph;
+
+		GraphTemplate(CommandGraph graph) {
+			this.graph = graph;
+		}
+
+		@Override
+		public Command newCommand() {
+			return graph.copy();
+		}
+
+	}
+}
@@ -2,14 +2,22 @@ package org.spicefactory.lib.command.builder;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.base.ConcurrencyLimit;
+import org.spicefactory.lib.command.base.PriorityCommandScheduler;
+import org.spicefactory.lib.command.base.TokenBucket;
 import org.spicefactory.lib.command.callback.CancelCallback;
 import org.spicefactory.lib.command.callback.ExceptionCallback;
 import org.spicefactory.lib.command.callback.ResultCallback;
 import org.spicefactory.lib.command.data.CommandData;
+import org.spicefactory.lib.command.group.CheckpointStore;
 import org.spicefactory.lib.command.group.CommandGroup;
 import org.spicefactory.lib.command.group.CommandParallel;
+import org.spicefactory.lib.command.group.CommandQuorum;
 import org.spicefactory.lib.command.group.CommandSequence;
+import org.spicefactory.lib.command.group.DurationHistory;
 import org.spicefactory.lib.command.proxy.CommandProxy;
 
 /**
@@ -18,10 +26,7 @@ import org.spicefactory.lib.command.proxy.CommandProxy;
  */
 public class CommandGroupBuilder extends AbstractCommandBuilder {
 
-	private boolean skipExceptions;
-	private boolean skipCancellations;
-
-	private final boolean sequence;
+	private final GroupConfig config;
 	private final List<Object> commands;
 
 	/////////////////////////////////////////////////////////////////////////////
@@ -29,7 +34,11 @@ public class CommandGroupBuilder extends AbstractCommandBuilder {
 	/////////////////////////////////////////////////////////////////////////////
 
 	CommandGroupBuilder(boolean sequence) {
-		this.sequence = sequence;
+		this(sequence, 0);
+	}
+
+	CommandGroupBuilder(boolean sequence, int quorum) {
+		this.config = new GroupConfig(sequence, quorum);
 		this.commands = new ArrayList<Object>();
 	}
 
@@ -57,6 +66,30 @@ public class CommandGroupBuilder extends AbstractCommandBuilder {
 		return this;
 	}
 
+	/**
+	 * Starts the group on the shared <code>PriorityCommandScheduler</code> with the specified priority.
+	 * <p>
+	 * The execution becomes asynchronous: the group gets queued and starts on a thread of the scheduler once no group of higher effective
+	 * priority is waiting.
+	 * </p>
+	 * @param priority the priority of the group, higher values start first
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGroupBuilder priority(int priority) {
+		return priority(priority, PriorityCommandScheduler.getDefault());
+	}
+
+	/**
+	 * Starts the group on the specified scheduler with the specified priority.
+	 * @param priority the priority of the group, higher values start first
+	 * @param scheduler the scheduler to queue the group with
+	 * @return this builder instance for method chaining
+	 */
+	public CommandGroupBuilder priority(int priority, PriorityCommandScheduler scheduler) {
+		setPriority(priority, scheduler);
+		return this;
+	}
+
 	/**
 	 * Sets the timeout for the group.
 	 * <p>
@@ -141,28 +174,133 @@ public class CommandGroupBuilder extends AbstractCommandBuilder {
 		return this;
 	}
 
+	/**
+	 * Makes the sequence record its progress in the specified store after each step and resume from the last checkpoint when executed again.
+	 * @param store the store for the checkpoints of the sequence
+	 * @return this builder instance for method chaining
+	 * @throws IllegalStateException if this builder does not build a sequence
+	 */
+	public CommandGroupBuilder checkpoints(CheckpointStore store) {
+		if (!config.sequence || config.quorum > 0) {
+			throw new IllegalStateException("Only a sequence can record checkpoints.");
+		}
+		config.checkpoints = store;
+		return this;
+	}
+
+	/**
+	 * Limits the number of commands the parallel group runs at the same time.
+	 * <p>
+	 * Use an adaptive <code>ConcurrencyLimit</code> to let the limit follow the latency of the commands. All executions of a plan compiled from
+	 * this builder share the same limit, which can be queried for its current value.
+	 * </p>
+	 * @param limit the limit to take a slot from for each running command, may be shared with other groups
+	 * @return this builder instance for method chaining
+	 * @throws IllegalStateException if this builder does not build a parallel group
+	 */
+	public CommandGroupBuilder concurrency(ConcurrencyLimit limit) {
+		if (config.sequence || config.quorum > 0) {
+			throw new IllegalStateException("Only a parallel group can limit its concurrency.");
+		}
+		config.concurrency = limit;
+		return this;
+	}
+
+	/**
+	 * Forks the commands of the parallel group to the specified executor.
+	 * <p>
+	 * Each command, including a nested group with all its own commands, runs on a thread of the executor and the group completes on the thread
+	 * of its last command, without blocking any thread while waiting. Suited to large trees of groups whose leaves are synchronous commands,
+	 * which then run on all the threads of the executor. The commands should not depend on each other's results.
+	 * </p>
+	 * @param executor the executor running the commands, may be shared with other groups
+	 * @return this builder instance for method chaining
+	 * @throws IllegalStateException if this builder does not build a parallel group
+	 */
+	public CommandGroupBuilder fork(Executor executor) {
+		if (config.sequence || config.quorum > 0) {
+			throw new IllegalStateException("Only a parallel group can fork its commands.");
+		}
+		config.fork = executor;
+		return this;
+	}
+
+	/**
+	 * Starts the commands of the parallel group expected to take the longest first.
+	 * <p>
+	 * Useful together with a concurrency or rate limit: a long command started last would delay the completion of the whole group. The durations
+	 * of the completed commands get recorded to the history, commands of a type without recorded duration start first.
+	 * </p>
+	 * @param history the history of the durations by type of command, may be shared with other groups
+	 * @return this builder instance for method chaining
+	 * @throws IllegalStateException if this builder does not build a parallel group
+	 */
+	public CommandGroupBuilder longestFirst(DurationHistory history) {
+		if (config.sequence || config.quorum > 0) {
+			throw new IllegalStateException("Only a parallel group can order its commands by duration.");
+		}
+		config.history = history;
+		return this;
+	}
+
+	/**
+	 * Limits the rate at which the parallel group starts its commands, without bursts.
+	 * <p>
+	 * All executions of a plan compiled from this builder share the same limit.
+	 * </p>
+	 * @param permitsPerSecond the maximum number of commands started per second
+	 * @return this builder instance for method chaining
+	 * @throws IllegalStateException if this builder does not build a parallel group
+	 */
+	public CommandGroupBuilder rateLimit(double permitsPerSecond) {
+		return rateLimit(new TokenBucket(permitsPerSecond));
+	}
+
+	/**
+	 * Limits the rate at which the parallel group starts its commands.
+	 * @param bucket the bucket to take a permit from for each command, may be shared with other groups
+	 * @return this builder instance for method chaining
+	 * @throws IllegalStateException if this builder does not build a parallel group
+	 */
+	public CommandGroupBuilder rateLimit(TokenBucket bucket) {
+		if (config.sequence || config.quorum > 0) {
+			throw new IllegalStateException("Only a parallel group can be rate limited.");
+		}
+		config.rateLimit = bucket;
+		return this;
+	}
+
 	/**
 	 * Instructs the group to ignore exceptions produced by any of its commands and treat them the same way as successful completion. Without
 	 * invoking this method the group will abort with an exception when any one command it executes produces an exception.
+	 * @return this builder instance for method chaining
+	 * @throws IllegalStateException if this builder builds a quorum, which tolerates exceptions as long as the quorum can still be reached
 	 */
 	public CommandGroupBuilder skipExceptions() {
-		skipExceptions = true;
+		if (config.quorum > 0) {
+			throw new IllegalStateException("A quorum cannot skip exceptions.");
+		}
+		config.skipExceptions = true;
 		return this;
 	}
 
 	/**
 	 * Instructs the group to ignore cancellations of any of its commands and treat them the same way as successful completion. Without invoking
 	 * this method the entire group will get cancelled when any one command it executes gats cancelled.
+	 * @return this builder instance for method chaining
+	 * @throws IllegalStateException if this builder builds a quorum, which tolerates cancellations as long as the quorum can still be reached
 	 */
 	public CommandGroupBuilder skipCancellations() {
-		skipCancellations = true;
+		if (config.quorum > 0) {
+			throw new IllegalStateException("A quorum cannot skip cancellations.");
+		}
+		config.skipCancellations = true;
 		return this;
 	}
 
 	@Override
 	public CommandProxy build() {
-		CommandGroup group =
-				sequence ? new CommandSequence(skipExceptions, skipCancellations) : new CommandParallel(skipExceptions, skipCancellations);
+		CommandGroup group = config.newGroup();
 		for (Object command : commands) {
 			group.addCommand(asCommand(command));
 		}
@@ -170,7 +308,91 @@ public class CommandGroupBuilder extends AbstractCommandBuilder {
 		return super.build();
 	}
 
+	@Override
+	public CommandPlan compile() {
+		CommandPlan[] plans = new CommandPlan[commands.size()];
+		for (int i = 0; i < plans.length; i++) {
+			plans[i] = asPlan(commands.get(i));
+		}
+		return compile(null, new GroupTemplate(config.copy(), plans));
+	}
+
 	/////////////////////////////////////////////////////////////////////////////
 	// Internal implementation.
 	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The configuration of the group a builder creates, shared by the builder and the templates it compiles.
+	 */
+	private static class GroupConfig {
+
+		private final boolean sequence;
+		private final int quorum;
+		private boolean skipExceptions;
+		private boolean skipCancellations;
+		private CheckpointStore checkpoints;
+		private TokenBucket rateLimit;
+		private ConcurrencyLimit concurrency;
+		private DurationHistory history;
+		private Executor fork;
+
+		GroupConfig(boolean sequence, int quorum) {
+			this.sequence = sequence;
+			this.quorum = quorum;
+		}
+
+		/**
+		 * Returns a copy of this configuration, unaffected by further changes to the builder.
+		 */
+		GroupConfig copy() {
+			GroupConfig copy = new GroupConfig(sequence, quorum);
+			copy.skipExceptions = skipExceptions;
+			copy.skipCancellations = skipCancellations;
+			copy.checkpoints = checkpoints;
+			copy.rateLimit = rateLimit;
+			copy.concurrency = concurrency;
+			copy.history = history;
+			copy.fork = fork;
+			return copy;
+		}
+
+		CommandGroup newGroup() {
+			if (quorum > 0) {
+				return new CommandQuorum(quorum);
+			}
+			if (sequence) {
+				CommandSequence group = new CommandSequence(skipExceptions, skipCancellations);
+				group.setCheckpointStore(checkpoints);
+				return group;
+			}
+			CommandParallel group = new CommandParallel(skipExceptions, skipCancellations);
+			group.setRateLimit(rateLimit);
+			group.setConcurrencyLimit(concurrency);
+			group.setDurationHistory(history);
+			group.setExecutor(fork);
+			return group;
+		}
+
+	}
+
+	private static class GroupTemplate implements CommandTemplate {
+
+		private final GroupConfig config;
+		private final CommandPlan[] commands;
+
+		GroupTemplate(GroupConfig config, CommandPlan[] commands) {
+			this.config = config;
+			this.commands = commands;
+		}
+
+		@Override
+		public Command newCommand() {
+			CommandGroup group = config.newGroup();
+			for (CommandPlan command : commands) {
+				group.addCommand(command.build());
+			}
+			return group;
+		}
+
+	}
 }
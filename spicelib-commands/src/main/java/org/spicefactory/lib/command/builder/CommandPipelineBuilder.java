@@ -0,0 +1,194 @@
+package org.spicefactory.lib.command.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.callback.CancelCallback;
+import org.spicefactory.lib.command.callback.ExceptionCallback;
+import org.spicefactory.lib.command.callback.ResultCallback;
+import org.spicefactory.lib.command.group.CommandPipeline;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * A builder DSL for creating CommandPipeline instances.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandPipelineBuilder extends AbstractCommandBuilder {
+
+	private Executor executor;
+
+	private final List<StageDefinition> stages = new ArrayList<StageDefinition>();
+	private final List<Object> items = new ArrayList<Object>();
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	CommandPipelineBuilder() {
+		// Use Commands.pipeline().
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Adds a stage to the pipeline.
+	 * @param type the type of command processing the items of this stage
+	 * @param parallelism the maximum number of items this stage processes at the same time
+	 * @param capacity the maximum number of items waiting in front of this stage
+	 * @return this builder instance for method chaining
+	 */
+	public CommandPipelineBuilder stage(Class<?> type, int parallelism, int capacity) {
+		if (parallelism < 1 || capacity < 1) {
+			throw new IllegalArgumentException("Parallelism and capacity must be at least 1.");
+		}
+		stages.add(new StageDefinition(type, parallelism, capacity));
+		return this;
+	}
+
+	/**
+	 * Adds an item to stream through the stages of the pipeline.
+	 * @param item the item to add
+	 * @return this builder instance for method chaining
+	 */
+	public CommandPipelineBuilder item(Object item) {
+		items.add(item);
+		return this;
+	}
+
+	/**
+	 * Adds items to stream through the stages of the pipeline.
+	 * @param items the items to add
+	 * @return this builder instance for method chaining
+	 */
+	public CommandPipelineBuilder items(Iterable<?> items) {
+		for (Object item : items) {
+			this.items.add(item);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the executor running the stage commands, a shared pool with one thread per available processor is used by default.
+	 * @param executor the executor running the stage commands
+	 * @return this builder instance for method chaining
+	 */
+	public CommandPipelineBuilder executor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Sets the timeout for the pipeline.
+	 * <p>
+	 * When the specified amount of time is elapsed the pipeline execution will abort with an error.
+	 * </p>
+	 * @param milliseconds the timeout for this pipeline in milliseconds
+	 * @return this builder instance for method chaining
+	 */
+	public CommandPipelineBuilder timeout(long milliseconds) {
+		setTimeout(milliseconds);
+		return this;
+	}
+
+	/**
+	 * Adds a value that can get passed to the stage commands of the pipeline this builder creates.
+	 * @param value the value to pass to the stage commands
+	 * @return this builder instance for method chaining
+	 */
+	public CommandPipelineBuilder data(Object value) {
+		addData(value);
+		return this;
+	}
+
+	/**
+	 * Adds a callback to invoke when the pipeline completes successfully.
+	 * <p>
+	 * The list of the results of the last stage, in the order of the items, will get passed to the callback.
+	 * </p>
+	 * @param callback the callback to invoke when the pipeline completes successfully
+	 * @return this builder instance for method chaining
+	 */
+	public CommandPipelineBuilder results(ResultCallback<? super List<Object>> callback) {
+		addResultCallback(callback);
+		return this;
+	}
+
+	/**
+	 * Adds a callback to invoke when a stage command produced an exception.
+	 * @param callback the callback to invoke when the pipeline produced an error
+	 * @return this builder instance for method chaining
+	 */
+	public CommandPipelineBuilder exception(ExceptionCallback<? super Throwable> callback) {
+		addExceptionCallback(callback);
+		return this;
+	}
+
+	/**
+	 * Adds a callback to invoke when the pipeline gets cancelled.
+	 * @param callback the callback to invoke when the pipeline gets cancelled
+	 * @return this builder instance for method chaining
+	 */
+	public CommandPipelineBuilder cancel(CancelCallback callback) {
+		addCancelCallback(callback);
+		return this;
+	}
+
+	@Override
+	public CommandProxy build() {
+		setTarget(new PipelineTemplate(executor, stages, items).newCommand());
+		return super.build();
+	}
+
+	@Override
+	public CommandPlan compile() {
+		return compile(null, new PipelineTemplate(executor, stages, items));
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private static class StageDefinition {
+
+		private final Class<?> type;
+		private final int parallelism;
+		private final int capacity;
+
+		StageDefinition(Class<?> type, int parallelism, int capacity) {
+			this.type = type;
+			this.parallelism = parallelism;
+			this.capacity = capacity;
+		}
+
+	}
+
+	private static class PipelineTemplate implements CommandTemplate {
+
+		private final Executor executor;
+		private final StageDefinition[] stages;
+		private final Object[] items;
+
+		PipelineTemplate(Executor executor, List<StageDefinition> stages, List<Object> items) {
+			this.executor = executor;
+			this.stages = stages.toArray(new StageDefinition[stages.size()]);
+			this.items = items.toArray();
+		}
+
+		@Override
+		public Command newCommand() {
+			CommandPipeline pipeline = executor != null ? new CommandPipeline(executor) : new CommandPipeline();
+			for (StageDefinition stage : stages) {
+				pipeline.addStage(stage.type, stage.parallelism, stage.capacity);
+			}
+			for (Object item : items) {
+				pipeline.addItem(item);
+			}
+			return pipeline;
+		}
+
+	}
+}
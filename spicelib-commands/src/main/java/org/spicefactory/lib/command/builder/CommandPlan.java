@@ -0,0 +1,114 @@
+package org.spicefactory.lib.command.builder;
+
+import org.spicefactory.lib.command.base.PriorityCommandScheduler;
+import org.spicefactory.lib.command.events.CommandEvent;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
+import org.spicefactory.lib.event.EventListener;
+
+/**
+ * An immutable, compiled form of a builder configuration.
+ * <p>
+ * The structure of the command (type, nested commands, timeout, priority, data and callbacks) is captured once when the builder gets compiled, each
+ * execution of the plan then only creates the per-execution state: the proxy, the groups and the target commands. A plan is thread-safe and can
+ * be executed any number of times, including concurrently.
+ * </p>
+ * <p>
+ * Callbacks registered on the builder are shared by all executions of the plan.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public final class CommandPlan {
+
+	private final ProxyFactory proxyFactory;
+	private final Class<?> type;
+	private final CommandTemplate target;
+	private final long timeout;
+	private final int priority;
+	private final PriorityCommandScheduler scheduler;
+	private final Object[] data;
+	private final int[] listenerTypes;
+	@SuppressWarnings("rawtypes")
+	private final EventListener[] listeners;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@SuppressWarnings("rawtypes")
+	CommandPlan(ProxyFactory proxyFactory, Class<?> type, CommandTemplate target, long timeout, int priority,
+			PriorityCommandScheduler scheduler, Object[] data, int[] listenerTypes, EventListener[] listeners) {
+		this.proxyFactory = proxyFactory;
+		this.type = type;
+		this.target = target;
+		this.timeout = timeout;
+		this.priority = priority;
+		this.scheduler = scheduler;
+		this.data = data;
+		this.listenerTypes = listenerTypes;
+		this.listeners = listeners;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new proxy for one execution of this plan.
+	 * @return a new proxy with all configuration of this plan applied, not executed yet
+	 */
+	@SuppressWarnings("unchecked")
+	public CommandProxy build() {
+		DefaultCommandProxy proxy = proxyFactory.newProxy();
+		if (type != null) {
+			proxy.setType(type);
+		} else {
+			proxy.setTarget(target.newCommand());
+		}
+		proxy.setTimeout(timeout);
+		if (scheduler != null) {
+			proxy.setPriority(priority, scheduler);
+		}
+		for (Object value : data) {
+			proxy.addData(value);
+		}
+		for (int i = 0; i < listeners.length; i++) {
+			proxy.addEventListener(listenerTypes[i], (EventListener<CommandEvent>) listeners[i]);
+		}
+		return proxy;
+	}
+
+	/**
+	 * Executes this plan once.
+	 * <p>
+	 * A shortcut for calling <code>build().execute()</code>.
+	 * </p>
+	 * @return the proxy of this execution
+	 */
+	public CommandProxy execute() {
+		CommandProxy proxy = build();
+		proxy.execute();
+		return proxy;
+	}
+
+	/**
+	 * Executes this plan once with additional data.
+	 * <p>
+	 * The values get added after the data of the plan, so that they take precedence over values of the same type.
+	 * </p>
+	 * @param values the values to pass to the commands of this execution
+	 * @return the proxy of this execution
+	 */
+	public CommandProxy execute(Object... values) {
+		DefaultCommandProxy proxy = (DefaultCommandProxy) build();
+		for (Object value : values) {
+			proxy.addData(value);
+		}
+		proxy.execute();
+		return proxy;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+}
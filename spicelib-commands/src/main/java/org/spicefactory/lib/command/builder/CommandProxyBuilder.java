@@ -1,10 +1,16 @@
 package org.spicefactory.lib.command.builder;
 
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.base.PriorityCommandScheduler;
 import org.spicefactory.lib.command.callback.CancelCallback;
 import org.spicefactory.lib.command.callback.ExceptionCallback;
 import org.spicefactory.lib.command.callback.ResultCallback;
+import org.spicefactory.lib.command.proxy.CacheKeyFunction;
+import org.spicefactory.lib.command.proxy.CachingCommandProxy;
+import org.spicefactory.lib.command.proxy.CommandCache;
 import org.spicefactory.lib.command.proxy.CommandProxy;
 import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
+import org.spicefactory.lib.command.proxy.HedgedCommandProxy;
 
 /**
  * A builder DSL for creating CommandProxy instances, responsible for executing a single command.
@@ -13,22 +19,82 @@ import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
 public class CommandProxyBuilder extends AbstractCommandBuilder {
 
 	private final Object target;
+	private final boolean customProxy;
+
+	private long hedgeDelay;
+	private double hedgePercentile;
+
+	private CommandCache cache;
+	private CacheKeyFunction keyFunction;
 
 	/////////////////////////////////////////////////////////////////////////////
 	// Package-private.
 	/////////////////////////////////////////////////////////////////////////////
 
+	@Override
+	ProxyFactory proxyFactory() {
+		if (cache != null) {
+			final CommandCache cache = this.cache;
+			final CacheKeyFunction keyFunction = this.keyFunction;
+			// Java 1.8 forward compatibility.
+			return new ProxyFactory() {
+				@Override
+				public DefaultCommandProxy newProxy() {
+					return new CachingCommandProxy(cache, keyFunction);
+				}
+			};
+		}
+		if (hedgeDelay == 0) {
+			return super.proxyFactory();
+		}
+		final long delay = hedgeDelay;
+		final double percentile = hedgePercentile;
+		// Java 1.8 forward compatibility.
+		return new ProxyFactory() {
+			@Override
+			public DefaultCommandProxy newProxy() {
+				return new HedgedCommandProxy(percentile, delay);
+			}
+		};
+	}
+
 	/////////////////////////////////////////////////////////////////////////////
 	// Public API.
 	/////////////////////////////////////////////////////////////////////////////
 
 	public CommandProxyBuilder(Object target) {
-		this(target, new DefaultCommandProxy());
+		this.target = target;
+		this.customProxy = false;
 	}
 
 	public CommandProxyBuilder(Object target, DefaultCommandProxy proxy) {
 		super(proxy);
 		this.target = target;
+		this.customProxy = proxy != null;
+	}
+
+	/**
+	 * Starts the command on the shared <code>PriorityCommandScheduler</code> with the specified priority.
+	 * <p>
+	 * The execution becomes asynchronous: the command gets queued and starts on a thread of the scheduler once no command of higher effective
+	 * priority is waiting.
+	 * </p>
+	 * @param priority the priority of the command, higher values start first
+	 * @return this builder instance for method chaining
+	 */
+	public CommandProxyBuilder priority(int priority) {
+		return priority(priority, PriorityCommandScheduler.getDefault());
+	}
+
+	/**
+	 * Starts the command on the specified scheduler with the specified priority.
+	 * @param priority the priority of the command, higher values start first
+	 * @param scheduler the scheduler to queue the command with
+	 * @return this builder instance for method chaining
+	 */
+	public CommandProxyBuilder priority(int priority, PriorityCommandScheduler scheduler) {
+		setPriority(priority, scheduler);
+		return this;
 	}
 
 	/**
@@ -44,6 +110,82 @@ public class CommandProxyBuilder extends AbstractCommandBuilder {
 		return this;
 	}
 
+	/**
+	 * Hedges slow executions of the command type.
+	 * <p>
+	 * When the command has not completed within the specified delay, a second instance of the command type gets executed. The first instance to
+	 * complete wins and the other one gets cancelled.
+	 * </p>
+	 * @param milliseconds the delay after which a second instance gets executed
+	 * @return this builder instance for method chaining
+	 */
+	public CommandProxyBuilder hedge(long milliseconds) {
+		return hedge(0, milliseconds);
+	}
+
+	/**
+	 * Hedges the executions of the command type that are slower than a percentile of the latencies observed for that type.
+	 * <p>
+	 * When the command has not completed within the percentile, a second instance of the command type gets executed. The first instance to
+	 * complete wins and the other one gets cancelled.
+	 * </p>
+	 * @param percentile the percentile of the observed latencies after which a second instance gets executed, between 0 and 1 (e.g. 0.95)
+	 * @param initialDelay the delay in milliseconds to use until enough latencies were observed
+	 * @return this builder instance for method chaining
+	 */
+	public CommandProxyBuilder hedge(double percentile, long initialDelay) {
+		checkProxyOption("hedged");
+		if (percentile < 0 || percentile >= 1) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 1: " + percentile);
+		}
+		if (initialDelay <= 0) {
+			throw new IllegalArgumentException("Hedge delay must be positive: " + initialDelay);
+		}
+		hedgeDelay = initialDelay;
+		hedgePercentile = percentile;
+		return this;
+	}
+
+	/**
+	 * Caches the results of the command type.
+	 * <p>
+	 * Results are cached under the key the specified function derives from the data available to the command, and shared by all builders of
+	 * the same command type. Executions for a key that is already cached complete immediately, executions for a key that is currently executed
+	 * wait for that execution instead of executing the command again.
+	 * </p>
+	 * @param keyFunction the function deriving the cache key from the data available to the command
+	 * @param maxEntries the maximum number of results to keep, least recently used results are evicted first
+	 * @param ttl the time in milliseconds after which a result expires, 0 to keep results until they get evicted
+	 * @return this builder instance for method chaining
+	 * @throws IllegalStateException if the cache of the command type was created with other bounds
+	 */
+	public CommandProxyBuilder cached(CacheKeyFunction keyFunction, int maxEntries, long ttl) {
+		checkProxyOption("cached");
+		return cached(keyFunction, CommandCache.forType((Class<?>) target, maxEntries, ttl));
+	}
+
+	/**
+	 * Caches the results of the command type in the specified cache.
+	 * <p>
+	 * Results are only shared with the builders using the same cache instance.
+	 * </p>
+	 * @param keyFunction the function deriving the cache key from the data available to the command
+	 * @param cache the cache holding the results
+	 * @return this builder instance for method chaining
+	 */
+	public CommandProxyBuilder cached(CacheKeyFunction keyFunction, CommandCache cache) {
+		checkProxyOption("cached");
+		if (keyFunction == null) {
+			throw new NullPointerException("keyFunction");
+		}
+		if (cache == null) {
+			throw new NullPointerException("cache");
+		}
+		this.cache = cache;
+		this.keyFunction = keyFunction;
+		return this;
+	}
+
 	/**
 	 * Adds a value that can get passed to the command executed by the proxy this builder creates.
 	 * @param value the value to pass to the command
@@ -103,7 +245,34 @@ public class CommandProxyBuilder extends AbstractCommandBuilder {
 		return super.build();
 	}
 
+	@Override
+	public CommandPlan compile() {
+		if (target instanceof Class<?>) {
+			return compile((Class<?>) target, null);
+		}
+		// Java 1.8 forward compatibility.
+		final CommandPlan plan = asPlan(target);
+		return compile(null, new CommandTemplate() {
+			@Override
+			public Command newCommand() {
+				return plan.build();
+			}
+		});
+	}
+
 	/////////////////////////////////////////////////////////////////////////////
 	// Internal implementation.
 	/////////////////////////////////////////////////////////////////////////////
+
+	private void checkProxyOption(String option) {
+		if (!(target instanceof Class<?>)) {
+			throw new IllegalStateException("Only command types can be " + option + ", use a type instead of instance " + target);
+		}
+		if (customProxy) {
+			throw new IllegalStateException("A builder using a custom proxy instance cannot be " + option + ".");
+		}
+		if (hedgeDelay != 0 || cache != null) {
+			throw new IllegalStateException("A command can either be hedged or cached, not both.");
+		}
+	}
 }
@@ -0,0 +1,17 @@
+package org.spicefactory.lib.command.builder;
+
+import org.spicefactory.lib.command.Command;
+
+/**
+ * Creates the target command of a compiled plan for each execution.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+interface CommandTemplate {
+
+	/**
+	 * Creates a new target command.
+	 * @return a new command, ready to be executed
+	 */
+	Command newCommand();
+
+}
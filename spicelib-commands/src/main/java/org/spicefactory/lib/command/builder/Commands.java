@@ -1,5 +1,7 @@
 package org.spicefactory.lib.command.builder;
 
+import java.util.Collection;
+
 /**
  * Entry point for the build DSL for configuring and creating new command instances.
  * <p>
@@ -49,4 +51,54 @@ public final class Commands {
 		return new CommandGroupBuilder(false);
 	}
 
+	/**
+	 * Creates a new builder for processing a collection of items in parallel, one command per chunk of items.
+	 * <p>
+	 * Each command receives its chunk as a <code>List</code>, through its constructor or the <code>execute</code> method of a light command. The
+	 * results of the chunks are passed on in the order of the items.
+	 * </p>
+	 * @param items the items to process
+	 * @param commandType the type of command processing a chunk
+	 * @return a new builder for processing the items in parallel
+	 */
+	public static CommandForEachBuilder forEach(Collection<?> items, Class<?> commandType) {
+		return new CommandForEachBuilder(items, commandType);
+	}
+
+	/**
+	 * Creates a new builder for a pipeline streaming items through stages of commands.
+	 * @return a new builder for a pipeline streaming items through stages of commands
+	 */
+	public static CommandPipelineBuilder pipeline() {
+		return new CommandPipelineBuilder();
+	}
+
+	/**
+	 * Creates a new builder for commands executed in the order of their data dependencies.
+	 * <p>
+	 * Each command starts as soon as the commands producing its inputs completed, the dependencies are analyzed when the graph gets built.
+	 * </p>
+	 * @return a new builder for commands executed in the order of their data dependencies
+	 */
+	public static CommandGraphBuilder graph() {
+		return new CommandGraphBuilder();
+	}
+
+	/**
+	 * Creates a new builder for commands to be executed in parallel until a quorum of them completed successfully.
+	 * <p>
+	 * The commands still running once the quorum is reached get cancelled, a quorum of one is a race won by the fastest command. The group
+	 * tolerates exceptions and cancellations as long as the quorum can still be reached, so the builder rejects <code>skipExceptions</code> and
+	 * <code>skipCancellations</code>.
+	 * </p>
+	 * @param required the number of commands that have to complete successfully
+	 * @return a new builder for commands to be executed in parallel until a quorum of them completed successfully
+	 */
+	public static CommandGroupBuilder quorum(int required) {
+		if (required < 1) {
+			throw new IllegalArgumentException("Quorum must be at least 1: " + required);
+		}
+		return new CommandGroupBuilder(false, required);
+	}
+
 }
@@ -0,0 +1,29 @@
+package org.spicefactory.lib.command.builder;
+
+import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
+
+/**
+ * Creates the proxies of builders and compiled plans.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+interface ProxyFactory {
+
+	/**
+	 * The factory for plain <code>DefaultCommandProxy</code> instances.
+	 */
+	ProxyFactory DEFAULT = new ProxyFactory() {
+
+		@Override
+		public DefaultCommandProxy newProxy() {
+			return new DefaultCommandProxy();
+		}
+
+	};
+
+	/**
+	 * Creates a new, unconfigured proxy.
+	 * @return a new proxy
+	 */
+	DefaultCommandProxy newProxy();
+
+}
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.spicefactory.lib.command.base.Deadline;
+
 /**
  * Default implementation of the CommandData interface.
  * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
@@ -12,6 +14,7 @@ public class DefaultCommandData implements CommandData {
 
 	private final List<Object> data = new ArrayList<Object>();
 	private final CommandData parent;
+	private Deadline deadline;
 
 	private volatile boolean inProgress; // TODO: Check the purpose of inProgress, concurrency ?
 
@@ -46,10 +49,46 @@ public class DefaultCommandData implements CommandData {
 		data.add(value);
 	}
 
+	/**
+	 * Sets the deadline passed down to the commands using this instance.
+	 * <p>
+	 * The deadline is not a result: it is returned when looking up a <code>Deadline</code>, but not by <code>getObjects</code> or by a lookup of
+	 * any other type.
+	 * </p>
+	 * @param deadline the deadline, null to use the one of the parent again
+	 */
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
 	/////////////////////////////////////////////////////////////////////////////
 	// Public API.
 	/////////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * The values added to this instance, without those of its parent.
+	 * @return the values in the order they were added
+	 */
+	public List<Object> getValues() {
+		return new ArrayList<Object>(data);
+	}
+
+	/**
+	 * Creates a copy of this instance and of its parents, which does not see the values added to them afterwards.
+	 * <p>
+	 * The copy can be handed over to a command running on another thread while this instance keeps receiving the results of other commands.
+	 * The values themselves are not copied.
+	 * </p>
+	 * @return a new instance holding the current values
+	 */
+	public DefaultCommandData snapshot() {
+		CommandData parentCopy = parent instanceof DefaultCommandData ? ((DefaultCommandData) parent).snapshot() : parent;
+		DefaultCommandData copy = new DefaultCommandData(parentCopy);
+		copy.data.addAll(data);
+		copy.deadline = deadline;
+		return copy;
+	}
+
 	@Override
 	public Object getObject() {
 		return getObject(Object.class);
@@ -61,6 +100,9 @@ public class DefaultCommandData implements CommandData {
 		if (inProgress) {
 			return null;
 		}
+		if (type == Deadline.class) {
+			return (T) getDeadline();
+		}
 
 		try {
 			inProgress = true;
@@ -117,4 +159,17 @@ public class DefaultCommandData implements CommandData {
 	/////////////////////////////////////////////////////////////////////////////
 	// Internal implementation.
 	/////////////////////////////////////////////////////////////////////////////
+
+	private Deadline getDeadline() {
+		if (deadline != null) {
+			return deadline;
+		}
+		// A deadline passed as data, the nested results carry the deadlines of their own subtree.
+		for (int i = data.size() - 1; i >= 0; i--) {
+			if (data.get(i) instanceof Deadline) {
+				return (Deadline) data.get(i);
+			}
+		}
+		return parent != null ? parent.getObject(Deadline.class) : null;
+	}
 }
@@ -0,0 +1,39 @@
+package org.spicefactory.lib.command.group;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Persists the progress of a CommandSequence, so that a restarted sequence resumes after the last step that completed.
+ * <p>
+ * A checkpoint consists of the index of the next command to execute and the results produced by the steps completed since the previous
+ * checkpoint. Restoring returns the index of the last checkpoint together with the results of all checkpoints in the order they were saved.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public interface CheckpointStore {
+
+	/**
+	 * Reads the last checkpoint.
+	 * @param values the list to which the saved results get added
+	 * @return the index of the next command to execute, 0 if there is no checkpoint
+	 * @throws IOException if the checkpoints cannot be read
+	 */
+	int restore(List<Object> values) throws IOException;
+
+	/**
+	 * Records that a step completed.
+	 * @param index the index of the next command to execute
+	 * @param values the results produced since the previous checkpoint
+	 * @throws IOException if the checkpoint cannot be written
+	 */
+	void save(int index, List<? extends Serializable> values) throws IOException;
+
+	/**
+	 * Removes all checkpoints, invoked when the sequence completed successfully.
+	 * @throws IOException if the checkpoints cannot be removed
+	 */
+	void clear() throws IOException;
+
+}
@@ -0,0 +1,103 @@
+package org.spicefactory.lib.command.group;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.CommandResult;
+import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
+
+/**
+ * A parallel group executing one command per chunk of a collection of items.
+ * <p>
+ * The items are partitioned into chunks of consecutive items, each chunk gets passed as a <code>List</code> to its own instance of the command
+ * type, created through the life-cycle like the target of any proxy. Processing a whole chunk per command keeps the cost of the proxies and of
+ * the bookkeeping of the group proportional to the number of chunks rather than to the number of items.
+ * </p>
+ * <p>
+ * The group completes with a <code>List</code> holding the result of each chunk in the order of the input, regardless of the order in which
+ * the chunks completed. The result of a chunk whose command failed or got cancelled while exceptions or cancellations are skipped is null.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandForEach extends CommandParallel {
+
+	/** The index of the chunk of each child command. */
+	private final Map<Command, Integer> chunks = new IdentityHashMap<Command, Integer>();
+	private final Object[] results;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance.
+	 * @param type the type of command to create for each chunk
+	 * @param items the items to process
+	 * @param chunkSize the maximum number of items passed to one command
+	 * @param skipExceptions if true an error in a command executed by this instance leads to commandComplete getting called, if false the
+	 *            executor will stop with an exception
+	 * @param skipCancellations if true the cancellation of a command executed by this instance leads to commandComplete getting called, if
+	 *            false the executor will stop with an error result
+	 */
+	public CommandForEach(Class<?> type, Collection<?> items, int chunkSize, boolean skipExceptions, boolean skipCancellations) {
+		super(skipExceptions, skipCancellations);
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1: " + chunkSize);
+		}
+		results = new Object[(items.size() + chunkSize - 1) / chunkSize];
+		Iterator<?> it = items.iterator();
+		for (int i = 0; i < results.length; i++) {
+			List<Object> chunk = new ArrayList<Object>(chunkSize);
+			while (chunk.size() < chunkSize && it.hasNext()) {
+				chunk.add(it.next());
+			}
+			DefaultCommandProxy proxy = new DefaultCommandProxy();
+			proxy.setType(type);
+			proxy.addData(chunk);
+			chunks.put(proxy, i);
+			addCommand(proxy);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CommandForEach(" + results.length + " chunks)";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		Arrays.fill(results, null);
+		super.doExecute();
+	}
+
+	@Override
+	protected void commandComplete(CommandResult result) {
+		Object command = result.command();
+		if (command instanceof ForkedCommand) {
+			command = ((ForkedCommand) command).getTarget();
+		}
+		if (result.complete()) {
+			results[chunks.get(command)] = result.getValue();
+		}
+		super.commandComplete(result);
+	}
+
+	@Override
+	protected void complete() {
+		complete(new ArrayList<Object>(Arrays.asList(results)));
+	}
+}
@@ -0,0 +1,467 @@
+package org.spicefactory.lib.command.group;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.CommandResult;
+import org.spicefactory.lib.command.base.AbstractCommandExecutor;
+import org.spicefactory.lib.command.callback.Callback;
+import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
+
+/**
+ * An executor that runs its commands in the order of their data dependencies.
+ * <p>
+ * Commands are added by type. The inputs of a command are the parameter types of its constructor and, for light commands, of its
+ * <code>execute</code> method, which is how <code>CommandData</code> gets injected. Its output is the return type of a synchronous light
+ * command, the type parameter of the <code>Callback</code> of an asynchronous one, or the type declared when adding it. Each input gets
+ * connected to the command producing a matching result, unless it is provided by the environment of the graph.
+ * </p>
+ * <p>
+ * The graph gets analyzed when it is validated, at the latest when it gets executed: inputs without producer, inputs matching several
+ * producers and cycles are rejected with an <code>IllegalStateException</code>. Once executed, every command starts as soon as all its
+ * producers completed, so independent commands run in parallel without explicit sequences and parallel groups.
+ * </p>
+ * <p>
+ * An incremental graph remembers the input values and the result of each command. When one of its copies gets executed, a command whose
+ * input values are equal to those of the previous successful execution is not executed again, its previous result is passed on instead.
+ * Only the commands downstream of a changed input get executed, and not even those if a re-executed command produces an equal result.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandGraph extends AbstractCommandExecutor {
+
+	private final List<NodeDefinition> definitions = new ArrayList<NodeDefinition>();
+	private final Set<Class<?>> inputs = new LinkedHashSet<Class<?>>();
+
+	/** The analyzed graph, shared by copies. */
+	private Node[] nodes;
+	/** The results of previous executions, shared by copies, null unless incremental. */
+	private Memo memo;
+	private boolean incremental;
+
+	private final Map<Command, Execution> running = new IdentityHashMap<Command, Execution>();
+	private int[] pendingInputs;
+	private int completed;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty graph.
+	 */
+	public CommandGraph() {
+		// Commands get added by type.
+	}
+
+	/**
+	 * Adds a command type to this graph, inferring its output.
+	 * @param type the type of command to add
+	 */
+	public void addCommand(Class<?> type) {
+		addCommand(type, null);
+	}
+
+	/**
+	 * Adds a command type to this graph.
+	 * @param type the type of command to add
+	 * @param produces the type of result the command produces, null to infer it
+	 */
+	public void addCommand(Class<?> type, Class<?> produces) {
+		if (nodes != null) {
+			throw new IllegalStateException("Commands cannot be added to a validated graph.");
+		}
+		definitions.add(new NodeDefinition(type, produces));
+	}
+
+	/**
+	 * Sets whether commands get executed again only when their input values changed since their last execution.
+	 * @param incremental true to skip the commands whose input values did not change
+	 */
+	public void setIncremental(boolean incremental) {
+		if (nodes != null) {
+			throw new IllegalStateException("A validated graph cannot be made incremental.");
+		}
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Declares a type of input that is provided by the environment of this graph (e.g. data of the graph or results of a parent executor).
+	 * @param type the type of input that is provided by the environment
+	 */
+	public void addInput(Class<?> type) {
+		if (nodes != null) {
+			throw new IllegalStateException("Inputs cannot be added to a validated graph.");
+		}
+		inputs.add(type);
+	}
+
+	/**
+	 * Analyzes the dependencies of the commands of this graph.
+	 * @throws IllegalStateException if an input has no producer or more than one, or if the dependencies contain a cycle
+	 */
+	public void validate() {
+		if (nodes == null) {
+			nodes = analyze(definitions, inputs);
+			memo = incremental ? new Memo(nodes.length) : null;
+		}
+	}
+
+	/**
+	 * Creates a new graph with the same commands, sharing the analysis of this graph and, if incremental, its previous results.
+	 * @return a new graph, ready to be executed
+	 */
+	public CommandGraph copy() {
+		validate();
+		return new CommandGraph(nodes, memo);
+	}
+
+	@Override
+	public String toString() {
+		return "CommandGraph" + (nodes != null ? Arrays.asList(nodes) : definitions);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private CommandGraph(Node[] nodes, Memo memo) {
+		this.nodes = nodes;
+		this.memo = memo;
+		this.incremental = memo != null;
+	}
+
+	@Override
+	protected boolean isPausable() {
+		// Dependent commands get started from the buffered completions once resumed.
+		return true;
+	}
+
+	@Override
+	protected void doExecute() {
+		validate();
+		running.clear();
+		completed = 0;
+		pendingInputs = new int[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			pendingInputs[i] = nodes[i].producers;
+		}
+		if (nodes.length == 0) {
+			complete();
+			return;
+		}
+		for (Node node : nodes) {
+			if (node.producers == 0 && isActive()) {
+				start(node);
+			}
+		}
+	}
+
+	@Override
+	protected void commandComplete(CommandResult result) {
+		Execution execution = running.remove(result.command());
+		if (memo != null) {
+			memo.store(execution.node.index, execution.inputs, result.getValue());
+		}
+		nodeComplete(execution.node);
+	}
+
+	private void nodeComplete(Node node) {
+		if (++completed == nodes.length) {
+			complete();
+			return;
+		}
+		for (int consumer : node.consumers) {
+			if (--pendingInputs[consumer] == 0 && isActive()) {
+				start(nodes[consumer]);
+			}
+		}
+	}
+
+	private void start(Node node) {
+		Object[] values = null;
+		if (memo != null) {
+			values = new Object[node.inputs.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = getData().getObject(node.inputs[i]);
+			}
+			Object result = memo.lookup(node.index, values);
+			if (result != Memo.MISS) {
+				// Same inputs as last time: pass the previous result on as if the command had produced it.
+				getData().addValue(result);
+				nodeComplete(node);
+				return;
+			}
+		}
+		DefaultCommandProxy proxy = new DefaultCommandProxy();
+		proxy.setType(node.type);
+		running.put(proxy, new Execution(node, values));
+		executeCommand(proxy);
+	}
+
+	private static Node[] analyze(List<NodeDefinition> definitions, Set<Class<?>> inputs) {
+		int n = definitions.size();
+		Class<?>[] outputs = new Class<?>[n];
+		Set<Class<?>> available = new LinkedHashSet<Class<?>>(inputs);
+		for (int i = 0; i < n; i++) {
+			NodeDefinition definition = definitions.get(i);
+			outputs[i] = definition.produces != null ? definition.produces : outputOf(definition.type);
+			if (outputs[i] != null) {
+				available.add(outputs[i]);
+			}
+		}
+
+		List<Set<Integer>> producers = new ArrayList<Set<Integer>>(n);
+		List<Class<?>[]> nodeInputs = new ArrayList<Class<?>[]>(n);
+		for (int i = 0; i < n; i++) {
+			Set<Integer> nodeProducers = new LinkedHashSet<Integer>();
+			Set<Class<?>> types = inputsOf(definitions.get(i).type, available);
+			nodeInputs.add(types.toArray(new Class<?>[types.size()]));
+			for (Class<?> input : types) {
+				int producer = -1;
+				for (int j = 0; j < n; j++) {
+					if (j != i && outputs[j] != null && input.isAssignableFrom(outputs[j])) {
+						if (producer != -1) {
+							throw new IllegalStateException(MessageFormat.format("Input {0} of command {1} is produced by both {2} and {3}.",
+									input.getName(), definitions.get(i), definitions.get(producer), definitions.get(j)));
+						}
+						producer = j;
+					}
+				}
+				if (producer != -1) {
+					nodeProducers.add(producer);
+				} else if (!isSatisfied(input, inputs)) {
+					throw new IllegalStateException(MessageFormat.format("No command produces input {0} of command {1}.", input.getName(),
+							definitions.get(i)));
+				}
+			}
+			producers.add(nodeProducers);
+		}
+
+		Node[] nodes = new Node[n];
+		for (int i = 0; i < n; i++) {
+			List<Integer> consumers = new ArrayList<Integer>();
+			for (int j = 0; j < n; j++) {
+				if (producers.get(j).contains(i)) {
+					consumers.add(j);
+				}
+			}
+			int[] consumerIndices = new int[consumers.size()];
+			for (int c = 0; c < consumerIndices.length; c++) {
+				consumerIndices[c] = consumers.get(c);
+			}
+			nodes[i] = new Node(i, definitions.get(i).type, nodeInputs.get(i), producers.get(i).size(), consumerIndices);
+		}
+		checkCycles(nodes);
+		return nodes;
+	}
+
+	/**
+	 * Removes the commands without pending producers until none is left, any command that cannot be removed is part of or depends on a cycle.
+	 */
+	private static void checkCycles(Node[] nodes) {
+		int[] pending = new int[nodes.length];
+		List<Integer> ready = new ArrayList<Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			pending[i] = nodes[i].producers;
+			if (pending[i] == 0) {
+				ready.add(i);
+			}
+		}
+		int visited = 0;
+		while (!ready.isEmpty()) {
+			Node node = nodes[ready.remove(ready.size() - 1)];
+			visited++;
+			for (int consumer : node.consumers) {
+				if (--pending[consumer] == 0) {
+					ready.add(consumer);
+				}
+			}
+		}
+		if (visited < nodes.length) {
+			List<Node> cycle = new ArrayList<Node>();
+			for (int i = 0; i < nodes.length; i++) {
+				if (pending[i] > 0) {
+					cycle.add(nodes[i]);
+				}
+			}
+			throw new IllegalStateException("Commands have cyclic dependencies: " + cycle);
+		}
+	}
+
+	private static Set<Class<?>> inputsOf(Class<?> type, Set<Class<?>> available) {
+		Set<Class<?>> result = new LinkedHashSet<Class<?>>();
+		Constructor<?>[] constructors = type.getDeclaredConstructors();
+		// Java 1.8 forward compatibility.
+		Arrays.sort(constructors, new Comparator<Constructor<?>>() {
+			@Override
+			public int compare(Constructor<?> c1, Constructor<?> c2) {
+				return c2.getParameterTypes().length - c1.getParameterTypes().length;
+			}
+		});
+		// Same order as DefaultCommandLifecycle: the constructor with the most parameters that can all be resolved.
+		for (int i = 0; i < constructors.length; i++) {
+			Class<?>[] parameters = constructors[i].getParameterTypes();
+			if (i == constructors.length - 1 || areSatisfied(parameters, available)) {
+				result.addAll(Arrays.asList(parameters));
+				break;
+			}
+		}
+		Method execute = lightExecuteMethod(type);
+		if (execute != null) {
+			for (Class<?> parameter : execute.getParameterTypes()) {
+				if (!parameter.isAssignableFrom(Callback.class)) {
+					result.add(parameter);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Class<?> outputOf(Class<?> type) {
+		Method execute = lightExecuteMethod(type);
+		if (execute == null) {
+			return null;
+		}
+		Type[] parameters = execute.getGenericParameterTypes();
+		for (int i = 0; i < parameters.length; i++) {
+			if (execute.getParameterTypes()[i].isAssignableFrom(Callback.class)) {
+				if (parameters[i] instanceof ParameterizedType) {
+					Type result = ((ParameterizedType) parameters[i]).getActualTypeArguments()[0];
+					return result instanceof Class<?> ? (Class<?>) result : null;
+				}
+				return null;
+			}
+		}
+		Class<?> result = execute.getReturnType();
+		return result == void.class || result == Void.class ? null : result;
+	}
+
+	/**
+	 * Finds the execute method the same way as <code>LightCommandAdapterFactory</code>.
+	 */
+	private static Method lightExecuteMethod(Class<?> type) {
+		if (Command.class.isAssignableFrom(type)) {
+			return null;
+		}
+		Method execute = null;
+		for (Method m : type.getMethods()) {
+			if ("execute".equals(m.getName())) {
+				execute = m;
+			}
+		}
+		return execute;
+	}
+
+	private static boolean areSatisfied(Class<?>[] parameters, Set<Class<?>> available) {
+		for (Class<?> parameter : parameters) {
+			if (!isSatisfied(parameter, available)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isSatisfied(Class<?> parameter, Set<Class<?>> available) {
+		for (Class<?> type : available) {
+			if (parameter.isAssignableFrom(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class NodeDefinition {
+
+		private final Class<?> type;
+		private final Class<?> produces;
+
+		NodeDefinition(Class<?> type, Class<?> produces) {
+			this.type = type;
+			this.produces = produces;
+		}
+
+		@Override
+		public String toString() {
+			return type.getSimpleName();
+		}
+
+	}
+
+	private static class Node {
+
+		private final int index;
+		private final Class<?> type;
+		private final Class<?>[] inputs;
+		private final int producers;
+		private final int[] consumers;
+
+		Node(int index, Class<?> type, Class<?>[] inputs, int producers, int[] consumers) {
+			this.index = index;
+			this.type = type;
+			this.inputs = inputs;
+			this.producers = producers;
+			this.consumers = consumers;
+		}
+
+		@Override
+		public String toString() {
+			return type.getSimpleName();
+		}
+
+	}
+
+	private static class Execution {
+
+		private final Node node;
+		private final Object[] inputs;
+
+		Execution(Node node, Object[] inputs) {
+			this.node = node;
+			this.inputs = inputs;
+		}
+
+	}
+
+	/**
+	 * The input values and result of the last successful execution of each command of an incremental graph.
+	 */
+	private static class Memo {
+
+		private static final Object MISS = new Object();
+
+		private final Object[][] inputs;
+		private final Object[] results;
+
+		Memo(int size) {
+			inputs = new Object[size][];
+			results = new Object[size];
+		}
+
+		synchronized Object lookup(int node, Object[] values) {
+			return inputs[node] != null && Arrays.equals(inputs[node], values) ? results[node] : MISS;
+		}
+
+		synchronized void store(int node, Object[] values, Object result) {
+			inputs[node] = values;
+			results[node] = result;
+		}
+
+	}
+}
@@ -1,19 +1,30 @@
 package org.spicefactory.lib.command.group;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.spicefactory.lib.command.Command;
 import org.spicefactory.lib.command.CommandResult;
 import org.spicefactory.lib.command.base.AbstractCommandExecutor;
+import org.spicefactory.lib.command.base.CommandScheduler;
+import org.spicefactory.lib.command.base.ConcurrencyLimit;
+import org.spicefactory.lib.command.base.SerialExecutor;
+import org.spicefactory.lib.command.base.TokenBucket;
 
 /**
  * A CommandGroup implementation that executes its child commands in parallel.
  * <p>
  * If a group is started all the commands that were added to it will be started immediately.
  * <p>
- * If a command gets added to a running group, that command will be started immediately.
+ * If a command gets added to a running group, that command will be started immediately, or when the group gets resumed if it is suspended.
  * <p>
  * When all child commands have completed their operation this group will fire its <code>COMPLETE</code> event. If a group gets cancelled or
  * suspended all child commands that are still running will also be cancelled or suspended in turn.
@@ -22,12 +33,48 @@ import org.spicefactory.lib.command.base.AbstractCommandExecutor;
  * If a child command throws an <code>EXCEPTION</code> event and the <code>skipExceptions</code> property of this group is set to false, then all
  * child commands that are still running will be cancelled and the group will fire an <code>EXCEPTION</code> event.
  * </p>
+ * <p>
+ * With a rate limit the child commands are started as permits of the <code>TokenBucket</code> become available. The group never blocks a
+ * thread while waiting for a permit, the next start is scheduled with the shared <code>CommandScheduler</code> and delayed commands start on
+ * one of its worker threads.
+ * </p>
+ * <p>
+ * With a <code>ConcurrencyLimit</code> the group keeps at most as many child commands running as the limit allows, the others start as running
+ * ones complete. The latency of each child command, from its start to its completion, is reported to the limit so that an adaptive limit can
+ * follow the load of the system the commands call.
+ * </p>
+ * <p>
+ * With a <code>DurationHistory</code> the group starts the child commands expected to take the longest first, so that a long command does not
+ * get started last and delay the completion of the whole group when the starts are limited. Commands of a type without recorded duration start
+ * before all others, the duration of each completed child command gets recorded to the history.
+ * </p>
+ * <p>
+ * With an executor the group forks its child commands: each one gets executed on a thread of the executor, a nested group along with all of
+ * its own children. The completions of the children are processed one at a time by whichever thread delivers them, no thread ever blocks
+ * waiting for the others, and the group completes on the thread of its last child. Recursive trees of groups thereby spread over all the
+ * threads of the executor. The children of a forked group run concurrently and should not depend on each other's results.
+ * </p>
+ * <p>
+ * As soon as the children may get started from other threads, with a rate limit, a concurrency limit or an executor, the group processes their
+ * starts and completions one at a time through a serial executor.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
  */
 public class CommandParallel extends AbstractCommandExecutor implements CommandGroup {
 
 	private final AtomicInteger completed = new AtomicInteger(0);
 	private final List<Command> commands = new LinkedList<Command>();
+	/** Commands waiting to be started, because the group is suspended or because of the rate limit. */
+	private final List<Command> pending = new LinkedList<Command>();
+	private TokenBucket rateLimit;
+	private ConcurrencyLimit concurrency;
+	private DurationHistory history;
+	/** Start time of the running child commands, when the concurrency is limited or the durations recorded. */
+	private final Map<Command, Long> started = new IdentityHashMap<Command, Long>();
+	private ScheduledFuture<?> timer;
+	private Executor forkExecutor;
+	/** Serializes the starts of the children, and their completions when they may get started from other threads. */
+	private final SerialExecutor serial = new SerialExecutor();
 
 	/////////////////////////////////////////////////////////////////////////////
 	// Package-private.
@@ -41,7 +88,7 @@ public class CommandParallel extends AbstractCommandExecutor implements CommandG
 	 * Creates a new instance.
 	 * @param skipExceptions if true an error in a command executed by this instance leads to commandComplete getting called, if false the
 	 *            executor will stop with an exception
-	 * @param skipCancelllations if true the cancellation of a command executed by this instance leads to commandComplete getting called, if
+	 * @param skipCancellations if true the cancellation of a command executed by this instance leads to commandComplete getting called, if
 	 *            false the executor will stop with an error result
 	 */
 	public CommandParallel(boolean skipExceptions, boolean skipCancellations) {
@@ -52,14 +99,66 @@ public class CommandParallel extends AbstractCommandExecutor implements CommandG
 	public void addCommand(Command command) {
 		commands.add(command);
 		if (isActive()) {
-			executeCommand(command);
+			pending.add(command);
+			sortPending();
+			startPending();
 		}
 	}
 
+	/**
+	 * Limits the number of child commands running at the same time.
+	 * @param concurrency the limit to take a slot from for each running child command, null for no limit
+	 */
+	public void setConcurrencyLimit(ConcurrencyLimit concurrency) {
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Starts the child commands in order of their expected duration, the longest first.
+	 * @param history the history providing the expected durations and recording the actual ones, null to start the commands in the order
+	 *            they were added
+	 */
+	public void setDurationHistory(DurationHistory history) {
+		this.history = history;
+	}
+
+	/**
+	 * Forks the child commands to the specified executor instead of starting them on the calling thread.
+	 * @param executor the executor running the child commands, null to start them on the calling thread
+	 */
+	public void setExecutor(Executor executor) {
+		this.forkExecutor = executor;
+	}
+
+	/**
+	 * Limits the rate at which the child commands get started.
+	 * @param rateLimit the bucket to take a permit from for each child command, null for no limit
+	 */
+	public void setRateLimit(TokenBucket rateLimit) {
+		this.rateLimit = rateLimit;
+	}
+
 	/////////////////////////////////////////////////////////////////////////////
 	// Internal implementation.
 	/////////////////////////////////////////////////////////////////////////////
 
+	@Override
+	protected boolean isPausable() {
+		// Children that cannot be suspended keep running, the group only waits for them once resumed.
+		return true;
+	}
+
+	@Override
+	protected boolean isReported(Command command) {
+		// A forked child gets reported by its adapter, on the thread running it.
+		return !(command instanceof ForkedCommand);
+	}
+
+	@Override
+	protected Executor getCompletionExecutor() {
+		return rateLimit != null || concurrency != null || forkExecutor != null ? serial : null;
+	}
+
 	@Override
 	protected void doExecute() {
 		if (commands.size() == 0) {
@@ -67,15 +166,46 @@ public class CommandParallel extends AbstractCommandExecutor implements CommandG
 			return;
 		}
 		completed.set(0);
-		for (Command command : commands) {
-			executeCommand(command);
+		pending.clear();
+		pending.addAll(commands);
+		sortPending();
+		startPending();
+	}
+
+	@Override
+	protected void doResume() {
+		super.doResume();
+		startPending();
+	}
+
+	@Override
+	protected void doCancel() {
+		pending.clear();
+		CommandScheduler.cancel(timer);
+		timer = null;
+		if (concurrency != null) {
+			concurrency.removeWaiter(slot);
 		}
+		releaseAll();
+		super.doCancel();
 	}
 
 	@Override
 	protected void commandComplete(CommandResult result) {
+		Long start = started.remove(result.command());
+		if (start != null) {
+			long latency = System.nanoTime() - start;
+			if (concurrency != null) {
+				concurrency.release(latency, result.complete());
+			}
+			if (history != null && result.complete()) {
+				history.record((Command) result.command(), latency);
+			}
+		}
 		if (completed.incrementAndGet() == commands.size()) {
 			complete();
+		} else {
+			startPending();
 		}
 	}
 
@@ -84,4 +214,119 @@ public class CommandParallel extends AbstractCommandExecutor implements CommandG
 		return "CommandParallel" + commands;
 	}
 
+	private void startPending() {
+		serial.execute(start); // Runs after the completion being processed, if any.
+	}
+
+	/**
+	 * Starts the pending commands the limits allow.
+	 * @return true if a slot of the concurrency limit was asked for
+	 */
+	private boolean startNext() {
+		if (timer != null) {
+			return false; // Waiting for a permit.
+		}
+		boolean acquiring = false;
+		while (!pending.isEmpty() && isActive() && !isSuspended()) {
+			acquiring = true;
+			if (concurrency != null && !concurrency.tryAcquire(slot)) {
+				return true; // Called back when a slot frees up.
+			}
+			if (rateLimit != null) {
+				long wait = rateLimit.tryAcquire();
+				if (wait > 0) {
+					if (concurrency != null) {
+						concurrency.release();
+					}
+					// The delayed commands must not start on the scheduler thread.
+					timer = CommandScheduler.scheduleWork(permit, wait, TimeUnit.NANOSECONDS);
+					return true;
+				}
+			}
+			Command command = pending.remove(0);
+			if (forkExecutor != null) {
+				command = new ForkedCommand(command, forkExecutor, serial);
+			}
+			if (concurrency != null || history != null) {
+				started.put(command, System.nanoTime());
+			}
+			executeCommand(command);
+		}
+		return acquiring;
+	}
+
+	private void sortPending() {
+		if (history != null) {
+			// Stable, commands with the same expected duration keep the order they were added in.
+			Collections.sort(pending, longestFirst);
+		}
+	}
+
+	private void releaseAll() {
+		int running = started.size();
+		started.clear();
+		if (concurrency != null) {
+			for (int i = 0; i < running; i++) {
+				concurrency.release();
+			}
+		}
+	}
+
+	// Java 1.6 legacy for Java 1.8.
+	private final Comparator<Command> longestFirst = new Comparator<Command>() {
+		@Override
+		public int compare(Command c1, Command c2) {
+			long d1 = history.getExpected(c1);
+			long d2 = history.getExpected(c2);
+			// Unknown durations (-1) count as the longest, so that they get measured early.
+			d1 = d1 < 0 ? Long.MAX_VALUE : d1;
+			d2 = d2 < 0 ? Long.MAX_VALUE : d2;
+			return d1 > d2 ? -1 : d1 < d2 ? 1 : 0;
+		}
+	};
+
+	// Java 1.6 legacy for Java 1.8.
+	private final Runnable slot = new Runnable() {
+		@Override
+		public void run() {
+			// Called back on the thread releasing the slot, which may belong to another group.
+			serial.execute(woken);
+		}
+	};
+
+	// Java 1.6 legacy for Java 1.8.
+	private final Runnable woken = new Runnable() {
+		@Override
+		public void run() {
+			if (!startNext()) {
+				concurrency.wakeNext(); // Nothing to start any more, the slot goes to the next waiter.
+			}
+		}
+	};
+
+	// Java 1.6 legacy for Java 1.8.
+	private final Runnable start = new Runnable() {
+		@Override
+		public void run() {
+			startNext();
+		}
+	};
+
+	// Java 1.6 legacy for Java 1.8.
+	private final Runnable permit = new Runnable() {
+		@Override
+		public void run() {
+			serial.execute(permitted);
+		}
+	};
+
+	// Java 1.6 legacy for Java 1.8.
+	private final Runnable permitted = new Runnable() {
+		@Override
+		public void run() {
+			timer = null;
+			startNext();
+		}
+	};
+
 }
@@ -0,0 +1,288 @@
+package org.spicefactory.lib.command.group;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.CommandResult;
+import org.spicefactory.lib.command.base.AbstractCommandExecutor;
+import org.spicefactory.lib.command.base.SerialExecutor;
+import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
+
+/**
+ * An executor that streams a series of items through an ordered list of stages.
+ * <p>
+ * Each stage is a command type, a new instance of which gets created for every item with the item passed as data, the result of stage k is the
+ * item of stage k+1. Stages work concurrently on different items: while stage k processes item n, stage k+1 may already process item n-1. Each
+ * stage executes up to its parallelism items at a time on the executor of the pipeline, and the queue in front of each stage is bounded, so
+ * that a slow stage holds back the stages before it instead of accumulating items.
+ * </p>
+ * <p>
+ * When all items went through the last stage this pipeline completes with the list of the results of the last stage, in the order of the
+ * items. If a stage command throws an exception or gets cancelled, the items still in flight are cancelled and the pipeline fires an
+ * <code>EXCEPTION</code> or <code>CANCEL</code> event. Suspending the pipeline stops it from starting new stage commands.
+ * </p>
+ * <p>
+ * Stage commands are executed like the children of a group, so that life-cycles, tracers and journals see each of them. Their results are
+ * handed to the next stage only, they are not added to the data of the pipeline.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandPipeline extends AbstractCommandExecutor {
+
+	private final Executor executor;
+	/** Joins the completions of the stage commands and the items added while running. */
+	private final SerialExecutor serial = new SerialExecutor();
+	private final List<Stage> stages = new ArrayList<Stage>();
+	private final List<Object> items = new LinkedList<Object>();
+
+	/** The item processed by each running stage command. */
+	private final Map<Command, Item> running = new IdentityHashMap<Command, Item>();
+	private List<Object> results;
+	private int completed;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new pipeline executing its stage commands on a shared pool with one thread per available processor.
+	 */
+	public CommandPipeline() {
+		this(DefaultExecutor.INSTANCE);
+	}
+
+	/**
+	 * Creates a new pipeline.
+	 * @param executor the executor running the stage commands
+	 */
+	public CommandPipeline(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Adds a stage to this pipeline.
+	 * @param type the type of command processing the items of this stage
+	 * @param parallelism the maximum number of items this stage processes at the same time
+	 * @param capacity the maximum number of items waiting in front of this stage, ignored for the first stage which receives the items of
+	 *            the pipeline
+	 */
+	public synchronized void addStage(Class<?> type, int parallelism, int capacity) {
+		if (isActive()) {
+			throw new IllegalStateException("Stages cannot be added to a running pipeline.");
+		}
+		if (parallelism < 1 || capacity < 1) {
+			throw new IllegalArgumentException("Parallelism and capacity must be at least 1.");
+		}
+		stages.add(new Stage(type, parallelism, capacity));
+	}
+
+	/**
+	 * Adds an item to this pipeline.
+	 * <p>
+	 * If the pipeline is running, the item gets queued in front of the first stage.
+	 * </p>
+	 * @param item the item to stream through the stages
+	 */
+	public void addItem(final Object item) {
+		// Java 1.8 forward compatibility.
+		serial.execute(new Runnable() {
+			@Override
+			public void run() {
+				queueItem(item);
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		return "CommandPipeline" + stages;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected synchronized void doExecute() {
+		if (stages.isEmpty()) {
+			throw new IllegalStateException("A pipeline requires at least one stage.");
+		}
+		running.clear();
+		results = new ArrayList<Object>(Arrays.asList(new Object[items.size()]));
+		completed = 0;
+		int index = 0;
+		for (Object item : items) {
+			stages.get(0).queue.add(new Item(0, index++, item));
+		}
+		if (items.isEmpty()) {
+			complete(results);
+			return;
+		}
+		pump();
+	}
+
+	@Override
+	protected synchronized void doCancel() {
+		for (Stage stage : stages) {
+			stage.queue.clear();
+			stage.running = 0;
+		}
+		running.clear();
+		super.doCancel();
+	}
+
+	@Override
+	protected synchronized void doResume() {
+		super.doResume();
+		pump();
+	}
+
+	@Override
+	protected boolean isPausable() {
+		// Running stage commands keep running, their results are processed once resumed.
+		return true;
+	}
+
+	@Override
+	protected boolean isReported(Command command) {
+		// Forked commands report the stage command themselves.
+		return false;
+	}
+
+	@Override
+	protected boolean isResultAdded(Command command) {
+		return false;
+	}
+
+	@Override
+	protected Executor getCompletionExecutor() {
+		return serial;
+	}
+
+	@Override
+	protected synchronized void commandComplete(CommandResult result) {
+		Item item = running.remove(result.command());
+		if (item == null) {
+			return; // Cancelled.
+		}
+		stages.get(item.stage).running--;
+		if (item.stage + 1 < stages.size()) {
+			stages.get(item.stage + 1).queue.add(new Item(item.stage + 1, item.index, result.getValue()));
+		} else {
+			results.set(item.index, result.getValue());
+			if (++completed == results.size()) {
+				complete(results);
+				return;
+			}
+		}
+		pump();
+	}
+
+	private synchronized void queueItem(Object item) {
+		items.add(item);
+		if (isActive()) {
+			stages.get(0).queue.add(new Item(0, items.size() - 1, item));
+			results.add(null);
+			pump();
+		}
+	}
+
+	/**
+	 * Starts as many stage commands as the parallelism and the queues allow, the last stages first so that items leave the pipeline as soon as
+	 * possible.
+	 */
+	private void pump() {
+		if (!isActive() || isSuspended()) {
+			return;
+		}
+		for (int k = stages.size() - 1; k >= 0; k--) {
+			Stage stage = stages.get(k);
+			Stage next = k + 1 < stages.size() ? stages.get(k + 1) : null;
+			while (stage.running < stage.parallelism && !stage.queue.isEmpty()
+					&& (next == null || next.queue.size() + stage.running < next.capacity)) {
+				start(k, stage.queue.remove(0));
+			}
+		}
+	}
+
+	private void start(int k, Item item) {
+		Stage stage = stages.get(k);
+		stage.running++;
+		DefaultCommandProxy proxy = new DefaultCommandProxy();
+		proxy.setType(stage.type);
+		proxy.addData(item.value);
+		// The stage command reads a snapshot of the data of the pipeline on a thread of the executor.
+		Command command = new ForkedCommand(proxy, executor, serial);
+		running.put(command, item);
+		executeCommand(command);
+	}
+
+	private static class Stage {
+
+		private final Class<?> type;
+		private final int parallelism;
+		private final int capacity;
+		private final List<Item> queue = new LinkedList<Item>();
+		private int running;
+
+		Stage(Class<?> type, int parallelism, int capacity) {
+			this.type = type;
+			this.parallelism = parallelism;
+			this.capacity = capacity;
+		}
+
+		@Override
+		public String toString() {
+			return type.getSimpleName();
+		}
+
+	}
+
+	private static class Item {
+
+		private final int stage;
+		private final int index;
+		private final Object value;
+
+		Item(int stage, int index, Object value) {
+			this.stage = stage;
+			this.index = index;
+			this.value = value;
+		}
+
+	}
+
+	/**
+	 * Lazily created pool shared by the pipelines that do not specify an executor.
+	 */
+	private static class DefaultExecutor {
+
+		private static final AtomicInteger threads = new AtomicInteger(0);
+
+		// Java 1.8 forward compatibility.
+		private static final ExecutorService INSTANCE = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "spicelib-command-pipeline-" + threads.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+	}
+}
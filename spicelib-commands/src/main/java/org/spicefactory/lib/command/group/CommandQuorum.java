@@ -0,0 +1,127 @@
+package org.spicefactory.lib.command.group;
+
+import java.text.MessageFormat;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.CommandResult;
+import org.spicefactory.lib.command.base.AbstractCommandExecutor;
+import org.spicefactory.lib.command.events.CommandException;
+
+/**
+ * A CommandGroup implementation that executes its child commands in parallel and completes as soon as a quorum of them completed successfully.
+ * <p>
+ * If a group is started all the commands that were added to it will be started immediately. When the required number of child commands have
+ * completed their operation this group cancels the child commands that are still running and fires its <code>COMPLETE</code> event. A quorum of
+ * one is a race won by the fastest command.
+ * </p>
+ * <p>
+ * Exceptions and cancellations of child commands are tolerated as long as the quorum can still be reached. Once too many child commands failed,
+ * the remaining ones get cancelled and the group fires an <code>EXCEPTION</code> event, or a <code>CANCEL</code> event if the last failure was a
+ * cancellation.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandQuorum extends AbstractCommandExecutor implements CommandGroup {
+
+	private final int required;
+	private final List<Command> commands = new LinkedList<Command>();
+	/** Commands added while the group was suspended. */
+	private final List<Command> added = new LinkedList<Command>();
+
+	private int succeeded;
+	private int failed;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance.
+	 * @param required the number of child commands that have to complete successfully
+	 */
+	public CommandQuorum(int required) {
+		super(true, true);
+		if (required < 1) {
+			throw new IllegalArgumentException("Quorum must be at least 1: " + required);
+		}
+		this.required = required;
+	}
+
+	@Override
+	public void addCommand(Command command) {
+		commands.add(command);
+		if (isSuspended()) {
+			added.add(command);
+		} else if (isActive()) {
+			executeCommand(command);
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected boolean isPausable() {
+		// Votes arriving while suspended are counted once resumed.
+		return true;
+	}
+
+	@Override
+	protected void doExecute() {
+		if (commands.size() < required) {
+			throw new IllegalStateException(MessageFormat.format("Quorum of {0} cannot be reached with {1} commands.", required, commands.size()));
+		}
+		succeeded = 0;
+		failed = 0;
+		for (Command command : commands) {
+			if (!isActive()) {
+				break;
+			}
+			executeCommand(command);
+		}
+	}
+
+	@Override
+	protected void doResume() {
+		super.doResume();
+		while (!added.isEmpty() && isActive() && !isSuspended()) {
+			executeCommand(added.remove(0));
+		}
+	}
+
+	@Override
+	protected void doCancel() {
+		added.clear();
+		super.doCancel();
+	}
+
+	@Override
+	protected void commandComplete(CommandResult result) {
+		if (result.complete()) {
+			if (++succeeded == required) {
+				doCancel();
+				complete();
+			}
+		} else if (commands.size() - ++failed < required) {
+			doCancel();
+			if (result.getValue() != null) {
+				exception(new CommandException(this, (Command) result.command(), result.getValue()));
+			} else {
+				cancel();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CommandQuorum(" + required + ")" + commands;
+	}
+
+}
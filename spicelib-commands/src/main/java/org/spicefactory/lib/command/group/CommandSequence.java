@@ -1,11 +1,17 @@
 package org.spicefactory.lib.command.group;
 
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.spicefactory.lib.command.Command;
 import org.spicefactory.lib.command.CommandResult;
 import org.spicefactory.lib.command.base.AbstractCommandExecutor;
+import org.spicefactory.lib.command.data.DefaultCommandData;
+import org.spicefactory.lib.command.events.CommandException;
 
 /**
  * A CommandGroup implementation that executes its child commands sequentially.
@@ -17,12 +23,21 @@ import org.spicefactory.lib.command.base.AbstractCommandExecutor;
  * If a child command throws an <code>EXCEPTION</code> event and the <code>skipExceptions</code> property of this sequence is set to false, then
  * the sequence will fire an <code>EXCEPTION</code> event and will not execute its remaining child commands.
  * </p>
+ * <p>
+ * With a <code>CheckpointStore</code> the sequence saves its progress after each step, together with the results of the step. When executed
+ * again, for instance after the process crashed or the sequence failed, it restores the results and resumes with the command following the
+ * last checkpoint. The checkpoints are cleared once the sequence completed. The results have to be serializable, the result of a nested group
+ * is saved as the results of its own commands. A result that cannot be saved, or a checkpoint that cannot be written, fails the sequence, as
+ * resuming after a later checkpoint would run the remaining commands without that result. Checkpoints that cannot be read fail the sequence
+ * before it starts its first command.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
  */
 public class CommandSequence extends AbstractCommandExecutor implements CommandGroup {
 
 	private int currentIndex; // This does not need synchronization/concurrent access.
 	private final List<Command> commands = new LinkedList<Command>();
+	private CheckpointStore checkpoints;
 
 	/////////////////////////////////////////////////////////////////////////////
 	// Package-private.
@@ -36,7 +51,7 @@ public class CommandSequence extends AbstractCommandExecutor implements CommandG
 	 * Creates a new sequence.
 	 * @param skipExceptions if true an error in a command executed by this instance leads to commandComplete getting called, if false the
 	 *            executor will stop with an exception
-	 * @param skipCancelllations if true the cancellation of a command executed by this instance leads to commandComplete getting called, if
+	 * @param skipCancellations if true the cancellation of a command executed by this instance leads to commandComplete getting called, if
 	 *            false the executor will stop with an error result
 	 */
 	public CommandSequence(boolean skipExceptions, boolean skipCancellations) {
@@ -48,29 +63,97 @@ public class CommandSequence extends AbstractCommandExecutor implements CommandG
 		commands.add(command);
 	}
 
+	/**
+	 * Sets the store recording the progress of this sequence.
+	 * @param checkpoints the checkpoint store, null to disable checkpoints
+	 */
+	public void setCheckpointStore(CheckpointStore checkpoints) {
+		this.checkpoints = checkpoints;
+	}
+
 	/////////////////////////////////////////////////////////////////////////////
 	// Internal implementation.
 	/////////////////////////////////////////////////////////////////////////////
 
+	@Override
+	protected boolean isPausable() {
+		// Children are started from commandComplete, which is deferred while suspended.
+		return true;
+	}
+
 	@Override
 	protected void doExecute() {
 		currentIndex = 0;
+		if (checkpoints != null) {
+			List<Object> values = new ArrayList<Object>();
+			try {
+				currentIndex = Math.min(checkpoints.restore(values), commands.size());
+			}
+			catch (IOException e) {
+				logger.error("Cannot restore checkpoints of sequence {}.", this, e);
+				exception(new CommandException(this, this, e));
+				return;
+			}
+			for (Object value : values) {
+				getData().addValue(value);
+			}
+			if (currentIndex > 0) {
+				logger.info("Resuming sequence {} at command {} from checkpoint.", getClass(), currentIndex);
+			}
+		}
 		nextCommand();
 	}
 
 	@Override
 	protected void commandComplete(CommandResult result) {
 		currentIndex++;
+		if (checkpoints != null) {
+			List<Serializable> values = new ArrayList<Serializable>(1);
+			try {
+				if (result.complete()) {
+					addCheckpointValue(result.getValue(), values);
+				}
+				checkpoints.save(currentIndex, values);
+			}
+			catch (IOException e) {
+				logger.error("Cannot save checkpoint of sequence {} at command {}.", this, currentIndex, e);
+				exception(new CommandException(this, (Command) result.command(), e));
+				return;
+			}
+		}
 		nextCommand();
 	}
 
+	private static void addCheckpointValue(Object value, List<Serializable> values) throws NotSerializableException {
+		if (value == null) {
+			return;
+		}
+		if (value instanceof DefaultCommandData) {
+			for (Object nested : ((DefaultCommandData) value).getValues()) {
+				addCheckpointValue(nested, values);
+			}
+		} else if (value instanceof Serializable) {
+			values.add((Serializable) value);
+		} else {
+			throw new NotSerializableException(value.getClass().getName());
+		}
+	}
+
 	private void nextCommand() {
 		if (commands.size() == currentIndex) {
-			logger.info("Completed all commands in {}.", getClass());
+			logger.debug("Completed all commands in {}.", getClass());
+			if (checkpoints != null) {
+				try {
+					checkpoints.clear();
+				}
+				catch (IOException e) {
+					logger.error("Cannot clear checkpoints of sequence {}.", this, e);
+				}
+			}
 			complete();
 		} else {
 			Command command = commands.get(currentIndex);
-			logger.info("Executing next command '{}' in sequence {}.", command, getClass());
+			logger.debug("Executing next command '{}' in sequence {}.", command, getClass());
 			executeCommand(command);
 		}
 	}
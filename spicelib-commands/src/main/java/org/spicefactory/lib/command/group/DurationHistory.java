@@ -0,0 +1,203 @@
+package org.spicefactory.lib.command.group;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.adapter.CommandAdapter;
+import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
+
+/**
+ * Remembers how long the commands of each type usually take.
+ * <p>
+ * The expected duration of a type is an exponentially weighted moving average of its recorded durations, so that it follows gradual changes
+ * while smoothing out single outliers. A history backed by a file loads it when created and writes it back every 100 recorded durations and on
+ * <code>save</code>, so that the durations learned by one run of the application are available to the next. The file is a small properties file
+ * mapping the name of each type to its expected duration in nanoseconds.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class DurationHistory {
+
+	private static final Logger logger = LoggerFactory.getLogger(DurationHistory.class);
+
+	/** Weight of a new duration in the moving average. */
+	private static final double ALPHA = 0.2;
+	private static final int SAVE_INTERVAL = 100;
+
+	private final File file;
+	private final Map<String, Long> durations = new HashMap<String, Long>();
+	/** Serializes the writes of the file, the durations are recorded from the threads completing the commands. */
+	private final Object fileLock = new Object();
+	private int unsaved;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a history kept in memory only.
+	 */
+	public DurationHistory() {
+		this.file = null;
+	}
+
+	/**
+	 * Creates a history backed by the specified file, loading it if it exists.
+	 * @param file the file holding the history
+	 * @throws IOException if the existing file cannot be read
+	 */
+	public DurationHistory(File file) throws IOException {
+		this.file = file;
+		if (file.exists()) {
+			Properties properties = new Properties();
+			InputStream in = new FileInputStream(file);
+			try {
+				properties.load(in);
+			}
+			finally {
+				in.close();
+			}
+			for (String type : properties.stringPropertyNames()) {
+				try {
+					durations.put(type, Long.valueOf(properties.getProperty(type)));
+				}
+				catch (NumberFormatException e) {
+					logger.warn("Ignoring invalid duration of '{}' in {}.", type, file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the duration of an execution.
+	 * @param command the command that completed
+	 * @param nanos the time it took in nanoseconds
+	 */
+	public void record(Command command, long nanos) {
+		record(typeOf(command), nanos);
+	}
+
+	/**
+	 * Records the duration of an execution.
+	 * @param type the type of the command that completed
+	 * @param nanos the time it took in nanoseconds
+	 */
+	public void record(Class<?> type, long nanos) {
+		boolean save;
+		synchronized (this) {
+			Long previous = durations.get(type.getName());
+			durations.put(type.getName(), previous == null ? nanos : Math.round(previous + ALPHA * (nanos - previous)));
+			save = file != null && ++unsaved >= SAVE_INTERVAL;
+		}
+		if (save) {
+			try {
+				save();
+			}
+			catch (IOException e) {
+				logger.error("Cannot save duration history to {}.", file, e);
+			}
+		}
+	}
+
+	/**
+	 * The expected duration of the specified command.
+	 * @param command the command about to be executed
+	 * @return the expected duration in nanoseconds, -1 if no execution of its type was recorded yet
+	 */
+	public long getExpected(Command command) {
+		return getExpected(typeOf(command));
+	}
+
+	/**
+	 * The expected duration of the commands of the specified type.
+	 * @param type the type of command
+	 * @return the expected duration in nanoseconds, -1 if no execution of the type was recorded yet
+	 */
+	public synchronized long getExpected(Class<?> type) {
+		Long duration = durations.get(type.getName());
+		return duration != null ? duration : -1;
+	}
+
+	/**
+	 * Writes the history to its file, replacing the previous content at once so that a crash never leaves a partial file behind.
+	 * <p>
+	 * Safe to call from several threads, the writes of the file are serialized.
+	 * </p>
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save() throws IOException {
+		if (file == null) {
+			return;
+		}
+		synchronized (fileLock) {
+			// Taken under the file lock, so that an older copy never replaces a newer one.
+			Properties properties = new Properties();
+			synchronized (this) {
+				for (Map.Entry<String, Long> entry : durations.entrySet()) {
+					properties.setProperty(entry.getKey(), entry.getValue().toString());
+				}
+				unsaved = 0;
+			}
+			File temp = new File(file.getPath() + ".tmp");
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				properties.store(out, "Expected command durations in nanoseconds");
+			}
+			finally {
+				out.close();
+			}
+			if (!temp.renameTo(file)) {
+				// Windows does not replace an existing file on rename.
+				if (!file.delete() || !temp.renameTo(file)) {
+					throw new IOException("Cannot replace " + file);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DurationHistory(" + (file != null ? file : "memory") + ")";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The type identifying a command: the target of an adapter or proxy rather than the adapter or proxy itself.
+	 */
+	private static Class<?> typeOf(Command command) {
+		if (command instanceof CommandAdapter) {
+			Object target = ((CommandAdapter) command).getTarget();
+			if (target instanceof Command) {
+				return typeOf((Command) target);
+			}
+			return target != null ? target.getClass() : command.getClass();
+		}
+		if (command instanceof DefaultCommandProxy) {
+			DefaultCommandProxy proxy = (DefaultCommandProxy) command;
+			if (proxy.getType() != null) {
+				return proxy.getType();
+			}
+			if (proxy.getTarget() != null) {
+				return typeOf(proxy.getTarget());
+			}
+		}
+		return command.getClass();
+	}
+}
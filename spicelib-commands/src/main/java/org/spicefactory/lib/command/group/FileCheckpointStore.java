@@ -0,0 +1,224 @@
+package org.spicefactory.lib.command.group;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A CheckpointStore appending each checkpoint to a local file.
+ * <p>
+ * Every checkpoint is written as one record holding its length, a checksum, the command index and the serialized results of the step, so that
+ * the file only grows by what a step produced. A record torn by a crash in the middle of a write fails its checksum and gets ignored along with
+ * anything after it: restoring always yields the last complete checkpoint.
+ * </p>
+ * <p>
+ * Forcing the file to the disk is expensive compared to a typical step, so it happens once every <code>syncInterval</code> checkpoints. The
+ * checkpoints written since the last sync survive a crash of the process but may be lost on a crash of the machine, in which case the sequence
+ * resumes from an earlier step.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class FileCheckpointStore implements CheckpointStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(FileCheckpointStore.class);
+
+	private final File file;
+	private final int syncInterval;
+
+	private FileOutputStream out;
+	private int unsynced;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a store forcing every checkpoint to the disk.
+	 * @param file the file holding the checkpoints
+	 */
+	public FileCheckpointStore(File file) {
+		this(file, 1);
+	}
+
+	/**
+	 * Creates a new store.
+	 * @param file the file holding the checkpoints
+	 * @param syncInterval the number of checkpoints written between two syncs to the disk
+	 */
+	public FileCheckpointStore(File file, int syncInterval) {
+		if (syncInterval < 1) {
+			throw new IllegalArgumentException("Sync interval must be at least 1: " + syncInterval);
+		}
+		this.file = file;
+		this.syncInterval = syncInterval;
+	}
+
+	@Override
+	public synchronized int restore(List<Object> values) throws IOException {
+		closeFile();
+		if (!file.exists()) {
+			return 0;
+		}
+		int index = 0;
+		long valid = 0;
+		long size = file.length();
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			List<Object> record = new ArrayList<Object>();
+			while (true) {
+				int length;
+				long checksum;
+				byte[] bytes;
+				try {
+					length = in.readInt();
+					checksum = in.readLong();
+					if (length < 4 || valid + 12 + length > size) {
+						break;
+					}
+					bytes = new byte[length];
+					in.readFully(bytes);
+				}
+				catch (EOFException e) {
+					break;
+				}
+				CRC32 crc = new CRC32();
+				crc.update(bytes);
+				if (crc.getValue() != checksum) {
+					break;
+				}
+				record.clear();
+				int recordIndex = read(bytes, record);
+				index = recordIndex;
+				values.addAll(record);
+				valid += 12 + length;
+			}
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException("Checkpoint refers to an unknown class: " + e.getMessage());
+		}
+		finally {
+			in.close();
+		}
+		if (valid < size) {
+			logger.warn("Discarding {} bytes of incomplete checkpoint at the end of '{}'.", size - valid, file);
+			FileOutputStream truncate = new FileOutputStream(file, true);
+			try {
+				truncate.getChannel().truncate(valid);
+			}
+			finally {
+				truncate.close();
+			}
+		}
+		return index;
+	}
+
+	@Override
+	public synchronized void save(int index, List<? extends Serializable> values) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(buffer);
+		data.writeInt(index);
+		ObjectOutputStream objects = new ObjectOutputStream(data);
+		objects.writeInt(values.size());
+		for (Serializable value : values) {
+			objects.writeObject(value);
+		}
+		objects.close();
+		byte[] bytes = buffer.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+
+		if (out == null) {
+			out = new FileOutputStream(file, true);
+		}
+		// A single write per record, so that a crash leaves at most one torn record behind.
+		ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.length + 12);
+		DataOutputStream header = new DataOutputStream(record);
+		header.writeInt(bytes.length);
+		header.writeLong(crc.getValue());
+		header.write(bytes);
+		out.write(record.toByteArray());
+		if (++unsynced >= syncInterval) {
+			sync();
+		}
+	}
+
+	/**
+	 * Forces the checkpoints written so far to the disk.
+	 * @throws IOException if the file cannot be synced
+	 */
+	public synchronized void sync() throws IOException {
+		if (out != null && unsynced > 0) {
+			out.getFD().sync();
+		}
+		unsynced = 0;
+	}
+
+	@Override
+	public synchronized void clear() throws IOException {
+		closeFile();
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Cannot delete checkpoint file " + file);
+		}
+	}
+
+	/**
+	 * Syncs and closes the file, a later checkpoint opens it again.
+	 * @throws IOException if the file cannot be synced or closed
+	 */
+	public synchronized void close() throws IOException {
+		closeFile();
+	}
+
+	@Override
+	public String toString() {
+		return "FileCheckpointStore(" + file + ")";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private void closeFile() throws IOException {
+		if (out != null) {
+			try {
+				sync();
+			}
+			finally {
+				out.close();
+				out = null;
+			}
+		}
+	}
+
+	private static int read(byte[] bytes, List<Object> values) throws IOException, ClassNotFoundException {
+		InputStream buffer = new ByteArrayInputStream(bytes);
+		DataInputStream data = new DataInputStream(buffer);
+		int index = data.readInt();
+		ObjectInputStream objects = new ObjectInputStream(data);
+		int count = objects.readInt();
+		for (int i = 0; i < count; i++) {
+			values.add(objects.readObject());
+		}
+		return index;
+	}
+}
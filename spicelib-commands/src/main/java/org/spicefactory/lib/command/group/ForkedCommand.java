@@ -0,0 +1,233 @@
+package org.spicefactory.lib.command.group;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spicefactory.lib.command.AsyncCommand;
+import org.spicefactory.lib.command.CancellableCommand;
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.CommandExecutor;
+import org.spicefactory.lib.command.CommandUtil;
+import org.spicefactory.lib.command.adapter.CommandAdapter;
+import org.spicefactory.lib.command.base.AbstractSuspendableCommand;
+import org.spicefactory.lib.command.base.DefaultCommandResult;
+import org.spicefactory.lib.command.data.CommandData;
+import org.spicefactory.lib.command.data.DefaultCommandData;
+import org.spicefactory.lib.command.events.CommandEvent;
+import org.spicefactory.lib.command.events.CommandResultEvent;
+import org.spicefactory.lib.command.lifecycle.CommandLifecycle;
+import org.spicefactory.lib.event.EventListener;
+
+/**
+ * Runs a child command of a group on an executor, handing its completion back to the group through its serial executor.
+ * <p>
+ * The child gets executed on the thread the executor picks, a nested group keeps running its own children there, so that a whole subtree
+ * stays on one thread unless it forks again. The completion of the child is never processed on that thread directly but submitted to the
+ * serial executor of the group, which joins the completions of all forked children without blocking any thread.
+ * </p>
+ * <p>
+ * The child gets a snapshot of the data of the group taken when it was forked, and the execution of the child is reported to the life-cycle
+ * by this adapter on the thread running it, the group does not report the adapter itself.
+ * </p>
+ * <p>
+ * Cancelling this adapter before the executor started the child drops it, a child already running gets cancelled when it can be, otherwise
+ * its result is ignored. A cancellation racing with the start of the child is left to the thread starting it, which then reports the child
+ * as cancelled without executing it.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+final class ForkedCommand extends AbstractSuspendableCommand implements CommandAdapter {
+
+	private static final int QUEUED = 0;
+	private static final int STARTING = 1;
+	private static final int RUNNING = 2;
+	private static final int CANCELLED = 3;
+
+	private final Command command;
+	private final Executor executor;
+	private final Executor group;
+	/** One of QUEUED, STARTING, RUNNING or CANCELLED, moved forward by the thread starting the child and by a cancellation. */
+	private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+	private CommandLifecycle lifecycle;
+	private CommandData data;
+	private volatile boolean cancelled;
+	/** Whether the outcome of the child was reported, only accessed through the serial executor of the group. */
+	private boolean reported;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param command the child command to fork
+	 * @param executor the executor running the child
+	 * @param group the serial executor of the group, processing the completion
+	 */
+	ForkedCommand(Command command, Executor executor, Executor group) {
+		this.command = command;
+		this.executor = executor;
+		this.group = group;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void prepare(CommandLifecycle lifecycle, CommandData data) {
+		this.lifecycle = lifecycle;
+		// The group keeps adding the results of the other children while this one reads its data on another thread.
+		this.data = data instanceof DefaultCommandData ? ((DefaultCommandData) data).snapshot() : data;
+	}
+
+	@Override
+	public boolean isCancellable() {
+		return true;
+	}
+
+	@Override
+	public boolean isSuspendable() {
+		return false;
+	}
+
+	@Override
+	public Object getTarget() {
+		return command;
+	}
+
+	@Override
+	public String toString() {
+		return "ForkedCommand(" + command + ")";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		executor.execute(run);
+	}
+
+	@Override
+	protected void doSuspend() {
+		// Never suspendable.
+	}
+
+	@Override
+	protected void doResume() {
+		// Never suspendable.
+	}
+
+	@Override
+	protected void doCancel() {
+		cancelled = true;
+		if (reported || state.compareAndSet(QUEUED, CANCELLED)) {
+			return; // The child never started.
+		}
+		if (state.compareAndSet(STARTING, CANCELLED)) {
+			return; // The thread starting the child sees the cancellation and reports it.
+		}
+		if (command instanceof AsyncCommand) {
+			removeListeners((AsyncCommand) command);
+		}
+		if (CommandUtil.isCancellable(command) && ((CancellableCommand) command).isActive()) {
+			((CancellableCommand) command).cancel();
+		}
+		lifecycle.afterCompletion(command, DefaultCommandResult.forCancellation(command));
+	}
+
+	private void addListeners(AsyncCommand command) {
+		command.addEventListener(CommandResultEvent.COMPLETE, completion);
+		command.addEventListener(CommandResultEvent.EXCEPTION, completion);
+		command.addEventListener(CommandEvent.CANCEL, completion);
+	}
+
+	private void removeListeners(AsyncCommand command) {
+		command.removeEventListener(CommandResultEvent.COMPLETE, completion);
+		command.removeEventListener(CommandResultEvent.EXCEPTION, completion);
+		command.removeEventListener(CommandEvent.CANCEL, completion);
+	}
+
+	/**
+	 * Submits the outcome of the child to the group.
+	 */
+	private void finish(final int id, final Object value) {
+		// Java 1.8 forward compatibility.
+		group.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (cancelled || !isActive()) {
+					return;
+				}
+				reported = true;
+				switch (id) {
+					case CommandResultEvent.COMPLETE:
+						lifecycle.afterCompletion(command, DefaultCommandResult.forCompletion(command, value));
+						complete(value);
+						break;
+					case CommandResultEvent.EXCEPTION:
+						lifecycle.afterCompletion(command, DefaultCommandResult.forException(command, value));
+						exception(value);
+						break;
+					default:
+						lifecycle.afterCompletion(command, DefaultCommandResult.forCancellation(command));
+						cancel();
+						break;
+				}
+			}
+		});
+	}
+
+	// Java 1.8 forward compatibility.
+	private final Runnable run = new Runnable() {
+		@Override
+		public void run() {
+			if (!state.compareAndSet(QUEUED, STARTING)) {
+				return; // Cancelled while queued.
+			}
+			if (state.get() == CANCELLED) {
+				return; // Cancelled before anything was reported.
+			}
+			if (command instanceof AsyncCommand) {
+				addListeners((AsyncCommand) command);
+			}
+			if (command instanceof CommandExecutor) {
+				((CommandExecutor) command).prepare(lifecycle, data);
+			}
+			try {
+				lifecycle.beforeExecution(command, data);
+				if (!state.compareAndSet(STARTING, RUNNING)) {
+					// Cancelled while starting, report the end after the start instead of running the child.
+					if (command instanceof AsyncCommand) {
+						removeListeners((AsyncCommand) command);
+					}
+					lifecycle.afterCompletion(command, DefaultCommandResult.forCancellation(command));
+					return;
+				}
+				command.execute();
+			}
+			catch (Exception e) {
+				if (command instanceof AsyncCommand) {
+					removeListeners((AsyncCommand) command);
+				}
+				finish(CommandResultEvent.EXCEPTION, e);
+				return;
+			}
+			if (!(command instanceof AsyncCommand)) {
+				finish(CommandResultEvent.COMPLETE, null);
+			}
+		}
+	};
+
+	// Java 1.8 forward compatibility.
+	private final EventListener<CommandEvent> completion = new EventListener<CommandEvent>() {
+		@Override
+		public void process(CommandEvent event) {
+			removeListeners((AsyncCommand) command);
+			Object value = event instanceof CommandResultEvent ? ((CommandResultEvent) event).getValue() : null;
+			finish(event.getID(), value);
+		}
+	};
+}
@@ -1,16 +1,22 @@
 package org.spicefactory.lib.command.lifecycle;
 
 import java.lang.reflect.Constructor;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.spicefactory.lib.command.CommandResult;
 import org.spicefactory.lib.command.data.CommandData;
 
 public class DefaultCommandLifecycle implements CommandLifecycle {
 
+	/**
+	 * The constructors of each command type, most parameters first. Reflection copies the constructors and their parameter types on each call,
+	 * so they are looked up and sorted once per type.
+	 */
+	private static final ConcurrentMap<Class<?>, ConstructorRegistration[]> constructorsByType =
+			new ConcurrentHashMap<Class<?>, ConstructorRegistration[]>();
+
 	/////////////////////////////////////////////////////////////////////////////
 	// Package-private.
 	/////////////////////////////////////////////////////////////////////////////
@@ -22,22 +28,23 @@ public class DefaultCommandLifecycle implements CommandLifecycle {
 	@Override
 	public <T> T createInstance(Class<T> type, CommandData data) {
 		try {
-			Iterator<Constructor<T>> constructors = getDeclaredConstructorInOrder(type);
-			while (constructors.hasNext()) {
-				Constructor<T> constructor = constructors.next();
-				List<Object> params = new ArrayList<Object>();
-				for (Class<?> param : constructor.getParameterTypes()) {
+			ConstructorRegistration[] constructors = getDeclaredConstructorInOrder(type);
+			for (int i = 0; i < constructors.length; i++) {
+				Class<?>[] parameterTypes = constructors[i].parameterTypes;
+				Object[] params = new Object[parameterTypes.length];
+				int resolved = 0;
+				for (Class<?> param : parameterTypes) {
 					Object value = data.getObject(param);
 					if (value != null) {
-						params.add(value);
-					} else if (!constructors.hasNext()) {
+						params[resolved++] = value;
+					} else if (i == constructors.length - 1) {
 						throw new IllegalStateException("No data available for required constructor parameter of type " + param);
 					} else {
 						break;
 					}
 				}
-				if (params.size() == constructor.getParameterTypes().length) {
-					return constructor.newInstance(params.toArray());
+				if (resolved == parameterTypes.length) {
+					return type.cast(constructors[i].constructor.newInstance(params));
 				}
 			}
 			return type.newInstance();
@@ -64,27 +71,32 @@ public class DefaultCommandLifecycle implements CommandLifecycle {
 	// Internal implementation.
 	/////////////////////////////////////////////////////////////////////////////
 
-	@SuppressWarnings("unchecked")
-	private <T> Iterator<Constructor<T>> getDeclaredConstructorInOrder(Class<T> type) {
-		final List<ConstructorRegistration> reg = new ArrayList<ConstructorRegistration>(type.getDeclaredConstructors().length);
-		for (Constructor<?> c : type.getDeclaredConstructors()) {
-			reg.add(new ConstructorRegistration(c));
-		}
-		Collections.sort(reg);
-		final List<Constructor<T>> constructors = new ArrayList<Constructor<T>>(reg.size());
-		for (ConstructorRegistration r : reg) {
-			constructors.add((Constructor<T>) r.constructor);
+	private ConstructorRegistration[] getDeclaredConstructorInOrder(Class<?> type) {
+		ConstructorRegistration[] constructors = constructorsByType.get(type);
+		if (constructors == null) {
+			Constructor<?>[] declared = type.getDeclaredConstructors();
+			constructors = new ConstructorRegistration[declared.length];
+			for (int i = 0; i < declared.length; i++) {
+				constructors[i] = new ConstructorRegistration(declared[i]);
+			}
+			Arrays.sort(constructors);
+			ConstructorRegistration[] existing = constructorsByType.putIfAbsent(type, constructors);
+			if (existing != null) {
+				constructors = existing;
+			}
 		}
-		return constructors.iterator();
+		return constructors;
 	}
 
 	private static class ConstructorRegistration implements Comparable<ConstructorRegistration> {
 
 		private final int order;
 		private final Constructor<?> constructor;
+		private final Class<?>[] parameterTypes;
 
 		public ConstructorRegistration(Constructor<?> constructor) {
-			this.order = constructor.getParameterTypes().length;
+			this.parameterTypes = constructor.getParameterTypes();
+			this.order = parameterTypes.length;
 			this.constructor = constructor;
 		}
 
@@ -1,11 +1,17 @@
 package org.spicefactory.lib.command.light;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
 
 import org.spicefactory.lib.command.CommandResult;
 import org.spicefactory.lib.command.adapter.CommandAdapter;
 import org.spicefactory.lib.command.base.AbstractSuspendableCommand;
+import org.spicefactory.lib.command.base.CancellationToken;
+import org.spicefactory.lib.command.base.CommandPools;
+import org.spicefactory.lib.command.base.Deadline;
 import org.spicefactory.lib.command.base.DefaultCommandResult;
 import org.spicefactory.lib.command.builder.CommandProxyBuilder;
 import org.spicefactory.lib.command.callback.Callback;
@@ -16,6 +22,7 @@ import org.spicefactory.lib.command.data.CommandData;
 import org.spicefactory.lib.command.data.DefaultCommandData;
 import org.spicefactory.lib.command.events.CommandEvent;
 import org.spicefactory.lib.command.events.CommandException;
+import org.spicefactory.lib.command.events.CommandTimeoutException;
 import org.spicefactory.lib.command.lifecycle.CommandLifecycle;
 import org.spicefactory.lib.command.proxy.CommandProxy;
 import org.spicefactory.lib.command.result.ResultProcessors;
@@ -24,6 +31,12 @@ import org.spicefactory.lib.command.result.ResultProcessors;
  * In this implementation asynchronous commands execution are blocking the calling thread.
  * <p>
  * If you want non-blocking commands you might implement a command adapter which executes asynchronous command in a new thread pool.
+ * <p>
+ * A command declaring a <code>CancellationToken</code> parameter on its <code>execute</code> method is cancellable even if it is synchronous:
+ * cancelling it signals the token, which the command is expected to check.
+ * <p>
+ * A command annotated with <code>@Async(pool = "...")</code> is executed on a thread of the named pool of <code>CommandPools</code> and
+ * completes there, cancelling it before the pool started it drops the execution.
  * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
  */
 class LightCommandAdapter extends AbstractSuspendableCommand implements CommandAdapter {
@@ -39,12 +52,17 @@ class LightCommandAdapter extends AbstractSuspendableCommand implements CommandA
 	private final Method resultMethod;
 	private final Method exceptionMethod;
 	private final boolean async;
+	/** Whether the execute method takes a cancellation token. */
+	private final boolean cooperative;
+	/** The name of the pool executing the command, null to execute it on the calling thread. */
+	private final String pool;
+	private volatile CancellationToken token;
 
 	/////////////////////////////////////////////////////////////////////////////
 	// Package-private.
 	/////////////////////////////////////////////////////////////////////////////
 
-	LightCommandAdapter(Object target, Method execute, Field callback, Method cancel, Method result, Method error, boolean async) {
+	LightCommandAdapter(Object target, Method execute, Field callback, Method cancel, Method result, Method error, boolean async, String pool) {
 		this.target = target;
 		this.callbackField = callback;
 		this.executeMethod = execute;
@@ -52,6 +70,12 @@ class LightCommandAdapter extends AbstractSuspendableCommand implements CommandA
 		this.resultMethod = result;
 		this.exceptionMethod = error;
 		this.async = async;
+		this.pool = pool;
+		boolean cooperative = false;
+		for (Class<?> param : execute.getParameterTypes()) {
+			cooperative |= param == CancellationToken.class;
+		}
+		this.cooperative = cooperative;
 	}
 
 	/////////////////////////////////////////////////////////////////////////////
@@ -66,7 +90,7 @@ class LightCommandAdapter extends AbstractSuspendableCommand implements CommandA
 
 	@Override
 	public boolean isCancellable() {
-		return async;
+		return async || cooperative || pool != null;
 	}
 
 	@Override
@@ -100,10 +124,14 @@ class LightCommandAdapter extends AbstractSuspendableCommand implements CommandA
 
 	@Override
 	protected void doCancel() {
+		CancellationToken token = this.token;
+		if (token != null) {
+			token.cancel();
+		}
 		if (resultProcessor != null) {
 			resultProcessor.cancel();
 			resultProcessor = null;
-		} else {
+		} else if (cancelMethod != null) {
 			try {
 				cancelMethod.invoke(target);
 			}
@@ -127,19 +155,70 @@ class LightCommandAdapter extends AbstractSuspendableCommand implements CommandA
 			// Nothing we can do.
 		}
 
+		if (pool == null) {
+			invoke();
+			return;
+		}
+		try {
+			ExecutorService executor = CommandPools.get(pool);
+			if (executor == null) {
+				throw new IllegalStateException("No pool registered under the name '" + pool + "'.");
+			}
+			executor.execute(invocation);
+		}
+		catch (RuntimeException e) {
+			// The pool of the command got shut down or unregistered.
+			afterCompletion(DefaultCommandResult.forException(target, e));
+			exception(e);
+		}
+	}
+
+	private void invoke() {
+		if (cooperative) {
+			token = new CancellationToken(data.getObject(Deadline.class));
+			token.enter();
+		}
 		try {
 			if (async) {
 				executeMethod.invoke(target, getParameters());
 			} else {
 				// Result can be null if invoked method return type is void.
 				Object result = executeMethod.invoke(target, getParameters());
-				handleResult(result);
+				if (isActive()) {
+					handleResult(result);
+				}
 			}
 		}
 		catch (Exception e) {
-			afterCompletion(DefaultCommandResult.forException(target, e));
-			exception(e);
+			if (isActive()) {
+				Throwable failure = failureOf(e);
+				afterCompletion(DefaultCommandResult.forException(target, failure));
+				exception(failure);
+			} // Otherwise the command stopped because it got cancelled.
+		}
+		finally {
+			if (cooperative) {
+				token.exit();
+				if (!async) {
+					token = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The failure to report for an exception thrown by the execute method, a command giving up because its deadline expired timed out.
+	 */
+	private Throwable failureOf(Exception e) {
+		if (e instanceof InvocationTargetException && e.getCause() instanceof CancellationException) {
+			Deadline deadline = data.getObject(Deadline.class);
+			if (deadline != null && deadline.isExpired()) {
+				CommandTimeoutException timeout = new CommandTimeoutException(deadline.getBudget());
+				timeout.initCause(e.getCause());
+				return timeout;
+			}
 		}
+		return e;
 	}
 
 	private Object[] getParameters() {
@@ -150,6 +229,10 @@ class LightCommandAdapter extends AbstractSuspendableCommand implements CommandA
 				parameters[i] = callback;
 				continue;
 			}
+			if (parameterTypes[i] == CancellationToken.class) {
+				parameters[i] = token;
+				continue;
+			}
 			parameters[i] = data.getObject(parameterTypes[i]);
 		}
 		return parameters;
@@ -258,6 +341,17 @@ class LightCommandAdapter extends AbstractSuspendableCommand implements CommandA
 		}
 	};
 
+	private final Runnable invocation = new Runnable() {
+
+		@Override
+		public void run() {
+			if (isActive()) {
+				invoke();
+			} // Otherwise the command got cancelled while queued.
+		}
+
+	};
+
 	private final ResultCallback<Object> commandCompletionCallback = new ResultCallback<Object>() {
 
 		@Override
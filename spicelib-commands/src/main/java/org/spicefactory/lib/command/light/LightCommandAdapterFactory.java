@@ -3,12 +3,19 @@ package org.spicefactory.lib.command.light;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 
+import org.spicefactory.lib.command.Async;
 import org.spicefactory.lib.command.adapter.CommandAdapter;
 import org.spicefactory.lib.command.adapter.CommandAdapterFactory;
+import org.spicefactory.lib.command.base.CommandPools;
 import org.spicefactory.lib.command.callback.Callback;
 
 /**
  * A CommandAdapterFactory implementation that creates adapters from commands that adhere to the conventions of Spicelib's "Light Commands".
+ * <p>
+ * Light commands execute on the thread starting them, unless they are annotated with <code>@Async(pool = "...")</code>: their execution is
+ * then submitted to the named pool of <code>CommandPools</code>, which has to be registered before the first adapter for such a command gets
+ * created. The pool is looked up again for every execution.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
  */
 public class LightCommandAdapterFactory implements CommandAdapterFactory {
@@ -38,6 +45,12 @@ public class LightCommandAdapterFactory implements CommandAdapterFactory {
 		if (execute == null)
 			return null;
 
+		Async annotation = instance.getClass().getAnnotation(Async.class);
+		String pool = annotation != null && annotation.pool().length() > 0 ? annotation.pool() : null;
+		if (pool != null && CommandPools.get(pool) == null) {
+			throw new IllegalStateException("No pool registered under the name '" + pool + "'.");
+		}
+
 		boolean async = false;
 
 		for (Class<?> param : execute.getParameterTypes()) {
@@ -61,6 +74,6 @@ public class LightCommandAdapterFactory implements CommandAdapterFactory {
 			// Nothing to do.
 		}
 
-		return new LightCommandAdapter(instance, execute, callback, cancel, result, error, async);
+		return new LightCommandAdapter(instance, execute, callback, cancel, result, error, async, pool);
 	}
 }
@@ -0,0 +1,21 @@
+package org.spicefactory.lib.command.proxy;
+
+import org.spicefactory.lib.command.data.CommandData;
+
+/**
+ * Derives the cache key of a command execution from the data available to the command.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public interface CacheKeyFunction {
+
+	/**
+	 * Returns the key under which the result of the command gets cached.
+	 * <p>
+	 * Keys must implement <code>equals</code> and <code>hashCode</code>. Executions for which this method returns null are not cached.
+	 * </p>
+	 * @param data the data that will be injected into the command
+	 * @return the key of the execution or null if it should not be cached
+	 */
+	Object keyOf(CommandData data);
+
+}
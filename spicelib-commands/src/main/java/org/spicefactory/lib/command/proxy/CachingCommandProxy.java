@@ -0,0 +1,131 @@
+package org.spicefactory.lib.command.proxy;
+
+import java.util.List;
+
+import org.spicefactory.lib.command.events.CommandEvent;
+import org.spicefactory.lib.command.events.CommandResultEvent;
+import org.spicefactory.lib.event.EventListener;
+
+/**
+ * A command proxy that memoizes the results of its target in a <code>CommandCache</code>.
+ * <p>
+ * The cache key is derived from the data available to the command. When a result is cached for the key the proxy completes immediately without
+ * executing the command. When another proxy is already executing the command for the same key, this proxy waits for that execution and
+ * completes with the same result, or the same exception. When the executing proxy gets cancelled, one of the waiting proxies executes the
+ * command instead.
+ * </p>
+ * <p>
+ * The timeout of the proxy only applies to the proxy actually executing the command.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CachingCommandProxy extends DefaultCommandProxy {
+
+	private final CommandCache cache;
+	private final CacheKeyFunction keyFunction;
+
+	private Object key;
+	private boolean owner;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	void resolve(Object value) {
+		if (isActive()) {
+			complete(value);
+		}
+	}
+
+	void fail(Object cause) {
+		if (isActive()) {
+			exception(cause);
+		}
+	}
+
+	void retry() {
+		if (isActive()) {
+			acquire();
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance.
+	 * @param cache the cache holding the results of the command type
+	 * @param keyFunction the function deriving the cache key from the data available to the command
+	 */
+	public CachingCommandProxy(CommandCache cache, CacheKeyFunction keyFunction) {
+		this.cache = cache;
+		this.keyFunction = keyFunction;
+		addEventListener(CommandResultEvent.COMPLETE, ownerInactive);
+		addEventListener(CommandResultEvent.EXCEPTION, ownerInactive);
+		addEventListener(CommandEvent.CANCEL, ownerInactive);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		owner = false;
+		key = keyFunction.keyOf(getData());
+		if (key == null) {
+			super.doExecute();
+		} else {
+			acquire();
+		}
+	}
+
+	@Override
+	protected void doCancel() {
+		if (key != null && !owner) {
+			cache.detach(key, this);
+		}
+		super.doCancel();
+	}
+
+	private void acquire() {
+		Object value = cache.acquire(key, this);
+		if (value == CommandCache.MISS) {
+			owner = true;
+			super.doExecute();
+		} else if (value == CommandCache.PENDING) {
+			logger.debug("Waiting for execution in flight for key '{}'.", key);
+		} else {
+			logger.debug("Using cached result for key '{}'.", key);
+			complete(value);
+		}
+	}
+
+	private void onOwnerInactive(CommandEvent event) {
+		if (!owner) {
+			return;
+		}
+		owner = false;
+		boolean completed = event.getID() == CommandResultEvent.COMPLETE;
+		Object value = event instanceof CommandResultEvent ? ((CommandResultEvent) event).getValue() : null;
+		List<CachingCommandProxy> waiters = cache.release(key, completed, value);
+		for (CachingCommandProxy waiter : waiters) {
+			if (completed) {
+				waiter.resolve(value);
+			} else if (event.getID() == CommandResultEvent.EXCEPTION) {
+				waiter.fail(value);
+			} else {
+				waiter.retry();
+			}
+		}
+	}
+
+	// Java 1.6 legacy for Java 1.8.
+	private final EventListener<CommandEvent> ownerInactive = new EventListener<CommandEvent>() {
+		@Override
+		public void process(CommandEvent event) {
+			onOwnerInactive(event);
+		}
+	};
+}
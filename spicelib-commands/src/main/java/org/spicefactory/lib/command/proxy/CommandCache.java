@@ -0,0 +1,189 @@
+package org.spicefactory.lib.command.proxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache of command results, shared by the <code>CachingCommandProxy</code> instances of a command type.
+ * <p>
+ * Completed results are evicted in least-recently-used order once the maximum number of entries is reached, and after their time-to-live has
+ * elapsed. The cache also keeps track of the executions in flight, so that concurrent executions for the same key wait for the first one
+ * instead of executing the command again.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public final class CommandCache {
+
+	/** Returned by <code>acquire</code> when the caller has to execute the command itself. */
+	static final Object MISS = new Object();
+	/** Returned by <code>acquire</code> when the caller waits for an execution in flight. */
+	static final Object PENDING = new Object();
+
+	private static final ConcurrentMap<Class<?>, CommandCache> caches = new ConcurrentHashMap<Class<?>, CommandCache>();
+
+	private final int maxEntries;
+	private final long ttl;
+	private final Map<Object, CachedResult> entries;
+	private final Map<Object, List<CachingCommandProxy>> inFlight = new HashMap<Object, List<CachingCommandProxy>>();
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Looks up the result for the specified key.
+	 * @param key the key of the execution
+	 * @param proxy the proxy to notify when an execution for the same key is in flight
+	 * @return the cached result, <code>MISS</code> if the proxy has to execute the command or <code>PENDING</code> if it has to wait
+	 */
+	synchronized Object acquire(Object key, CachingCommandProxy proxy) {
+		CachedResult entry = entries.get(key);
+		if (entry != null) {
+			if (ttl == 0 || entry.expires - System.nanoTime() > 0) {
+				return entry.value;
+			}
+			entries.remove(key);
+		}
+		List<CachingCommandProxy> waiters = inFlight.get(key);
+		if (waiters != null) {
+			waiters.add(proxy);
+			return PENDING;
+		}
+		inFlight.put(key, new ArrayList<CachingCommandProxy>(2));
+		return MISS;
+	}
+
+	/**
+	 * Ends the execution in flight for the specified key.
+	 * @param key the key of the execution
+	 * @param completed true if the command completed successfully, in which case the value is cached
+	 * @param value the result of the command
+	 * @return the proxies waiting for the execution
+	 */
+	synchronized List<CachingCommandProxy> release(Object key, boolean completed, Object value) {
+		if (completed) {
+			entries.put(key, new CachedResult(value, System.nanoTime() + ttl));
+		}
+		List<CachingCommandProxy> waiters = inFlight.remove(key);
+		return waiters != null ? waiters : Collections.<CachingCommandProxy> emptyList();
+	}
+
+	/**
+	 * Stops waiting for the execution in flight for the specified key.
+	 * @param key the key of the execution
+	 * @param proxy the waiting proxy
+	 */
+	synchronized void detach(Object key, CachingCommandProxy proxy) {
+		List<CachingCommandProxy> waiters = inFlight.get(key);
+		if (waiters != null) {
+			waiters.remove(proxy);
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new cache.
+	 * @param maxEntries the maximum number of results to keep
+	 * @param ttl the time in milliseconds after which a result expires, 0 to keep results until they get evicted
+	 */
+	public CommandCache(final int maxEntries, long ttl) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("Maximum number of entries must be positive: " + maxEntries);
+		}
+		if (ttl < 0) {
+			throw new IllegalArgumentException("Time-to-live must not be negative: " + ttl);
+		}
+		this.maxEntries = maxEntries;
+		this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+		// Java 1.8 forward compatibility.
+		this.entries = new LinkedHashMap<Object, CachedResult>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, CachedResult> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cache shared by all proxies of the specified command type.
+	 * <p>
+	 * The cache gets created with the specified bounds on first access, later accesses have to specify the same bounds. Create a separate
+	 * <code>CommandCache</code> instance for results of the same type that need other bounds.
+	 * </p>
+	 * @param type the command type
+	 * @param maxEntries the maximum number of results to keep
+	 * @param ttl the time in milliseconds after which a result expires, 0 to keep results until they get evicted
+	 * @return the cache of the specified command type
+	 * @throws IllegalStateException if the cache of the command type was created with other bounds
+	 */
+	public static CommandCache forType(Class<?> type, int maxEntries, long ttl) {
+		CommandCache cache = caches.get(type);
+		if (cache == null) {
+			cache = new CommandCache(maxEntries, ttl);
+			CommandCache existing = caches.putIfAbsent(type, cache);
+			if (existing != null) {
+				cache = existing;
+			}
+		}
+		if (cache.maxEntries != maxEntries || cache.ttl != TimeUnit.MILLISECONDS.toNanos(ttl)) {
+			throw new IllegalStateException("The cache of " + type.getName() + " was created with other bounds: " + cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Removes the result cached for the specified key.
+	 * @param key the key of the result
+	 */
+	public synchronized void invalidate(Object key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * Removes all cached results, executions in flight are not affected.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of cached results, including expired results that were not evicted yet.
+	 * @return the number of cached results
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	@Override
+	public String toString() {
+		return "CommandCache(maxEntries=" + maxEntries + ", ttl=" + TimeUnit.NANOSECONDS.toMillis(ttl) + "ms)";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private static class CachedResult {
+
+		private final Object value;
+		private final long expires;
+
+		CachedResult(Object value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+
+	}
+}
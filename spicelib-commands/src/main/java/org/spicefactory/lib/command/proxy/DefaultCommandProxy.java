@@ -1,12 +1,15 @@
 package org.spicefactory.lib.command.proxy;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.spicefactory.lib.command.Command;
 import org.spicefactory.lib.command.CommandResult;
 import org.spicefactory.lib.command.adapter.CommandAdapters;
 import org.spicefactory.lib.command.base.AbstractCommandExecutor;
+import org.spicefactory.lib.command.base.CommandScheduler;
+import org.spicefactory.lib.command.base.Deadline;
+import org.spicefactory.lib.command.base.PriorityCommandScheduler;
 import org.spicefactory.lib.command.events.CommandEvent;
 import org.spicefactory.lib.command.events.CommandException;
 import org.spicefactory.lib.command.events.CommandResultEvent;
@@ -16,10 +19,17 @@ import org.spicefactory.lib.event.EventListener;
 public class DefaultCommandProxy extends AbstractCommandExecutor implements CommandProxy {
 
 	private long delay;
-	private Timer timer;
+	private ScheduledFuture<?> timer;
+	/** The deadline of the enclosing executors, if any. */
+	private Deadline inherited;
+	/** The deadline of this proxy, passed down to the target through its data. */
+	private Deadline deadline;
 	private Class<?> type;
 	private Command target;
 	private String description;
+	private PriorityCommandScheduler scheduler;
+	private int priority;
+	private Object queued;
 
 	/////////////////////////////////////////////////////////////////////////////
 	// Package-private.
@@ -30,6 +40,16 @@ public class DefaultCommandProxy extends AbstractCommandExecutor implements Comm
 	/////////////////////////////////////////////////////////////////////////////
 
 	public DefaultCommandProxy() {
+		this(false, false);
+	}
+
+	/**
+	 * Creates a new instance for subclasses that handle the exceptions or cancellations of the target themselves.
+	 * @param processExceptions if true an exception of the target leads to <code>commandComplete</code> getting called
+	 * @param processCancellations if true the cancellation of the target leads to <code>commandComplete</code> getting called
+	 */
+	protected DefaultCommandProxy(boolean processExceptions, boolean processCancellations) {
+		super(processExceptions, processCancellations);
 		// Java 1.8:
 		//addEventListener(CommandResultEvent.COMPLETE, scheduleTimer());
 		addEventListener(CommandResultEvent.COMPLETE, commandInactive);
@@ -51,12 +71,30 @@ public class DefaultCommandProxy extends AbstractCommandExecutor implements Comm
 
 	/**
 	 * The timeout in milliseconds. A value of 0 disables the timeout.
+	 * <p>
+	 * The timeout is bounded by the <code>Deadline</code> of the enclosing executors, and the resulting deadline is passed to the target with its
+	 * data, apart from the results, so that nested proxies and commands see the remaining budget. Once the deadline is reached the whole
+	 * subtree gets cancelled.
+	 * </p>
 	 * @param milliseconds
 	 */
 	public void setTimeout(long milliseconds) {
 		delay = milliseconds;
 	}
 
+	/**
+	 * Starts the target command on a thread of the specified scheduler instead of the thread executing this proxy.
+	 * <p>
+	 * The timeout includes the time the target spends in the queue of the scheduler.
+	 * </p>
+	 * @param priority the priority of the target command, higher values start first
+	 * @param scheduler the scheduler to queue the target command with, null to start it directly
+	 */
+	public void setPriority(int priority, PriorityCommandScheduler scheduler) {
+		this.priority = priority;
+		this.scheduler = scheduler;
+	}
+
 	/**
 	 * The type of command that this proxy should execute.
 	 * <p>
@@ -88,18 +126,46 @@ public class DefaultCommandProxy extends AbstractCommandExecutor implements Comm
 		if (target == null && type == null) {
 			throw new IllegalStateException("Either target or type property must be set.");
 		}
+		// Ignore the deadline this proxy set during a previous execution.
+		getData().setDeadline(null);
+		inherited = getData().getObject(Deadline.class);
+		startDeadline();
+		if (scheduler != null) {
+			scheduleTimer();
+			queued = scheduler.submit(start, priority);
+		} else {
+			start(false);
+		}
+	}
+
+	@Override
+	protected void doCancel() {
+		if (queued != null) {
+			scheduler.remove(queued);
+			queued = null;
+		}
+		super.doCancel();
+	}
+
+	private void start(boolean timerScheduled) {
+		if (inherited != null && inherited.isExpired()) {
+			// The enclosing budget is already spent, do not start any work.
+			exception(new CommandException(this, target, new CommandTimeoutException(inherited.getBudget())));
+			return;
+		}
 		if (target == null) {
 			try {
-				Object command = getLifecycle().createInstance(type, getData());
-				target = command instanceof Command ? (Command) command : CommandAdapters.createAdapter(command);
+				target = createCommand();
 			}
 			catch (Throwable cause) {
 				exception(new CommandException(this, target, cause));
 				return;
 			}
 		}
+		if (!timerScheduled) {
+			scheduleTimer();
+		}
 		executeCommand(target);
-		scheduleTimer();
 	}
 
 	@Override
@@ -107,24 +173,42 @@ public class DefaultCommandProxy extends AbstractCommandExecutor implements Comm
 		complete(result.getValue());
 	}
 
+	/**
+	 * The type of command that this proxy creates, null when a target instance was specified.
+	 * @return the type of command that this proxy creates
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * Creates a new instance of the command type of this proxy, through the life-cycle of this proxy.
+	 * @return a new command, adapted when the type does not implement <code>Command</code>
+	 */
+	protected Command createCommand() {
+		Object command = getLifecycle().createInstance(type, getData());
+		return command instanceof Command ? (Command) command : CommandAdapters.createAdapter(command);
+	}
+
+	private void startDeadline() {
+		if (delay > 0) {
+			deadline = Deadline.after(delay).min(inherited);
+			getData().setDeadline(deadline);
+		}
+	}
+
 	private void scheduleTimer() {
 		cancelTimer();
 		if (delay > 0) {
-			timer = new Timer();
-			TimerTask task = new TimerTask() {
-				@Override
-				public void run() {
-					onTimeout();
-				}
-			};
-			timer.schedule(task, delay);
+			timer = CommandScheduler.schedule(timeout, deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
 		}
 	}
 
 	private void onTimeout() {
 		if (isActive()) {
 			doCancel();
-			exception(new CommandException(this, target, new CommandTimeoutException(delay)));
+			// The budget of the enclosing proxy when its deadline came first.
+			exception(new CommandException(this, target, new CommandTimeoutException(deadline.getBudget())));
 		} else {
 			logger.error("Internal error: timeout in command '{0}' although it is not active.", target);
 		}
@@ -133,7 +217,7 @@ public class DefaultCommandProxy extends AbstractCommandExecutor implements Comm
 
 	private void cancelTimer() {
 		if (timer != null) {
-			timer.cancel();
+			CommandScheduler.cancel(timer);
 			timer = null;
 		}
 	}
@@ -143,6 +227,24 @@ public class DefaultCommandProxy extends AbstractCommandExecutor implements Comm
 		return description != null ? description : target != null ? target.toString() : "LazyCommandProxy(" + type.getSimpleName() + ")";
 	}
 
+	// Java 1.6 legacy for Java 1.8.
+	private final Runnable start = new Runnable() {
+		@Override
+		public void run() {
+			if (isActive()) {
+				start(true);
+			}
+		}
+	};
+
+	// Java 1.6 legacy for Java 1.8.
+	private final Runnable timeout = new Runnable() {
+		@Override
+		public void run() {
+			onTimeout();
+		}
+	};
+
 	// Java 1.6 legacy for Java 1.8.
 	private final CommandInactive commandInactive = new CommandInactive();
 	private class CommandInactive implements EventListener<CommandEvent> {
@@ -159,6 +261,8 @@ public class DefaultCommandProxy extends AbstractCommandExecutor implements Comm
 
 		@Override
 		public void process(CommandEvent event) {
+			// A resumed proxy gets its full timeout again, still bounded by the enclosing deadline.
+			startDeadline();
 			scheduleTimer();
 		}
 
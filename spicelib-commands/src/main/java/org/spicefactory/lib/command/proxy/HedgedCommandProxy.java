@@ -0,0 +1,180 @@
+package org.spicefactory.lib.command.proxy;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.spicefactory.lib.command.Command;
+import org.spicefactory.lib.command.CommandResult;
+import org.spicefactory.lib.command.base.CommandScheduler;
+import org.spicefactory.lib.command.base.SerialExecutor;
+import org.spicefactory.lib.command.events.CommandEvent;
+import org.spicefactory.lib.command.events.CommandException;
+import org.spicefactory.lib.command.events.CommandResultEvent;
+import org.spicefactory.lib.event.EventListener;
+
+/**
+ * A command proxy that hedges slow executions of a command type.
+ * <p>
+ * When the first instance of the command has not completed within the hedge delay, a second instance gets created and executed alongside. The
+ * first instance to complete wins and the other one gets cancelled. The delay is either fixed or follows a percentile of the latencies observed
+ * for the command type, so that only the slowest executions get hedged.
+ * </p>
+ * <p>
+ * Hedging requires the <code>type</code> property, a target instance cannot be executed twice. An exception of one instance is ignored as long
+ * as the other instance is still running. The timeout of the proxy applies to the hedged execution as a whole.
+ * </p>
+ * <p>
+ * The hedge gets created and executed on a worker thread of the <code>CommandScheduler</code>, serialized with the completions of both
+ * instances.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class HedgedCommandProxy extends DefaultCommandProxy {
+
+	private final long hedgeDelay;
+	private final double percentile;
+	private final SerialExecutor serial = new SerialExecutor();
+
+	private volatile ScheduledFuture<?> hedgeTimer;
+	private Command hedge;
+	private int pending;
+	private long startTime;
+	private long hedgeStartTime;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a proxy hedging after a fixed delay.
+	 * @param hedgeDelay the delay in milliseconds after which a second instance gets executed
+	 */
+	public HedgedCommandProxy(long hedgeDelay) {
+		this(0, hedgeDelay);
+	}
+
+	/**
+	 * Creates a proxy hedging after a percentile of the latencies observed for the command type.
+	 * @param percentile the percentile of the observed latencies after which a second instance gets executed, between 0 and 1 (e.g. 0.95)
+	 * @param initialDelay the delay in milliseconds to use until enough latencies were observed
+	 */
+	public HedgedCommandProxy(double percentile, long initialDelay) {
+		super(true, true);
+		if (percentile < 0 || percentile >= 1) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 1: " + percentile);
+		}
+		if (initialDelay <= 0) {
+			throw new IllegalArgumentException("Hedge delay must be positive: " + initialDelay);
+		}
+		this.percentile = percentile;
+		this.hedgeDelay = TimeUnit.MILLISECONDS.toNanos(initialDelay);
+		addEventListener(CommandResultEvent.COMPLETE, hedgeInactive);
+		addEventListener(CommandResultEvent.EXCEPTION, hedgeInactive);
+		addEventListener(CommandEvent.CANCEL, hedgeInactive);
+		addEventListener(CommandEvent.SUSPEND, hedgeInactive);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		if (getType() == null) {
+			throw new IllegalStateException("Hedged execution requires the type property, a target instance cannot be executed twice.");
+		}
+		hedge = null;
+		pending = 1;
+		startTime = System.nanoTime();
+		super.doExecute();
+		if (isActive() && !isSuspended()) {
+			scheduleHedge();
+		}
+	}
+
+	@Override
+	protected Executor getCompletionExecutor() {
+		return serial;
+	}
+
+	@Override
+	protected synchronized void commandComplete(CommandResult result) {
+		pending--;
+		if (result.complete()) {
+			cancelHedgeTimer();
+			LatencyHistory.forType(getType()).record(System.nanoTime() - (result.command() == hedge ? hedgeStartTime : startTime));
+			if (pending > 0) {
+				pending = 0;
+				doCancel();
+			}
+			complete(result.getValue());
+		} else if (pending > 0) {
+			logger.debug("Hedged instance '{}' did not complete, waiting for the other instance.", result.command());
+		} else if (result.getValue() != null) {
+			exception(new CommandException(this, (Command) result.command(), result.getValue()));
+		} else {
+			cancel();
+		}
+	}
+
+	private void scheduleHedge() {
+		long delay = percentile > 0 ? LatencyHistory.forType(getType()).percentile(percentile, hedgeDelay) : hedgeDelay;
+		hedgeTimer = CommandScheduler.scheduleWork(startHedge, delay, TimeUnit.NANOSECONDS);
+	}
+
+	private synchronized void onHedge() {
+		hedgeTimer = null;
+		if (!isActive() || isSuspended() || hedge != null) {
+			return;
+		}
+		Command command;
+		try {
+			command = createCommand();
+		}
+		catch (Throwable cause) {
+			logger.warn("Failed to create hedged instance of '{}'.", getType(), cause);
+			return;
+		}
+		logger.debug("Hedging slow execution of '{}'.", getType());
+		hedge = command;
+		hedgeStartTime = System.nanoTime();
+		pending++;
+		executeCommand(command);
+	}
+
+	private void cancelHedgeTimer() {
+		ScheduledFuture<?> timer = hedgeTimer;
+		if (timer != null) {
+			hedgeTimer = null;
+			CommandScheduler.cancel(timer);
+		}
+	}
+
+	// Java 1.6 legacy for Java 1.8.
+	private final Runnable startHedge = new Runnable() {
+		@Override
+		public void run() {
+			serial.execute(hedgeStart);
+		}
+	};
+
+	// Java 1.6 legacy for Java 1.8.
+	private final Runnable hedgeStart = new Runnable() {
+		@Override
+		public void run() {
+			onHedge();
+		}
+	};
+
+	private final EventListener<CommandEvent> hedgeInactive = new EventListener<CommandEvent>() {
+		@Override
+		public void process(CommandEvent event) {
+			cancelHedgeTimer();
+		}
+	};
+}
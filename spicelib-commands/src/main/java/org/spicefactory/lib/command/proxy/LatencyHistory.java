@@ -0,0 +1,87 @@
+package org.spicefactory.lib.command.proxy;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The latencies recently observed for a command type.
+ * <p>
+ * Keeps a fixed window of the most recent samples, the percentiles are only sorted again after a number of new samples were recorded.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+final class LatencyHistory {
+
+	/** Number of samples kept for each type. */
+	private static final int WINDOW = 256;
+	/** Number of samples required before the percentiles are used. */
+	private static final int MIN_SAMPLES = 32;
+	/** Number of new samples after which the percentile gets computed again. */
+	private static final int REFRESH = 32;
+
+	private static final ConcurrentMap<Class<?>, LatencyHistory> histories = new ConcurrentHashMap<Class<?>, LatencyHistory>();
+
+	private final long[] samples = new long[WINDOW];
+	private int count;
+
+	private double percentile;
+	private long percentileValue;
+	private int percentileCount;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private LatencyHistory() {
+		// Use forType.
+	}
+
+	/**
+	 * Returns the history of the specified command type.
+	 * @param type the command type
+	 * @return the history of the specified command type, never null
+	 */
+	static LatencyHistory forType(Class<?> type) {
+		LatencyHistory history = histories.get(type);
+		if (history == null) {
+			history = new LatencyHistory();
+			LatencyHistory existing = histories.putIfAbsent(type, history);
+			if (existing != null) {
+				history = existing;
+			}
+		}
+		return history;
+	}
+
+	/**
+	 * Records the latency of a successful execution.
+	 * @param nanos the latency in nanoseconds
+	 */
+	synchronized void record(long nanos) {
+		samples[count % WINDOW] = nanos;
+		count++;
+	}
+
+	/**
+	 * Returns the specified percentile of the recent latencies.
+	 * @param p the percentile, between 0 and 1
+	 * @param fallback the value to return while not enough samples were recorded
+	 * @return the percentile in nanoseconds
+	 */
+	synchronized long percentile(double p, long fallback) {
+		int n = Math.min(count, WINDOW);
+		if (n < MIN_SAMPLES) {
+			return fallback;
+		}
+		if (p != percentile || count - percentileCount >= REFRESH) {
+			long[] sorted = Arrays.copyOf(samples, n);
+			Arrays.sort(sorted);
+			percentile = p;
+			percentileValue = sorted[Math.max(0, (int) Math.ceil(p * n) - 1)];
+			percentileCount = count;
+		}
+		return percentileValue;
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.spicefactory.lib.command.swing;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands tasks over to the event dispatch thread without blocking the calling thread.
+ * <p>
+ * Tasks submitted while a drain is already pending are run by that drain, so that many commands completing at once cost a single
+ * <code>invokeLater</code> event instead of one each. A drain runs a bounded number of tasks before yielding the EDT to other events.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+final class EdtDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(EdtDispatcher.class);
+
+	/** Maximum number of tasks run by one drain before the remaining ones get rescheduled. */
+	private static final int MAX_BATCH = 256;
+
+	private static final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private static final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private EdtDispatcher() {
+		// Static dispatcher.
+	}
+
+	/**
+	 * Runs the task on the event dispatch thread, immediately when called from it.
+	 * @param task the task to run
+	 */
+	static void dispatch(Runnable task) {
+		if (SwingUtilities.isEventDispatchThread() && tasks.isEmpty()) {
+			task.run();
+			return;
+		}
+		tasks.offer(task);
+		schedule();
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private static void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(drain);
+		}
+	}
+
+	// Java 1.8 forward compatibility.
+	private static final Runnable drain = new Runnable() {
+		@Override
+		public void run() {
+			scheduled.set(false);
+			Runnable task;
+			for (int i = 0; i < MAX_BATCH && (task = tasks.poll()) != null; i++) {
+				try {
+					task.run();
+				}
+				catch (RuntimeException e) {
+					logger.error("Task '{}' failed on the event dispatch thread.", task, e);
+				}
+			}
+			if (!tasks.isEmpty()) {
+				schedule();
+			}
+		}
+	};
+}
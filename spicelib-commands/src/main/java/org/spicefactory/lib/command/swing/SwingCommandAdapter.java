@@ -5,9 +5,8 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 
 import org.spicefactory.lib.command.CommandResult;
@@ -16,13 +15,26 @@ import org.spicefactory.lib.command.base.AbstractSuspendableCommand;
 import org.spicefactory.lib.command.base.DefaultCommandResult;
 import org.spicefactory.lib.command.builder.CommandProxyBuilder;
 import org.spicefactory.lib.command.callback.Callback;
+import org.spicefactory.lib.command.callback.CancelCallback;
+import org.spicefactory.lib.command.callback.ExceptionCallback;
+import org.spicefactory.lib.command.callback.ResultCallback;
 import org.spicefactory.lib.command.data.CommandData;
 import org.spicefactory.lib.command.data.DefaultCommandData;
 import org.spicefactory.lib.command.events.CommandEvent;
 import org.spicefactory.lib.command.events.CommandException;
 import org.spicefactory.lib.command.lifecycle.CommandLifecycle;
+import org.spicefactory.lib.command.proxy.CommandProxy;
 import org.spicefactory.lib.command.result.ResultProcessors;
 
+/**
+ * Adapts a Swing command, executing asynchronous commands on a <code>SwingWorker</code>.
+ * <p>
+ * Results are handed to the result processors on the background thread that produced them, only the final completion, exception or
+ * cancellation gets delivered to the event dispatch thread. The hand-over never blocks the background thread and is coalesced with the
+ * completions of other Swing commands.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
 public class SwingCommandAdapter extends AbstractSuspendableCommand implements CommandAdapter {
 
 	private CommandLifecycle lifecycle;
@@ -35,7 +47,11 @@ public class SwingCommandAdapter extends AbstractSuspendableCommand implements C
 	private final Method[] resultMethod;
 	private final Method[] errorMethod;
 	private final boolean async;
+	/** Whether the command delivers its result through a callback rather than by returning it. */
+	private final boolean callbackDriven;
 	private final SwingCommand command;
+	private final SwingCommandExecutor executor;
+	private CommandProxy resultProcessor;
 
 	private static final List<Class<?>> exceptionTypes = new ArrayList<Class<?>>() {
 		{
@@ -47,7 +63,8 @@ public class SwingCommandAdapter extends AbstractSuspendableCommand implements C
 	// Package-private.
 	/////////////////////////////////////////////////////////////////////////////
 
-	SwingCommandAdapter(Object target, Method execute, Field callback, Method cancel, Method[] result, Method[] error, boolean async) {
+	SwingCommandAdapter(Object target, Method execute, Field callback, Method cancel, Method[] result, Method[] error, boolean async,
+			SwingCommandExecutor executor) {
 		this.target = target;
 		this.callbackField = callback;
 		this.executeMethod = execute;
@@ -55,7 +72,13 @@ public class SwingCommandAdapter extends AbstractSuspendableCommand implements C
 		this.resultMethod = result;
 		this.errorMethod = error;
 		this.async = async;
+		this.executor = executor;
 		this.command = async ? new SwingCommand() : null;
+		boolean callbackParameter = false;
+		for (Class<?> param : execute.getParameterTypes()) {
+			callbackParameter |= param.isAssignableFrom(Callback.class);
+		}
+		this.callbackDriven = callback != null || callbackParameter;
 	}
 
 	/////////////////////////////////////////////////////////////////////////////
@@ -129,8 +152,15 @@ public class SwingCommandAdapter extends AbstractSuspendableCommand implements C
 
 	@Override
 	protected void doCancel() {
+		if (resultProcessor != null) {
+			CommandProxy processor = resultProcessor;
+			resultProcessor = null;
+			if (processor.isActive()) {
+				processor.cancel();
+			}
+		}
 		if (command != null) {
-			command.cancel(true);
+			command.discard();
 		} else {
 			try {
 				cancelMethod.invoke(target);
@@ -157,11 +187,20 @@ public class SwingCommandAdapter extends AbstractSuspendableCommand implements C
 
 		try {
 			if (async) {
-				command.execute();
+				try {
+					executor.submit(command);
+				}
+				catch (RuntimeException e) {
+					// The pool of the command got shut down or unregistered.
+					afterCompletion(DefaultCommandResult.forException(target, e));
+					exception(e);
+				}
 			} else {
 				// Result can be null if invoked method return type is void.
 				Object result = executeMethod.invoke(target, getParameters());
-				handleCompletion(result);
+				if (!processResult(result)) {
+					handleCompletion(result);
+				}
 			}
 		}
 		catch (InvocationTargetException e) {
@@ -186,13 +225,69 @@ public class SwingCommandAdapter extends AbstractSuspendableCommand implements C
 		return parameters;
 	}
 
-	private void handleResult(Object result) {
+	/**
+	 * Hands the result to a result processor, if one is registered for it.
+	 * @return true if a processor has been started, which will deliver the final result
+	 */
+	private boolean processResult(Object result) {
 		CommandProxyBuilder builder = result != null ? ResultProcessors.newProcessor(target, result) : null;
-		if (builder != null) {
-			processResult(builder);
-		} else {
-			handleCompletion(result);
+		if (builder == null) {
+			return false;
 		}
+		resultProcessor = builder //
+				.result(processorCompletionCallback) //
+				.exception(processorExceptionCallback) //
+				.cancel(processorCancellationCallback) //
+				.execute();
+		return true;
+	}
+
+	private void handleResult(Object result) {
+		if (isExceptionType(result)) {
+			dispatchException(result);
+		} else if (!processResult(result)) {
+			dispatchCompletion(result);
+		}
+	}
+
+	private void dispatchCompletion(final Object result) {
+		// Java 1.8 forward compatibility.
+		EdtDispatcher.dispatch(new Runnable() {
+			@Override
+			public void run() {
+				if (isActive()) {
+					if (isExceptionType(result)) {
+						handleException(result);
+					} else {
+						handleCompletion(result);
+					}
+				}
+			}
+		});
+	}
+
+	private void dispatchException(final Object cause) {
+		// Java 1.8 forward compatibility.
+		EdtDispatcher.dispatch(new Runnable() {
+			@Override
+			public void run() {
+				if (isActive()) {
+					handleException(cause);
+				}
+			}
+		});
+	}
+
+	private void dispatchCancellation() {
+		// Java 1.8 forward compatibility.
+		EdtDispatcher.dispatch(new Runnable() {
+			@Override
+			public void run() {
+				if (isActive()) {
+					handleCancellation();
+				}
+			}
+		});
 	}
 
 	private void handleCompletion(Object result) {
@@ -202,12 +297,14 @@ public class SwingCommandAdapter extends AbstractSuspendableCommand implements C
 			return;
 		}
 		afterCompletion(DefaultCommandResult.forCompletion(target, result));
+		resultProcessor = null;
 		complete(result);
 	}
 
 	private void handleException(Object cause) {
 		cause = invokeResultHandler(errorMethod, cause);
 		afterCompletion(DefaultCommandResult.forException(target, cause));
+		resultProcessor = null;
 		exception(cause);
 	}
 
@@ -253,40 +350,47 @@ public class SwingCommandAdapter extends AbstractSuspendableCommand implements C
 	private void handleCancellation() {
 		// do not call cancel to bypass doCancel
 		afterCompletion(DefaultCommandResult.forCancellation(target));
+		resultProcessor = null;
 		dispatchEvent(new CommandEvent(CommandEvent.CANCEL));
 	}
 
-	private void processResult(CommandProxyBuilder builder) {
-		System.err.println("SwingCommandAdapter.processResult(TODO: Implement me)");
-	}
-
 	private void afterCompletion(CommandResult result) {
 		lifecycle.afterCompletion(target, result);
 	}
 
 	private class SwingCommand extends SwingWorker<Object, Void> {
 
-		@Override
-		protected Object doInBackground() throws Exception {
-			return executeMethod.invoke(target, getParameters());
-		}
+		/** Set by whichever comes first of the worker starting and the worker being cancelled in the queue. */
+		private final AtomicBoolean dequeued = new AtomicBoolean();
 
 		@Override
-		protected void done() {
+		protected Object doInBackground() throws Exception {
+			executor.started(dequeued.compareAndSet(false, true));
+			Object result;
 			try {
-				Object result = get();
-				if (isExceptionType(result)) {
-					handleException(result);
-				} else {
-					handleResult(result);
+				result = executeMethod.invoke(target, getParameters());
+			}
+			catch (InvocationTargetException e) {
+				if (!isCancelled()) {
+					dispatchException(e.getCause());
 				}
+				return null;
+			}
+			finally {
+				executor.finished();
 			}
-			catch (InterruptedException e) {
-				handleCancellation();
+			if (!isCancelled() && !callbackDriven) {
+				// Still on the worker thread: result processors run here, only the final result goes to the EDT.
+				handleResult(result);
 			}
-			catch (ExecutionException e) {
-				Throwable cause = e.getCause();
-				handleException(cause instanceof InvocationTargetException ? cause.getCause() : cause);
+			return result;
+		}
+
+		void discard() {
+			cancel(true);
+			if (dequeued.compareAndSet(false, true)) {
+				// Cancelled while still queued, doInBackground will never run.
+				executor.discarded();
 			}
 		}
 	}
@@ -297,55 +401,19 @@ public class SwingCommandAdapter extends AbstractSuspendableCommand implements C
 
 	private final Callback<Object> callback = new Callback<Object>() {
 		@Override
-		public void result(final Object result) {
+		public void result(Object result) {
 			if (!isActive()) {
 				throw new IllegalStateException("Callback invoked although command " + target + " is not active");
 			}
-			if (SwingUtilities.isEventDispatchThread()) {
-				if (isExceptionType(result)) {
-					handleException(result);
-				} else {
-					handleCompletion(result);
-				}
-			} else {
-				try {
-					SwingUtilities.invokeAndWait(new Runnable() {
-						@Override
-						public void run() {
-							if (isExceptionType(result)) {
-								handleException(result);
-							} else {
-								handleCompletion(result);
-							}
-						}
-					});
-				}
-				catch (Exception e) {
-					throw new RuntimeException(e);
-				}
-			}
+			handleResult(result);
 		}
 
 		@Override
-		public void exception(final Throwable result) {
+		public void exception(Throwable result) {
 			if (!isActive()) {
 				throw new IllegalStateException("Callback invoked although command " + target + " is not active");
 			}
-			if (SwingUtilities.isEventDispatchThread()) {
-				handleException(result);
-			} else {
-				try {
-					SwingUtilities.invokeAndWait(new Runnable() {
-						@Override
-						public void run() {
-							handleException(result);
-						}
-					});
-				}
-				catch (Exception e) {
-					throw new RuntimeException(e);
-				}
-			}
+			dispatchException(result);
 		}
 
 		@Override
@@ -353,22 +421,35 @@ public class SwingCommandAdapter extends AbstractSuspendableCommand implements C
 			if (!isActive()) {
 				throw new IllegalStateException("Callback invoked although command " + target + " is not active");
 			}
-			if (SwingUtilities.isEventDispatchThread()) {
-				handleCancellation();
-			} else {
-				try {
-					SwingUtilities.invokeAndWait(new Runnable() {
-						@Override
-						public void run() {
-							handleCancellation();
-						}
-					});
-				}
-				catch (Exception e) {
-					throw new RuntimeException(e);
-				}
-			}
+			dispatchCancellation();
 		}
 	};
 
+	private final ResultCallback<Object> processorCompletionCallback = new ResultCallback<Object>() {
+
+		@Override
+		public void result(Object result) {
+			dispatchCompletion(result);
+		}
+
+	};
+
+	private final ExceptionCallback<Throwable> processorExceptionCallback = new ExceptionCallback<Throwable>() {
+
+		@Override
+		public void exception(Throwable cause) {
+			dispatchException(cause);
+		}
+
+	};
+
+	private final CancelCallback processorCancellationCallback = new CancelCallback() {
+
+		@Override
+		public void cancel() {
+			dispatchCancellation();
+		}
+
+	};
+
 }
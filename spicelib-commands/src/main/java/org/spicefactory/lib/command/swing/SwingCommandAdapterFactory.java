@@ -4,18 +4,92 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
 import org.spicefactory.lib.command.Async;
 import org.spicefactory.lib.command.adapter.CommandAdapter;
 import org.spicefactory.lib.command.adapter.CommandAdapterFactory;
+import org.spicefactory.lib.command.base.CommandPools;
 import org.spicefactory.lib.command.callback.Callback;
 
 /**
  * A CommandAdapterFactory implementation that creates adapters from commands that adhere to the conventions of Spicelib's "Swing Commands".
+ * <p>
+ * The background part of asynchronous commands runs on the executor passed to the constructor, or on the shared <code>SwingWorker</code> pool
+ * of the JDK when none was specified. The number of commands waiting for a thread can be monitored with <code>getQueueDepth</code>.
+ * </p>
+ * <p>
+ * A command annotated with <code>@Async(pool = "...")</code> runs on the named pool of <code>CommandPools</code> instead, the pool has to be
+ * registered before the first adapter for such a command gets created. The pool is looked up again for every execution, so that it can be shut
+ * down and registered again under the same name.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
  */
 public class SwingCommandAdapterFactory implements CommandAdapterFactory {
 
+	private final SwingCommandExecutor executor;
+	private final ConcurrentMap<String, SwingCommandExecutor> pools = new ConcurrentHashMap<String, SwingCommandExecutor>();
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a factory running asynchronous commands on the default <code>SwingWorker</code> pool.
+	 */
+	public SwingCommandAdapterFactory() {
+		this(null);
+	}
+
+	/**
+	 * Creates a factory running asynchronous commands on the specified executor.
+	 * <p>
+	 * The executor is not shut down by this factory.
+	 * </p>
+	 * @param executor the executor for the background part of asynchronous commands, null for the default <code>SwingWorker</code> pool
+	 */
+	public SwingCommandAdapterFactory(ExecutorService executor) {
+		this.executor = new SwingCommandExecutor(executor);
+	}
+
+	/**
+	 * The number of asynchronous commands submitted to the executor that did not start yet.
+	 * @return the number of commands waiting for a thread
+	 */
+	public int getQueueDepth() {
+		return executor.getQueueDepth();
+	}
+
+	/**
+	 * The number of asynchronous commands currently running their background part.
+	 * @return the number of commands running in the background
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * The number of asynchronous commands submitted to a named pool that did not start yet.
+	 * @param pool the name of the pool
+	 * @return the number of commands of this factory waiting for a thread of the pool
+	 */
+	public int getQueueDepth(String pool) {
+		SwingCommandExecutor executor = pools.get(pool);
+		return executor != null ? executor.getQueueDepth() : 0;
+	}
+
+	/**
+	 * The number of asynchronous commands currently running their background part on a named pool.
+	 * @param pool the name of the pool
+	 * @return the number of commands of this factory running on the pool
+	 */
+	public int getActiveCount(String pool) {
+		SwingCommandExecutor executor = pools.get(pool);
+		return executor != null ? executor.getActiveCount() : 0;
+	}
+
 	@Override
 	public CommandAdapter createAdapter(Object instance) {
 		Method execute = null;
@@ -41,7 +115,8 @@ public class SwingCommandAdapterFactory implements CommandAdapterFactory {
 		if (execute == null)
 			return null;
 
-		boolean async = instance.getClass().isAnnotationPresent(Async.class);
+		Async annotation = instance.getClass().getAnnotation(Async.class);
+		boolean async = annotation != null;
 
 		for (Class<?> param : execute.getParameterTypes()) {
 			if (param.isAssignableFrom(Callback.class)) {
@@ -65,6 +140,28 @@ public class SwingCommandAdapterFactory implements CommandAdapterFactory {
 		}
 
 		return new SwingCommandAdapter(instance, execute, callback, cancel, result.toArray(new Method[result.size()]),
-				error.toArray(new Method[error.size()]), async);
+				error.toArray(new Method[error.size()]), async, annotation != null ? executorFor(annotation.pool()) : executor);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private SwingCommandExecutor executorFor(String pool) {
+		if (pool.length() == 0) {
+			return executor;
+		}
+		if (CommandPools.get(pool) == null) {
+			throw new IllegalStateException("No pool registered under the name '" + pool + "'.");
+		}
+		SwingCommandExecutor executor = pools.get(pool);
+		if (executor == null) {
+			executor = new SwingCommandExecutor(pool);
+			SwingCommandExecutor existing = pools.putIfAbsent(pool, executor);
+			if (existing != null) {
+				executor = existing;
+			}
+		}
+		return executor;
 	}
 }
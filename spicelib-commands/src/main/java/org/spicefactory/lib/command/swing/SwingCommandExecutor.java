@@ -0,0 +1,97 @@
+package org.spicefactory.lib.command.swing;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingWorker;
+
+import org.spicefactory.lib.command.base.CommandPools;
+
+/**
+ * Runs the background part of asynchronous Swing commands and keeps track of how many of them are waiting for a thread.
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+final class SwingCommandExecutor {
+
+	private final ExecutorService executor;
+	private final String pool;
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param executor the executor running the workers, null to use the default pool of <code>SwingWorker</code>
+	 */
+	SwingCommandExecutor(ExecutorService executor) {
+		this.executor = executor;
+		this.pool = null;
+	}
+
+	/**
+	 * @param pool the name of the <code>CommandPools</code> pool running the workers, looked up on every submission so that a pool shut down
+	 *            and registered again under the same name is picked up
+	 */
+	SwingCommandExecutor(String pool) {
+		this.executor = null;
+		this.pool = pool;
+	}
+
+	void submit(SwingWorker<?, ?> worker) {
+		ExecutorService executor = this.executor;
+		if (pool != null) {
+			executor = CommandPools.get(pool);
+			if (executor == null) {
+				throw new IllegalStateException("No pool registered under the name '" + pool + "'.");
+			}
+		}
+		queued.incrementAndGet();
+		if (executor != null) {
+			try {
+				executor.execute(worker);
+			}
+			catch (RuntimeException e) {
+				queued.decrementAndGet();
+				throw e;
+			}
+		} else {
+			worker.execute();
+		}
+	}
+
+	/**
+	 * Invoked by a worker before it runs the command.
+	 * @param dequeued false if the worker was already accounted for as discarded by a concurrent cancellation
+	 */
+	void started(boolean dequeued) {
+		if (dequeued) {
+			queued.decrementAndGet();
+		}
+		active.incrementAndGet();
+	}
+
+	/**
+	 * Invoked by a worker after the command returned.
+	 */
+	void finished() {
+		active.decrementAndGet();
+	}
+
+	/**
+	 * Invoked for a worker cancelled before it left the queue.
+	 */
+	void discarded() {
+		queued.decrementAndGet();
+	}
+
+	int getQueueDepth() {
+		return queued.get();
+	}
+
+	int getActiveCount() {
+		return active.get();
+	}
+
+}
@@ -0,0 +1,252 @@
+package org.spicefactory.lib.command.trace;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.lib.command.CommandResult;
+import org.spicefactory.lib.command.adapter.CommandAdapter;
+
+/**
+ * A CommandTracer implementation that writes spans to a file in the Chrome trace-event format.
+ * <p>
+ * The file uses the JSON array format and can be opened with <code>chrome://tracing</code> or Perfetto. Each command execution is written as a
+ * complete (<code>X</code>) event on the thread that started the command, its arguments hold the span identifiers of the command and its parent
+ * executor, the outcome and the thread that completed the command.
+ * </p>
+ * <p>
+ * The sampling decision is taken once for each top-level execution and then applies to the whole tree of nested commands, so that a sampled
+ * trace is always complete.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class ChromeTraceRecorder implements CommandTracer, Flushable, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ChromeTraceRecorder.class);
+
+	private final Writer out;
+	private final double sampleRate;
+	private final Random random = new Random();
+	private final AtomicLong ids = new AtomicLong(0);
+	private final long epoch = System.nanoTime();
+
+	private final Set<Long> threads = new HashSet<Long>();
+	private boolean empty = true;
+	private boolean closed;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new recorder tracing every execution.
+	 * @param file the file to write the trace events to
+	 * @throws IOException if the file cannot be opened for writing
+	 */
+	public ChromeTraceRecorder(File file) throws IOException {
+		this(file, 1.0);
+	}
+
+	/**
+	 * Creates a new recorder.
+	 * @param file the file to write the trace events to
+	 * @param sampleRate the ratio of top-level executions to trace, between 0 and 1
+	 * @throws IOException if the file cannot be opened for writing
+	 */
+	public ChromeTraceRecorder(File file, double sampleRate) throws IOException {
+		this(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")), sampleRate);
+	}
+
+	/**
+	 * Creates a new recorder.
+	 * @param out the writer to write the trace events to
+	 * @param sampleRate the ratio of top-level executions to trace, between 0 and 1
+	 * @throws IOException if the writer cannot be written to
+	 */
+	public ChromeTraceRecorder(Writer out, double sampleRate) throws IOException {
+		if (sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + sampleRate);
+		}
+		this.out = out;
+		this.sampleRate = sampleRate;
+		out.write("[");
+	}
+
+	@Override
+	public CommandSpan start(CommandSpan parent, Object executor, Object command) {
+		if (parent == null) {
+			if (sampleRate < 1 && (sampleRate == 0 || random.nextDouble() >= sampleRate)) {
+				return CommandTracers.NOT_SAMPLED;
+			}
+		} else if (!parent.isSampled()) {
+			return CommandTracers.NOT_SAMPLED;
+		}
+		long parentId = parent instanceof Span ? ((Span) parent).id : 0;
+		return new Span(ids.incrementAndGet(), parentId, nameOf(command), Thread.currentThread(), System.nanoTime());
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		if (!closed) {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Terminates the trace-event array and closes the underlying file.
+	 * <p>
+	 * Spans ending after this method has been invoked are discarded.
+	 * </p>
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		out.write("\n]\n");
+		out.close();
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private String nameOf(Object command) {
+		if (command instanceof CommandAdapter) {
+			Object target = ((CommandAdapter) command).getTarget();
+			return target != null ? target.getClass().getSimpleName() : command.getClass().getSimpleName();
+		}
+		return command.getClass().getSimpleName();
+	}
+
+	private void record(Span span, CommandResult result, long end) {
+		Thread endThread = Thread.currentThread();
+		StringBuilder event = new StringBuilder(256);
+		event.append("{\"name\":");
+		appendString(event, span.name);
+		event.append(",\"cat\":\"command\",\"ph\":\"X\",\"ts\":");
+		appendMicros(event, span.start - epoch);
+		event.append(",\"dur\":");
+		appendMicros(event, end - span.start);
+		event.append(",\"pid\":1,\"tid\":").append(span.tid);
+		event.append(",\"args\":{\"id\":").append(span.id);
+		if (span.parentId != 0) {
+			event.append(",\"parent\":").append(span.parentId);
+		}
+		event.append(",\"outcome\":\"").append(outcomeOf(result)).append('"');
+		if (endThread.getId() != span.tid) {
+			event.append(",\"endTid\":").append(endThread.getId());
+		}
+		event.append("}}");
+
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			try {
+				writeThreadName(span.tid, span.threadName);
+				writeEvent(event);
+			}
+			catch (IOException e) {
+				logger.error("Failed to write trace event, disabling recorder.", e);
+				closed = true;
+			}
+		}
+	}
+
+	private void writeThreadName(long tid, String name) throws IOException {
+		if (threads.add(tid)) {
+			StringBuilder event = new StringBuilder(96);
+			event.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(tid).append(",\"args\":{\"name\":");
+			appendString(event, name);
+			event.append("}}");
+			writeEvent(event);
+		}
+	}
+
+	private void writeEvent(CharSequence event) throws IOException {
+		out.write(empty ? "\n" : ",\n");
+		out.append(event);
+		empty = false;
+	}
+
+	private static String outcomeOf(CommandResult result) {
+		if (result.complete()) {
+			return "complete";
+		}
+		return result.getValue() != null ? "exception" : "cancel";
+	}
+
+	private static void appendMicros(StringBuilder sb, long nanos) {
+		sb.append(nanos / 1000).append('.');
+		long fraction = nanos % 1000;
+		if (fraction < 100) {
+			sb.append('0');
+		}
+		if (fraction < 10) {
+			sb.append('0');
+		}
+		sb.append(fraction);
+	}
+
+	private static void appendString(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+	private class Span implements CommandSpan {
+
+		private final long id;
+		private final long parentId;
+		private final String name;
+		private final long tid;
+		private final String threadName;
+		private final long start;
+
+		Span(long id, long parentId, String name, Thread thread, long start) {
+			this.id = id;
+			this.parentId = parentId;
+			this.name = name;
+			this.tid = thread.getId();
+			this.threadName = thread.getName();
+			this.start = start;
+		}
+
+		@Override
+		public boolean isSampled() {
+			return true;
+		}
+
+		@Override
+		public void end(CommandResult result) {
+			record(this, result, System.nanoTime());
+		}
+
+	}
+}
@@ -0,0 +1,466 @@
+package org.spicefactory.lib.command.trace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.lib.command.CommandResult;
+import org.spicefactory.lib.command.adapter.CommandAdapter;
+import org.spicefactory.lib.command.data.CommandData;
+import org.spicefactory.lib.command.lifecycle.CommandLifecycle;
+import org.spicefactory.lib.command.lifecycle.DefaultCommandLifecycle;
+
+/**
+ * A CommandLifecycle that appends one compact binary record per command execution to a rolling set of memory-mapped files.
+ * <p>
+ * Each record holds the type of the command, the <code>System.nanoTime</code> at which it started and ended, its outcome and the thread that
+ * started it. Writing a record is a few stores into a mapped buffer: the operating system persists the pages in the background, even if the
+ * process crashes, so the journal is cheap enough to stay enabled in production and can be analyzed post-mortem with
+ * <code>JournalReplay</code>.
+ * </p>
+ * <p>
+ * Recording does not take a global lock: the start of a command is kept in a table striped by identity, and each record reserves its slot in
+ * the mapped buffer with a compare-and-set before writing it. Only rolling to the next segment and the first record of a new command type
+ * synchronize on the journal.
+ * </p>
+ * <p>
+ * The journal writes segments named <code>name.N.journal</code> of a fixed size, starting after the highest segment already present in the
+ * directory, and deletes the oldest ones so that at most the configured number of segments is kept. Every segment starts with the names of the
+ * command types it refers to and can be read on its own.
+ * </p>
+ * <p>
+ * The journal decorates another life-cycle, which keeps creating the command instances. It gets installed by passing it to the
+ * <code>prepare</code> method of the top-level executor, nested executors inherit it.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandJournal implements CommandLifecycle, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(CommandJournal.class);
+
+	static final String SUFFIX = ".journal";
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Record kinds, 0 marks the unused end of a segment. */
+	static final byte EXECUTION = 1;
+	static final byte TYPE = 2;
+
+	static final byte COMPLETE = 0;
+	static final byte EXCEPTION = 1;
+	static final byte CANCEL = 2;
+
+	/** Size of an execution record: kind, outcome, padding, type, start, end and thread. */
+	static final int EXECUTION_SIZE = 32;
+
+	/** Number of stripes of the table of started commands, a power of two. */
+	private static final int STRIPES = 16;
+
+	private final CommandLifecycle delegate;
+	private final File directory;
+	private final String name;
+	private final int segmentSize;
+	private final int segments;
+
+	private final ConcurrentMap<Class<?>, Integer> types = new ConcurrentHashMap<Class<?>, Integer>();
+	/** Start time and thread of the commands being executed. */
+	private final StartTable[] started = new StartTable[STRIPES];
+
+	private int segment;
+	private RandomAccessFile file;
+	/** The segment records get appended to, null once the journal is closed. */
+	private volatile Segment current;
+	private boolean closed;
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a journal keeping four segments of 16 MB, decorating the default life-cycle.
+	 * @param directory the directory of the segment files
+	 * @param name the name prefix of the segment files
+	 * @throws IOException if the first segment cannot be created
+	 */
+	public CommandJournal(File directory, String name) throws IOException {
+		this(directory, name, 16 << 20, 4, new DefaultCommandLifecycle());
+	}
+
+	/**
+	 * Creates a new journal.
+	 * @param directory the directory of the segment files
+	 * @param name the name prefix of the segment files
+	 * @param segmentSize the size of each segment file in bytes
+	 * @param segments the maximum number of segment files kept in the directory
+	 * @param delegate the life-cycle to decorate
+	 * @throws IOException if the first segment cannot be created
+	 */
+	public CommandJournal(File directory, String name, int segmentSize, int segments, CommandLifecycle delegate) throws IOException {
+		if (segmentSize < 1024 || segments < 1) {
+			throw new IllegalArgumentException("A journal requires at least one segment of at least 1024 bytes.");
+		}
+		this.directory = directory;
+		this.name = name;
+		this.segmentSize = segmentSize;
+		this.segments = segments;
+		this.delegate = delegate;
+		for (int i = 0; i < STRIPES; i++) {
+			started[i] = new StartTable();
+		}
+		this.segment = lastSegment(directory, name);
+		deleteSegments(segment + 1 - segments);
+		roll();
+	}
+
+	@Override
+	public <T> T createInstance(Class<T> type, CommandData data) {
+		return delegate.createInstance(type, data);
+	}
+
+	@Override
+	public void beforeExecution(Object command, CommandData data) {
+		delegate.beforeExecution(command, data);
+		if (command instanceof CommandAdapter) {
+			return; // The adapter reports the execution of its target.
+		}
+		long start = System.nanoTime();
+		int hash = System.identityHashCode(command);
+		StartTable table = started[stripeOf(hash)];
+		synchronized (table) {
+			table.put(command, hash, start, Thread.currentThread().getId());
+		}
+	}
+
+	@Override
+	public void afterCompletion(Object command, CommandResult result) {
+		long end = System.nanoTime();
+		try {
+			int hash = System.identityHashCode(command);
+			StartTable table = started[stripeOf(hash)];
+			long start;
+			long thread;
+			synchronized (table) {
+				int index = table.indexOf(command, hash);
+				if (index < 0) {
+					return;
+				}
+				start = table.starts[index];
+				thread = table.threads[index];
+				table.removeAt(index);
+			}
+			append(command.getClass(), outcomeOf(result), start, end, thread);
+		}
+		finally {
+			delegate.afterCompletion(command, result);
+		}
+	}
+
+	/**
+	 * Forces the records written so far to the disk.
+	 */
+	public synchronized void force() {
+		Segment s = current;
+		if (s != null) {
+			s.buffer.force();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			closeSegment();
+			current = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CommandJournal(" + new File(directory, name) + ")";
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private void append(Class<?> type, byte outcome, long start, long end, long thread) {
+		Integer id = types.get(type);
+		if (id == null) {
+			id = addType(type);
+		}
+		Segment s = current;
+		while (s != null) {
+			int position = s.reserve(EXECUTION_SIZE);
+			if (position >= 0) {
+				MappedByteBuffer buffer = s.buffer;
+				buffer.put(position + 1, outcome);
+				buffer.putInt(position + 4, id);
+				buffer.putLong(position + 8, start);
+				buffer.putLong(position + 16, end);
+				buffer.putLong(position + 24, thread);
+				// The kind goes last, so that a reader never sees a record that is only partly written.
+				buffer.put(position, EXECUTION);
+				return;
+			}
+			s = rollFrom(s);
+		}
+	}
+
+	private synchronized Integer addType(Class<?> type) {
+		Integer id = types.get(type);
+		if (id == null) {
+			id = types.size() + 1;
+			types.put(type, id);
+			Segment s = current;
+			while (s != null && !appendType(s, type, id)) {
+				s = rollFrom(s); // Writes all known types, including this one.
+			}
+		}
+		return id;
+	}
+
+	private static boolean appendType(Segment s, Class<?> type, int id) {
+		byte[] bytes = type.getName().getBytes(UTF8);
+		int position = s.reserve(8 + bytes.length);
+		if (position < 0) {
+			return false;
+		}
+		MappedByteBuffer buffer = s.buffer;
+		buffer.putShort(position + 2, (short) bytes.length);
+		buffer.putInt(position + 4, id);
+		for (int i = 0; i < bytes.length; i++) {
+			buffer.put(position + 8 + i, bytes[i]);
+		}
+		buffer.put(position, TYPE);
+		return true;
+	}
+
+	/**
+	 * Rolls to the next segment unless another thread already did so since the specified segment was found full.
+	 * @return the segment to append to, null if the journal is closed
+	 */
+	private synchronized Segment rollFrom(Segment full) {
+		if (current == full && !closed) {
+			try {
+				roll();
+			}
+			catch (IOException e) {
+				logger.error("Failed to roll journal, disabling it.", e);
+				closed = true;
+				current = null;
+			}
+		}
+		return current;
+	}
+
+	private void roll() throws IOException {
+		closeSegment();
+		segment++;
+		File next = segmentFile(directory, name, segment);
+		File old = segmentFile(directory, name, segment - segments);
+		if (old.exists() && !old.delete()) {
+			logger.warn("Cannot delete old journal segment '{}'.", old);
+		}
+		file = new RandomAccessFile(next, "rw");
+		file.setLength(0);
+		file.setLength(segmentSize);
+		Segment s = new Segment(file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+		for (Map.Entry<Class<?>, Integer> type : types.entrySet()) {
+			if (!appendType(s, type.getKey(), type.getValue())) {
+				throw new IOException("Segment size " + segmentSize + " is too small for the names of the command types.");
+			}
+		}
+		// Published only once complete, records of other threads go after the types.
+		current = s;
+	}
+
+	/**
+	 * Deletes the segments left by previous runs that would not be kept anyway.
+	 */
+	private void deleteSegments(int upTo) {
+		String[] files = directory.list();
+		if (files == null) {
+			return;
+		}
+		for (String file : files) {
+			int index = segmentIndex(name, file);
+			if (index > 0 && index <= upTo && !new File(directory, file).delete()) {
+				logger.warn("Cannot delete old journal segment '{}'.", file);
+			}
+		}
+	}
+
+	private void closeSegment() throws IOException {
+		// The mapping stays valid once the file is closed, so that records still being written by other threads are not lost.
+		Segment s = current;
+		if (s != null) {
+			s.buffer.force();
+		}
+		if (file != null) {
+			file.close();
+			file = null;
+		}
+	}
+
+	private static int stripeOf(int hash) {
+		return (hash * 0x9E3779B9) >>> 28;
+	}
+
+	private static byte outcomeOf(CommandResult result) {
+		if (result.complete()) {
+			return COMPLETE;
+		}
+		return result.getValue() != null ? EXCEPTION : CANCEL;
+	}
+
+	static File segmentFile(File directory, String name, int segment) {
+		return new File(directory, name + "." + segment + SUFFIX);
+	}
+
+	/**
+	 * The highest index of the segments of the specified journal, 0 if there is none.
+	 */
+	static int lastSegment(File directory, String name) {
+		int last = 0;
+		String[] files = directory.list();
+		if (files != null) {
+			for (String file : files) {
+				last = Math.max(last, segmentIndex(name, file));
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * The index of the specified segment file, 0 if it is not a segment of the specified journal.
+	 */
+	static int segmentIndex(String name, String file) {
+		String prefix = name + ".";
+		if (file.startsWith(prefix) && file.endsWith(SUFFIX)) {
+			try {
+				return Integer.parseInt(file.substring(prefix.length(), file.length() - SUFFIX.length()));
+			}
+			catch (NumberFormatException e) {
+				// Not a segment of this journal.
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * A mapped segment file, whose free space gets reserved record by record.
+	 */
+	private static final class Segment {
+
+		private final MappedByteBuffer buffer;
+		/** The position of the next record, records are written at their reserved position while others get reserved. */
+		private final AtomicInteger position = new AtomicInteger(0);
+
+		Segment(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Reserves space for a record, keeping at least one unused byte that marks the end of the written part.
+		 * @return the position of the record, -1 if the segment is full
+		 */
+		int reserve(int size) {
+			for (;;) {
+				int start = position.get();
+				if (start + size >= buffer.capacity()) {
+					return -1;
+				}
+				if (position.compareAndSet(start, start + size)) {
+					return start;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Open-addressing identity table of the start time and thread of started commands, kept in parallel arrays so that tracking a command does
+	 * not allocate. Callers synchronize on the table.
+	 */
+	private static final class StartTable {
+
+		private Object[] keys = new Object[16];
+		private long[] starts = new long[16];
+		private long[] threads = new long[16];
+		private int size;
+
+		int indexOf(Object key, int hash) {
+			int mask = keys.length - 1;
+			for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void put(Object key, int hash, long start, long thread) {
+			if ((size + 1) * 2 > keys.length) {
+				resize();
+			}
+			int mask = keys.length - 1;
+			int i = hash & mask;
+			while (keys[i] != null && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			if (keys[i] == null) {
+				size++;
+			}
+			keys[i] = key;
+			starts[i] = start;
+			threads[i] = thread;
+		}
+
+		void removeAt(int index) {
+			int mask = keys.length - 1;
+			int hole = index;
+			keys[hole] = null;
+			size--;
+			// Moves the following entries of the probe sequence into the hole when their home slot allows it, so that lookups never stop early.
+			for (int i = (hole + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+				int home = System.identityHashCode(keys[i]) & mask;
+				if (((i - home) & mask) >= ((i - hole) & mask)) {
+					keys[hole] = keys[i];
+					starts[hole] = starts[i];
+					threads[hole] = threads[i];
+					keys[i] = null;
+					hole = i;
+				}
+			}
+		}
+
+		private void resize() {
+			Object[] oldKeys = keys;
+			long[] oldStarts = starts;
+			long[] oldThreads = threads;
+			keys = new Object[oldKeys.length * 2];
+			starts = new long[keys.length];
+			threads = new long[keys.length];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					put(oldKeys[i], System.identityHashCode(oldKeys[i]), oldStarts[i], oldThreads[i]);
+				}
+			}
+		}
+
+	}
+}
@@ -0,0 +1,30 @@
+package org.spicefactory.lib.command.trace;
+
+import org.spicefactory.lib.command.CommandResult;
+
+/**
+ * Represents the recorded execution of a single command.
+ * <p>
+ * A span is opened by a <code>CommandTracer</code> when an executor starts a child command and closed once the child completed, failed or got
+ * cancelled.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public interface CommandSpan {
+
+	/**
+	 * Indicates whether this span is actually recorded.
+	 * <p>
+	 * Spans of executions that were not picked by the sampling of the tracer are not recorded, but still get passed down to the child commands
+	 * so that the whole execution tree is either traced or skipped.
+	 * </p>
+	 */
+	boolean isSampled();
+
+	/**
+	 * Closes this span.
+	 * @param result the result of the command execution
+	 */
+	void end(CommandResult result);
+
+}
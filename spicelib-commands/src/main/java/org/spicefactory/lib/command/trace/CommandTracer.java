@@ -0,0 +1,23 @@
+package org.spicefactory.lib.command.trace;
+
+/**
+ * Represents a hook that records the execution of commands started by executors.
+ * <p>
+ * A tracer gets invoked for every command started through <code>AbstractCommandExecutor.executeCommand</code>. The span of the executor itself
+ * is passed in as the parent, so that an implementation is able to reconstruct the whole tree of a nested execution. An executor that is not
+ * started by another executor opens the root span of its tree itself.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public interface CommandTracer {
+
+	/**
+	 * Opens a new span for the specified command.
+	 * @param parent the span of the executor starting the command or null for the root span of a top-level executor
+	 * @param executor the executor starting the command or null for the root span of a top-level executor
+	 * @param command the command to be executed
+	 * @return the span of the command, never null
+	 */
+	CommandSpan start(CommandSpan parent, Object executor, Object command);
+
+}
@@ -0,0 +1,67 @@
+package org.spicefactory.lib.command.trace;
+
+import org.spicefactory.lib.command.CommandResult;
+
+/**
+ * Central registry for the command tracer.
+ * <p>
+ * Tracing is disabled as long as no tracer is registered, in which case executors do not pay anything else than a volatile read per command.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public final class CommandTracers {
+
+	private static volatile CommandTracer tracer;
+
+	/**
+	 * A span that is not recorded.
+	 * <p>
+	 * Tracers should return this instance for executions that were not sampled.
+	 * </p>
+	 */
+	public static final CommandSpan NOT_SAMPLED = new CommandSpan() {
+
+		@Override
+		public boolean isSampled() {
+			return false;
+		}
+
+		@Override
+		public void end(CommandResult result) {
+			// Nothing to record.
+		}
+
+	};
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private CommandTracers() {
+		// Registry.
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Sets the tracer used by all executors.
+	 * @param value the tracer to use, or null to disable tracing
+	 */
+	public static void setTracer(CommandTracer value) {
+		tracer = value;
+	}
+
+	/**
+	 * Returns the tracer used by all executors.
+	 * @return the tracer to use, or null if tracing is disabled
+	 */
+	public static CommandTracer getTracer() {
+		return tracer;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+}
@@ -0,0 +1,315 @@
+package org.spicefactory.lib.command.trace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Offline tool reading the segments written by a <code>CommandJournal</code>.
+ * <p>
+ * It rebuilds the timeline of the recorded executions ordered by start time and computes latency statistics for each command type. Run it
+ * with the directory and the name of the journal, and <code>-timeline</code> to also print every execution:
+ * </p>
+ * 
+ * <pre>
+ * java org.spicefactory.lib.command.trace.JournalReplay /var/log/app commands -timeline
+ * </pre>
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public final class JournalReplay {
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private JournalReplay() {
+		// Static tool.
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: JournalReplay <directory> <name> [-timeline]");
+			System.exit(1);
+		}
+		List<Execution> executions = read(new File(args[0]), args[1]);
+		if (args.length > 2 && "-timeline".equals(args[2])) {
+			printTimeline(executions, System.out);
+			System.out.println();
+		}
+		printStatistics(statistics(executions), System.out);
+	}
+
+	/**
+	 * Reads all segments of a journal, oldest first.
+	 * @param directory the directory of the segment files
+	 * @param name the name prefix of the segment files
+	 * @return the recorded executions ordered by start time
+	 * @throws IOException if a segment cannot be read
+	 */
+	public static List<Execution> read(File directory, String name) throws IOException {
+		TreeMap<Integer, File> segments = new TreeMap<Integer, File>();
+		String[] files = directory.list();
+		if (files != null) {
+			for (String file : files) {
+				int index = CommandJournal.segmentIndex(name, file);
+				if (index > 0) {
+					segments.put(index, new File(directory, file));
+				}
+			}
+		}
+		List<Execution> executions = new ArrayList<Execution>();
+		for (File segment : segments.values()) {
+			readSegment(segment, executions);
+		}
+		// Java 1.8 forward compatibility.
+		Collections.sort(executions, new Comparator<Execution>() {
+			@Override
+			public int compare(Execution e1, Execution e2) {
+				long diff = e1.start - e2.start;
+				return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+			}
+		});
+		return executions;
+	}
+
+	/**
+	 * Computes the statistics of each command type.
+	 * @param executions the executions read from a journal
+	 * @return the statistics by command type, in alphabetical order
+	 */
+	public static Map<String, Statistics> statistics(List<Execution> executions) {
+		Map<String, List<Execution>> byType = new TreeMap<String, List<Execution>>();
+		for (Execution execution : executions) {
+			List<Execution> list = byType.get(execution.type);
+			if (list == null) {
+				list = new ArrayList<Execution>();
+				byType.put(execution.type, list);
+			}
+			list.add(execution);
+		}
+		Map<String, Statistics> statistics = new TreeMap<String, Statistics>();
+		for (Map.Entry<String, List<Execution>> entry : byType.entrySet()) {
+			statistics.put(entry.getKey(), new Statistics(entry.getValue()));
+		}
+		return statistics;
+	}
+
+	/**
+	 * Prints one line per execution, with times relative to the first execution.
+	 * @param executions the executions read from a journal
+	 * @param out the stream to print to
+	 */
+	public static void printTimeline(List<Execution> executions, PrintStream out) {
+		if (executions.isEmpty()) {
+			return;
+		}
+		long epoch = executions.get(0).start;
+		out.printf("%14s %12s %-9s %8s  %s%n", "start (us)", "duration", "outcome", "thread", "type");
+		for (Execution e : executions) {
+			out.printf("%14.1f %12.1f %-9s %8d  %s%n", (e.start - epoch) / 1000.0, e.getDuration() / 1000.0, e.outcome, e.thread, e.type);
+		}
+	}
+
+	/**
+	 * Prints one line of statistics per command type, durations in microseconds.
+	 * @param statistics the statistics by command type
+	 * @param out the stream to print to
+	 */
+	public static void printStatistics(Map<String, Statistics> statistics, PrintStream out) {
+		out.printf("%8s %8s %8s %8s %10s %10s %10s %10s  %s%n", "count", "complete", "error", "cancel", "mean", "p50", "p99", "max", "type");
+		for (Map.Entry<String, Statistics> entry : statistics.entrySet()) {
+			Statistics s = entry.getValue();
+			out.printf("%8d %8d %8d %8d %10.1f %10.1f %10.1f %10.1f  %s%n", s.count, s.completed, s.exceptions, s.cancellations, s.mean / 1000.0,
+					s.percentile(0.5) / 1000.0, s.percentile(0.99) / 1000.0, s.max / 1000.0, entry.getKey());
+		}
+	}
+
+	/**
+	 * A single recorded execution.
+	 */
+	public static final class Execution {
+
+		private final String type;
+		private final String outcome;
+		private final long start;
+		private final long end;
+		private final long thread;
+
+		Execution(String type, String outcome, long start, long end, long thread) {
+			this.type = type;
+			this.outcome = outcome;
+			this.start = start;
+			this.end = end;
+			this.thread = thread;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * The outcome of the execution, one of <code>complete</code>, <code>exception</code> or <code>cancel</code>.
+		 */
+		public String getOutcome() {
+			return outcome;
+		}
+
+		/**
+		 * The <code>System.nanoTime</code> at which the command started.
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		public long getDuration() {
+			return end - start;
+		}
+
+		/**
+		 * The id of the thread that started the command.
+		 */
+		public long getThread() {
+			return thread;
+		}
+
+		@Override
+		public String toString() {
+			return type + "(" + outcome + ", " + getDuration() + "ns)";
+		}
+
+	}
+
+	/**
+	 * The latency statistics of a command type, durations in nanoseconds.
+	 */
+	public static final class Statistics {
+
+		private final long[] durations;
+		private final int count;
+		private int completed;
+		private int exceptions;
+		private int cancellations;
+		private final double mean;
+		private final long max;
+
+		Statistics(List<Execution> executions) {
+			count = executions.size();
+			durations = new long[count];
+			long total = 0;
+			for (int i = 0; i < count; i++) {
+				Execution e = executions.get(i);
+				durations[i] = e.getDuration();
+				total += durations[i];
+				if ("complete".equals(e.outcome)) {
+					completed++;
+				} else if ("exception".equals(e.outcome)) {
+					exceptions++;
+				} else {
+					cancellations++;
+				}
+			}
+			Arrays.sort(durations);
+			mean = count > 0 ? (double) total / count : 0;
+			max = count > 0 ? durations[count - 1] : 0;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public int getCompleted() {
+			return completed;
+		}
+
+		public int getExceptions() {
+			return exceptions;
+		}
+
+		public int getCancellations() {
+			return cancellations;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * The duration below which the specified fraction of the executions completed (nearest rank).
+		 * @param fraction the fraction between 0 and 1
+		 * @return the duration in nanoseconds
+		 */
+		public long percentile(double fraction) {
+			if (count == 0) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(fraction * count);
+			return durations[Math.max(0, Math.min(count, rank) - 1)];
+		}
+
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	private static void readSegment(File file, List<Execution> executions) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		ByteBuffer buffer;
+		try {
+			FileChannel channel = in.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			in.close();
+		}
+		Map<Integer, String> types = new HashMap<Integer, String>();
+		while (buffer.remaining() > 0) {
+			int position = buffer.position();
+			byte kind = buffer.get(position);
+			if (kind == CommandJournal.EXECUTION && buffer.remaining() >= CommandJournal.EXECUTION_SIZE) {
+				String type = types.get(buffer.getInt(position + 4));
+				executions.add(new Execution(type != null ? type : "?", outcomeOf(buffer.get(position + 1)), buffer.getLong(position + 8), buffer
+						.getLong(position + 16), buffer.getLong(position + 24)));
+				buffer.position(position + CommandJournal.EXECUTION_SIZE);
+			} else if (kind == CommandJournal.TYPE && buffer.remaining() >= 8) {
+				int length = buffer.getShort(position + 2) & 0xFFFF;
+				byte[] bytes = new byte[length];
+				buffer.position(position + 8);
+				buffer.get(bytes);
+				types.put(buffer.getInt(position + 4), new String(bytes, CommandJournal.UTF8));
+			} else {
+				break; // End of the written part of the segment.
+			}
+		}
+	}
+
+	private static String outcomeOf(byte outcome) {
+		switch (outcome) {
+			case CommandJournal.COMPLETE:
+				return "complete";
+			case CommandJournal.EXCEPTION:
+				return "exception";
+			default:
+				return "cancel";
+		}
+	}
+}
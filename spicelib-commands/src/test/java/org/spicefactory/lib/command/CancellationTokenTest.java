@@ -0,0 +1,99 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.base.CancellationToken;
+import org.spicefactory.lib.command.base.Deadline;
+import org.spicefactory.lib.command.events.CommandException;
+import org.spicefactory.lib.command.events.CommandTimeoutException;
+import org.spicefactory.lib.command.impl.CommandEventCounter;
+import org.spicefactory.lib.command.impl.CooperativeCommand;
+import org.spicefactory.lib.command.impl.ExpiringCommand;
+import org.spicefactory.lib.command.light.LightCommandAdapterFactory;
+import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CancellationTokenTest {
+
+	private CommandEventCounter events;
+
+	@Before
+	public void setup() {
+		events = new CommandEventCounter();
+	}
+
+	@Test
+	public void testCancellationSignalsToken() throws Exception {
+		assertCancellationStops(new CooperativeCommand(false));
+	}
+
+	@Test
+	public void testCancellationInterruptsThread() throws Exception {
+		assertCancellationStops(new CooperativeCommand(true));
+	}
+
+	@Test(expected = CancellationException.class)
+	public void testExpiredDeadline() {
+		// Given
+		CancellationToken token = new CancellationToken(Deadline.after(0));
+
+		// Then
+		assertThat(token.isCancellationRequested(), is(true));
+		token.throwIfCancellationRequested();
+	}
+
+	@Test
+	public void testExpiredDeadlineReportsTimeout() {
+		// Given
+		DefaultCommandProxy proxy = new DefaultCommandProxy();
+		proxy.setTarget(new LightCommandAdapterFactory().createAdapter(new ExpiringCommand()));
+		proxy.addData(Deadline.after(20));
+		events.setTarget(proxy);
+
+		// When
+		proxy.execute();
+
+		// Then
+		events.assertEvents(0, 1);
+		Throwable cause = ((CommandException) events.getExceptions().get(0)).getCause();
+		assertThat(cause, is(instanceOf(CommandTimeoutException.class)));
+		assertThat(cause.getCause(), is(instanceOf(CancellationException.class)));
+	}
+
+	private void assertCancellationStops(CooperativeCommand command) throws Exception {
+		// Given
+		final DefaultCommandProxy proxy = new DefaultCommandProxy();
+		proxy.setTarget(new LightCommandAdapterFactory().createAdapter(command));
+		events.setTarget(proxy);
+		// Java 1.8 forward compatibility.
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				proxy.execute();
+			}
+		});
+		thread.start();
+		assertThat(command.started.await(1, TimeUnit.SECONDS), is(true));
+		assertThat(proxy.isCancellable(), is(true));
+
+		// When
+		proxy.cancel();
+		thread.join(1000);
+
+		// Then
+		assertThat(thread.isAlive(), is(false));
+		assertThat(command.stopped, is(true));
+		assertThat(proxy.isActive(), is(false));
+		events.assertEvents(0, 0, 1);
+	}
+
+}
@@ -0,0 +1,120 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.batch.BatchedCommand;
+import org.spicefactory.lib.command.batch.CommandBatcher;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.callback.ResultCallback;
+import org.spicefactory.lib.command.data.CommandData;
+import org.spicefactory.lib.command.impl.BulkCommand;
+import org.spicefactory.lib.command.impl.CommandEventCounter;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandBatchTest {
+
+	@Before
+	public void resetBatches() {
+		BulkCommand.batches.clear();
+		BulkCommand.threads.clear();
+	}
+
+	@Test
+	public void testFullBatch() {
+		// Given
+		CommandBatcher batcher = new CommandBatcher(BulkCommand.class, 3, 60000);
+		CommandEventCounter events = new CommandEventCounter();
+
+		// When
+		for (String input : new String[] {"a", "b", "c"}) {
+			Commands.wrap(batcher.load(input)).result(events.resultCallback).execute();
+		}
+
+		// Then
+		assertThat(BulkCommand.batches, hasSize(1));
+		assertThat(BulkCommand.batches.get(0), contains((Object) "a", "b", "c"));
+		events.assertCallbacks(3);
+	}
+
+	@Test
+	public void testBatchWindow() throws InterruptedException {
+		// Given
+		CommandBatcher batcher = new CommandBatcher(BulkCommand.class, 100, 10);
+		final CommandEventCounter events = new CommandEventCounter();
+		final CountDownLatch completed = new CountDownLatch(1);
+		// Java 1.8 forward compatibility.
+		ResultCallback<CommandData> callback = new ResultCallback<CommandData>() {
+			@Override
+			public void result(CommandData result) {
+				events.resultCallback(result);
+				completed.countDown();
+			}
+		};
+
+		// When
+		Commands.inParallel().add(batcher.load("a")).add(batcher.load("b")).allResults(callback).execute();
+		assertThat(completed.await(1, TimeUnit.SECONDS), is(true));
+
+		// Then
+		events.assertCallbacks(1);
+		assertThat(BulkCommand.batches, hasSize(1));
+		assertThat(BulkCommand.batches.get(0), contains((Object) "a", "b"));
+		assertThat(BulkCommand.threads.get(0).getName().startsWith("spicelib-command-worker-"), is(true));
+		CommandData results = (CommandData) events.getResultFromCallback();
+		assertThat(results.getObjects(), containsInAnyOrder((Object) "a!", "b!"));
+	}
+
+	@Test
+	public void testEqualInputsCoalesced() {
+		// Given
+		CommandBatcher batcher = new CommandBatcher(BulkCommand.class, 2, 60000);
+		final StringBuilder results = new StringBuilder();
+		ResultCallback<String> callback = new ResultCallback<String>() {
+			@Override
+			public void result(String result) {
+				results.append(result);
+			}
+		};
+
+		// When
+		Commands.wrap(batcher.load("a")).result(callback).execute();
+		Commands.wrap(batcher.load("a")).result(callback).execute();
+		Commands.wrap(batcher.load("b")).result(callback).execute();
+
+		// Then
+		assertThat(BulkCommand.batches, hasSize(1));
+		assertThat(BulkCommand.batches.get(0), contains((Object) "a", "b"));
+		assertThat(results.toString(), equalTo("a!a!b!"));
+	}
+
+	@Test
+	public void testCancelledInputRemoved() {
+		// Given
+		CommandBatcher batcher = new CommandBatcher(BulkCommand.class, 2, 60000);
+		BatchedCommand cancelled = batcher.load("a");
+		cancelled.execute();
+
+		// When
+		cancelled.cancel();
+		batcher.load("b").execute();
+		batcher.flush();
+
+		// Then
+		List<?> batch = BulkCommand.batches.get(0);
+		assertThat(batch, contains((Object) "b"));
+	}
+
+}
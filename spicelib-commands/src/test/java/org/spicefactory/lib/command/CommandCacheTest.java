@@ -0,0 +1,160 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.builder.CommandProxyBuilder;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.data.CommandData;
+import org.spicefactory.lib.command.impl.CommandEventCounter;
+import org.spicefactory.lib.command.impl.TrackedCommand;
+import org.spicefactory.lib.command.proxy.CacheKeyFunction;
+import org.spicefactory.lib.command.proxy.CommandCache;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandCacheTest {
+
+	private static final int MAX_ENTRIES = 2;
+
+	/** Executions left in flight by a test stay in the shared cache, so each test uses its own keys. */
+	private static int tests = 0;
+	private String prefix;
+
+	private final CacheKeyFunction keyFunction = new CacheKeyFunction() {
+		@Override
+		public Object keyOf(CommandData data) {
+			return data.getObject(String.class);
+		}
+	};
+
+	@Before
+	public void resetCache() {
+		TrackedCommand.instances.clear();
+		prefix = "test" + (++tests) + ".";
+		CommandCache.forType(TrackedCommand.class, MAX_ENTRIES, 0).clear();
+	}
+
+	@Test
+	public void testCachedResult() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		lookup("a", events).execute();
+		TrackedCommand.instances.get(0).forceCompletion("result");
+
+		// When
+		CommandProxy proxy = lookup("a", events).execute();
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(TrackedCommand.instances, hasSize(1));
+		events.assertCallbacks(2);
+	}
+
+	@Test
+	public void testSingleFlight() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy first = lookup("a", events).execute();
+		CommandProxy second = lookup("a", events).execute();
+		CommandProxy other = lookup("b", events).execute();
+		assertThat(TrackedCommand.instances, hasSize(2));
+
+		// When
+		TrackedCommand.instances.get(0).forceCompletion("result");
+
+		// Then
+		assertThat(first.isActive(), is(false));
+		assertThat(second.isActive(), is(false));
+		assertThat(other.isActive(), is(true));
+		events.assertCallbacks(2);
+	}
+
+	@Test
+	public void testWaiterTakesOverCancelledExecution() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy first = lookup("a", events).execute();
+		CommandProxy second = lookup("a", events).execute();
+
+		// When
+		first.cancel();
+
+		// Then
+		assertThat(second.isActive(), is(true));
+		assertThat(TrackedCommand.instances, hasSize(2));
+		TrackedCommand.instances.get(1).forceCompletion();
+		assertThat(second.isActive(), is(false));
+		events.assertCallbacks(1, 0, 1);
+	}
+
+	@Test
+	public void testExceptionNotCached() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		lookup("a", events).execute();
+		lookup("a", events).execute();
+
+		// When
+		TrackedCommand.instances.get(0).forceException(new RuntimeException("This is expected"));
+		lookup("a", events).execute();
+
+		// Then
+		events.assertCallbacks(0, 2);
+		assertThat(TrackedCommand.instances, hasSize(2));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		for (String key : new String[] {"a", "b", "c"}) {
+			lookup(key, events).execute();
+			TrackedCommand.instances.get(TrackedCommand.instances.size() - 1).forceCompletion(key);
+		}
+
+		// When
+		lookup("a", events).execute();
+
+		// Then
+		assertThat(CommandCache.forType(TrackedCommand.class, MAX_ENTRIES, 0).size(), equalTo(MAX_ENTRIES));
+		assertThat(TrackedCommand.instances, hasSize(4));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testConflictingBounds() {
+		Commands.create(TrackedCommand.class).cached(keyFunction, MAX_ENTRIES, 1000);
+	}
+
+	@Test
+	public void testExplicitCache() {
+		// Given
+		CommandCache cache = new CommandCache(10, 1000);
+		CommandEventCounter events = new CommandEventCounter();
+		Commands.create(TrackedCommand.class).data(prefix + "a").cached(keyFunction, cache).result(events.resultCallback).execute();
+		TrackedCommand.instances.get(0).forceCompletion("result");
+
+		// When
+		CommandProxy proxy = Commands.create(TrackedCommand.class).data(prefix + "a").cached(keyFunction, cache).result(events.resultCallback)
+				.execute();
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(TrackedCommand.instances, hasSize(1));
+		assertThat(cache.size(), equalTo(1));
+		assertThat(CommandCache.forType(TrackedCommand.class, MAX_ENTRIES, 0).size(), equalTo(0));
+		events.assertCallbacks(2);
+	}
+
+	private CommandProxyBuilder lookup(String key, CommandEventCounter events) {
+		return Commands.create(TrackedCommand.class).data(prefix + key).cached(keyFunction, MAX_ENTRIES, 0).result(events.resultCallback)
+				.exception(events.exceptionCallback).cancel(events.cancelCallback);
+	}
+
+}
@@ -0,0 +1,244 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.callback.ExceptionCallback;
+import org.spicefactory.lib.command.callback.ResultCallback;
+import org.spicefactory.lib.command.data.CommandData;
+import org.spicefactory.lib.command.group.CheckpointStore;
+import org.spicefactory.lib.command.group.CommandSequence;
+import org.spicefactory.lib.command.group.FileCheckpointStore;
+import org.spicefactory.lib.command.impl.AsynchronousCommand;
+import org.spicefactory.lib.command.impl.CommandEventCounter;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandCheckpointTest {
+
+	private File file;
+	private FileCheckpointStore store;
+
+	@Before
+	public void setup() throws Exception {
+		file = File.createTempFile("checkpoints", ".bin");
+		file.delete();
+		store = new FileCheckpointStore(file, 2);
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		store.close();
+		file.delete();
+	}
+
+	@Test
+	public void testResumeAfterFailure() {
+		// Given
+		AsynchronousCommand com1 = new AsynchronousCommand();
+		AsynchronousCommand com2 = new AsynchronousCommand();
+		AsynchronousCommand com3 = new AsynchronousCommand();
+		CommandProxy proxy = Commands.asSequence().add(com1).add(com2).add(com3).checkpoints(store).execute();
+
+		// When
+		com1.forceCompletion("first");
+		com2.forceException(new RuntimeException());
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(file.exists(), is(true));
+
+		// Given
+		AsynchronousCommand retry1 = new AsynchronousCommand();
+		AsynchronousCommand retry2 = new AsynchronousCommand();
+		AsynchronousCommand retry3 = new AsynchronousCommand();
+		final List<Object> results = new ArrayList<Object>();
+
+		// When
+		// Java 1.8 forward compatibility.
+		proxy = Commands.asSequence().add(retry1).add(retry2).add(retry3).checkpoints(store) //
+				.allResults(new ResultCallback<CommandData>() {
+					@Override
+					public void result(CommandData data) {
+						results.addAll(data.getObjects());
+					}
+				}).execute();
+
+		// Then
+		assertThat(retry1.executions, equalTo(0));
+		assertThat(retry2.executions, equalTo(1));
+
+		// When
+		retry2.forceCompletion("second");
+		retry3.forceCompletion("third");
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(results, contains((Object) "first", "second", "third"));
+		assertThat(file.exists(), is(false));
+	}
+
+	@Test
+	public void testNestedGroupResultsSaved() throws Exception {
+		// Given
+		AsynchronousCommand nested1 = new AsynchronousCommand();
+		AsynchronousCommand nested2 = new AsynchronousCommand();
+		AsynchronousCommand com2 = new AsynchronousCommand();
+		Commands.asSequence().add(Commands.inParallel().add(nested1).add(nested2)).add(com2).checkpoints(store).execute();
+
+		// When
+		nested1.forceCompletion("a");
+		nested2.forceCompletion("b");
+
+		// Then
+		List<Object> values = new ArrayList<Object>();
+		assertThat(store.restore(values), equalTo(1));
+		assertThat(values, contains((Object) "a", "b"));
+	}
+
+	@Test
+	public void testUnserializableResultFailsSequence() {
+		// Given
+		AsynchronousCommand com1 = new AsynchronousCommand();
+		AsynchronousCommand com2 = new AsynchronousCommand();
+		final List<Throwable> exceptions = new ArrayList<Throwable>();
+		CommandProxy proxy = Commands.asSequence().add(com1).add(com2).checkpoints(store).exception(collect(exceptions)).execute();
+
+		// When
+		com1.forceCompletion(new Object());
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(exceptions.size(), equalTo(1));
+		assertThat(com2.executions, equalTo(0));
+	}
+
+	@Test
+	public void testFailedSaveFailsSequence() {
+		// Given
+		AsynchronousCommand com1 = new AsynchronousCommand();
+		AsynchronousCommand com2 = new AsynchronousCommand();
+		final List<Throwable> exceptions = new ArrayList<Throwable>();
+		// Java 1.8 forward compatibility.
+		CheckpointStore failing = new CheckpointStore() {
+			@Override
+			public int restore(List<Object> values) {
+				return 0;
+			}
+
+			@Override
+			public void save(int index, List<? extends Serializable> values) throws IOException {
+				throw new IOException("Disk full");
+			}
+
+			@Override
+			public void clear() {
+				// Nothing saved.
+			}
+		};
+		CommandProxy proxy = Commands.asSequence().add(com1).add(com2).checkpoints(failing).exception(collect(exceptions)).execute();
+
+		// When
+		com1.forceCompletion("first");
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(exceptions.size(), equalTo(1));
+		assertThat(com2.executions, equalTo(0));
+	}
+
+	@Test
+	public void testFailedRestoreFailsSequence() {
+		// Given
+		AsynchronousCommand com1 = new AsynchronousCommand();
+		// Java 1.8 forward compatibility.
+		CheckpointStore failing = new CheckpointStore() {
+			@Override
+			public int restore(List<Object> values) throws IOException {
+				throw new IOException("Corrupted");
+			}
+
+			@Override
+			public void save(int index, List<? extends Serializable> values) {
+				// Never reached.
+			}
+
+			@Override
+			public void clear() {
+				// Nothing saved.
+			}
+		};
+		CommandSequence sequence = new CommandSequence(false, false);
+		sequence.addCommand(com1);
+		sequence.setCheckpointStore(failing);
+		CommandEventCounter events = new CommandEventCounter(sequence);
+
+		// When
+		sequence.execute();
+
+		// Then
+		assertThat(sequence.isActive(), is(false));
+		events.assertEvents(0, 1);
+		assertThat(com1.executions, equalTo(0));
+	}
+
+	@Test
+	public void testTornRecordIgnored() throws Exception {
+		// Given
+		store.save(1, Arrays.asList("a"));
+		store.save(2, Arrays.<Serializable> asList("b", 3));
+		store.close();
+		long length = file.length();
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new byte[] { 0, 0, 0, 42, 1, 2, 3 });
+		out.close();
+
+		// When
+		List<Object> values = new ArrayList<Object>();
+		int index = store.restore(values);
+
+		// Then
+		assertThat(index, equalTo(2));
+		assertThat(values, contains((Object) "a", "b", 3));
+		assertThat(file.length(), equalTo(length));
+	}
+
+	@Test
+	public void testNoCheckpoint() throws Exception {
+		// When
+		List<Object> values = new ArrayList<Object>();
+		int index = store.restore(values);
+
+		// Then
+		assertThat(index, equalTo(0));
+		assertThat(values, is(empty()));
+	}
+
+	private ExceptionCallback<Throwable> collect(final List<Throwable> exceptions) {
+		// Java 1.8 forward compatibility.
+		return new ExceptionCallback<Throwable>() {
+			@Override
+			public void exception(Throwable cause) {
+				exceptions.add(cause);
+			}
+		};
+	}
+
+}
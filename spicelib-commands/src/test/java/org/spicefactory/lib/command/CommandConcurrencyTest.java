@@ -0,0 +1,165 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.spicefactory.lib.command.base.ConcurrencyLimit;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.impl.AsynchronousCommand;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandConcurrencyTest {
+
+	@Test
+	public void testFixedLimit() {
+		// Given
+		AsynchronousCommand com1 = new AsynchronousCommand();
+		AsynchronousCommand com2 = new AsynchronousCommand();
+		AsynchronousCommand com3 = new AsynchronousCommand();
+		ConcurrencyLimit limit = new ConcurrencyLimit(2);
+
+		// When
+		CommandProxy proxy = Commands.inParallel().add(com1).add(com2).add(com3).concurrency(limit).execute();
+
+		// Then
+		assertThat(com1.isActive(), is(true));
+		assertThat(com2.isActive(), is(true));
+		assertThat(com3.isActive(), is(false));
+		assertThat(limit.getInFlight(), equalTo(2));
+
+		// When
+		com1.forceCompletion();
+
+		// Then
+		assertThat(com3.isActive(), is(true));
+		assertThat(limit.getInFlight(), equalTo(2));
+
+		// When
+		com2.forceCompletion();
+		com3.forceCompletion();
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(limit.getInFlight(), equalTo(0));
+		assertThat(limit.getLimit(), equalTo(2));
+	}
+
+	@Test
+	public void testLimitGrowsWhileFast() {
+		// Given
+		ConcurrencyLimit limit = new ConcurrencyLimit(1, 1, 10);
+
+		// When
+		for (int round = 0; round < 20; round++) {
+			int acquired = 0;
+			while (limit.tryAcquire(null)) {
+				acquired++;
+			}
+			for (int i = 0; i < acquired; i++) {
+				limit.release(1000, true);
+			}
+		}
+
+		// Then
+		assertThat(limit.getLimit(), greaterThan(4));
+	}
+
+	@Test
+	public void testLimitShrinksWhenSlow() {
+		// Given
+		ConcurrencyLimit limit = new ConcurrencyLimit(10, 1, 10);
+		limit.tryAcquire(null);
+		limit.release(1000, true);
+
+		// When
+		limit.tryAcquire(null);
+		limit.release(10000, true);
+
+		// Then
+		assertThat(limit.getLimit(), equalTo(9));
+
+		// When
+		limit.tryAcquire(null);
+		limit.release(1, false);
+
+		// Then
+		assertThat(limit.getLimit(), equalTo(8));
+	}
+
+	@Test
+	public void testWaiterCalledBack() {
+		// Given
+		ConcurrencyLimit limit = new ConcurrencyLimit(1);
+		final int[] calls = new int[1];
+		limit.tryAcquire(null);
+
+		// When
+		// Java 1.8 forward compatibility.
+		boolean acquired = limit.tryAcquire(new Runnable() {
+			@Override
+			public void run() {
+				calls[0]++;
+			}
+		});
+		limit.release(1000, true);
+
+		// Then
+		assertThat(acquired, is(false));
+		assertThat(calls[0], equalTo(1));
+	}
+
+	@Test
+	public void testCancelledGroupDoesNotSwallowSlot() {
+		// Given
+		ConcurrencyLimit limit = new ConcurrencyLimit(1);
+		AsynchronousCommand running = new AsynchronousCommand();
+		AsynchronousCommand cancelled = new AsynchronousCommand();
+		AsynchronousCommand waiting = new AsynchronousCommand();
+		Commands.inParallel().add(running).concurrency(limit).execute();
+		CommandProxy cancelledProxy = Commands.inParallel().add(cancelled).concurrency(limit).execute();
+		Commands.inParallel().add(waiting).concurrency(limit).execute();
+
+		// When
+		cancelledProxy.cancel();
+		running.forceCompletion();
+
+		// Then
+		assertThat(cancelled.isActive(), is(false));
+		assertThat(waiting.isActive(), is(true));
+		assertThat(limit.getInFlight(), equalTo(1));
+	}
+
+	@Test
+	public void testSuspendedGroupPassesSlotOn() {
+		// Given
+		ConcurrencyLimit limit = new ConcurrencyLimit(1);
+		AsynchronousCommand running = new AsynchronousCommand();
+		AsynchronousCommand suspended = new AsynchronousCommand();
+		AsynchronousCommand waiting = new AsynchronousCommand();
+		Commands.inParallel().add(running).concurrency(limit).execute();
+		CommandProxy suspendedProxy = Commands.inParallel().add(suspended).concurrency(limit).execute();
+		Commands.inParallel().add(waiting).concurrency(limit).execute();
+
+		// When
+		suspendedProxy.suspend();
+		running.forceCompletion();
+
+		// Then
+		assertThat(suspended.isActive(), is(false));
+		assertThat(waiting.isActive(), is(true));
+
+		// When
+		suspendedProxy.resume();
+		waiting.forceCompletion();
+
+		// Then
+		assertThat(suspended.isActive(), is(true));
+	}
+
+}
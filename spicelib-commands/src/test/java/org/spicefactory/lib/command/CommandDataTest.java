@@ -4,6 +4,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
@@ -13,6 +14,7 @@ import java.util.Date;
 
 import org.junit.Test;
 import org.spicefactory.lib.command.adapter.CommandAdapters;
+import org.spicefactory.lib.command.base.Deadline;
 import org.spicefactory.lib.command.builder.CommandGroupBuilder;
 import org.spicefactory.lib.command.builder.Commands;
 import org.spicefactory.lib.command.callback.ResultCallback;
@@ -20,6 +22,7 @@ import org.spicefactory.lib.command.data.CommandData;
 import org.spicefactory.lib.command.impl.AsynchronousCommand;
 import org.spicefactory.lib.command.impl.SyncSwingDataCommand;
 import org.spicefactory.lib.command.impl.SyncSwingResultCommand;
+import org.spicefactory.lib.command.impl.SynchronousCommand;
 import org.spicefactory.lib.command.model.CommandModel;
 import org.spicefactory.lib.command.swing.SwingCommandAdapterFactory;
 
@@ -52,6 +55,33 @@ public class CommandDataTest {
 		group(Commands.inParallel());
 	}
 
+	@Test
+	public void testTimeoutKeepsResults() {
+		// Given
+		ObjectResultHandler allResults = new ObjectResultHandler();
+		ObjectResultHandler lastResult = new ObjectResultHandler();
+		ObjectResultHandler allResultsWithTimeout = new ObjectResultHandler();
+		ObjectResultHandler lastResultWithTimeout = new ObjectResultHandler();
+
+		// When
+		Commands.asSequence().add(new SynchronousCommand()).allResults(allResults).lastResult(lastResult).execute();
+		Commands.asSequence().add(new SynchronousCommand()).timeout(1000).allResults(allResultsWithTimeout).lastResult(lastResultWithTimeout)
+				.execute();
+
+		// Then
+		CommandData data = (CommandData) allResultsWithTimeout.result;
+		assertThat(data.getObjects(), equalTo(((CommandData) allResults.result).getObjects()));
+		assertThat(data.getObjects(Deadline.class), hasSize(0));
+		assertThat(data.getObject(Object.class), is(not(instanceOf(Deadline.class))));
+		assertThat(lastResultWithTimeout.result.getClass(), equalTo((Object) lastResult.result.getClass()));
+	}
+
+	@Test
+	public void testTimeoutKeepsGroupResults() {
+		CommandData data = group(Commands.asSequence().timeout(1000));
+		assertThat(data.getObject(Object.class), equalTo((Object) 7));
+	}
+
 	private CommandData group(CommandGroupBuilder builder) {
 		return group(builder, 2);
 	}
@@ -1,19 +1,25 @@
 package org.spicefactory.lib.command;
 
+import static org.hamcrest.Matchers.both;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
+import org.spicefactory.lib.command.base.Deadline;
 import org.spicefactory.lib.command.builder.CommandProxyBuilder;
 import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.data.CommandData;
 import org.spicefactory.lib.command.events.CommandException;
 import org.spicefactory.lib.command.events.CommandTimeoutException;
 import org.spicefactory.lib.command.impl.AsynchronousCommand;
+import org.spicefactory.lib.command.impl.BudgetCommand;
 import org.spicefactory.lib.command.impl.CommandEventCounter;
 import org.spicefactory.lib.command.impl.FullCommand;
 import org.spicefactory.lib.command.impl.SynchronousCommand;
@@ -208,6 +214,76 @@ public class CommandExecutionTest {
 		assertThat(exception.getTarget(), is(instanceOf(AsynchronousCommand.class)));
 	}
 
+	@Test
+	public void testDeadlinePropagation() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy = Commands.asSequence().add(Commands.create(BudgetCommand.class).timeout(10000)).timeout(100).build();
+		events.setTarget(proxy);
+
+		// When
+		proxy.execute();
+
+		// Then
+		CommandData results = (CommandData) events.getResults().get(0);
+		assertThat(results.getObject(Long.class), is(both(greaterThan(0L)).and(lessThanOrEqualTo(100L))));
+	}
+
+	@Test
+	public void testExpiredDeadline() {
+		// Given
+		SynchronousCommand.resetTotalExecutions();
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy = Commands.create(SynchronousCommand.class).data(Deadline.after(-1)).build();
+		events.setTarget(proxy);
+
+		// When
+		proxy.execute();
+
+		// Then
+		events.assertEvents(0, 1);
+		assertThat(((CommandException) events.getExceptions().get(0)).getCause(), is(instanceOf(CommandTimeoutException.class)));
+		assertThat(SynchronousCommand.totalExecutions, equalTo(0));
+	}
+
+	@Test
+	public void testExpiredDeadlineReportsBudget() throws InterruptedException {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy = Commands.create(SynchronousCommand.class).data(Deadline.after(20)).timeout(1000).build();
+		events.setTarget(proxy);
+		Thread.sleep(50);
+
+		// When
+		proxy.execute();
+
+		// Then
+		events.assertEvents(0, 1);
+		CommandTimeoutException cause = (CommandTimeoutException) ((CommandException) events.getExceptions().get(0)).getCause();
+		assertThat(cause.getTimeout(), equalTo(20L));
+	}
+
+	@Test
+	public void testDeadlineNotInResultsAfterResume() {
+		// Given
+		FullCommand com = new FullCommand();
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy = Commands.asSequence().add(com).timeout(10000).build();
+		events.setTarget(proxy);
+		proxy.execute();
+
+		// When
+		for (int i = 0; i < 3; i++) {
+			proxy.suspend();
+			proxy.resume();
+		}
+		com.forceCompletion();
+
+		// Then
+		CommandData results = (CommandData) events.getResults().get(0);
+		assertThat(results.getObjects(Deadline.class).size(), equalTo(0));
+	}
+
 	@Test(expected = IllegalStateException.class)
 	public void testIllegalSuspension() {
 		// Given
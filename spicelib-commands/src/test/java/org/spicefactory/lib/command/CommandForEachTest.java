@@ -0,0 +1,120 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.builder.CommandPlan;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.callback.ResultCallback;
+import org.spicefactory.lib.command.impl.ChunkSumCommand;
+import org.spicefactory.lib.command.impl.HeldChunkCommand;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandForEachTest {
+
+	private List<Object> results;
+
+	@Before
+	public void resetInstances() {
+		HeldChunkCommand.instances.clear();
+	}
+
+	@Test
+	public void testChunkResultsInOrder() {
+		// Given
+		List<Integer> items = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+		CommandProxy proxy = Commands.forEach(items, HeldChunkCommand.class).chunkSize(3).parallelism(4).results(callback).execute();
+		assertThat(HeldChunkCommand.instances, hasSize(4));
+
+		// When
+		release(10, 7, 1, 4);
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(results, equalTo(Arrays.<Object> asList(6, 15, 24, 10)));
+	}
+
+	@Test
+	public void testForkedChunksInOrder() throws Exception {
+		// Given
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Integer> items = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8);
+
+		CommandProxy proxy = Commands.forEach(items, HeldChunkCommand.class).chunkSize(2).fork(executor).results(callback).execute();
+		for (int i = 0; i < 500 && HeldChunkCommand.instances.size() < 4; i++) {
+			Thread.sleep(10);
+		}
+		assertThat(HeldChunkCommand.instances, hasSize(4));
+
+		// When
+		release(7, 3, 5, 1);
+		for (int i = 0; i < 500 && proxy.isActive(); i++) {
+			Thread.sleep(10);
+		}
+		executor.shutdown();
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(results, equalTo(Arrays.<Object> asList(3, 7, 11, 15)));
+	}
+
+	@Test
+	public void testCompiledPlan() {
+		// Given
+		CommandPlan plan = Commands.forEach(Arrays.asList(1, 2, 3), ChunkSumCommand.class).chunkSize(2).results(callback).compile();
+
+		// When
+		plan.execute();
+		List<Object> first = results;
+		plan.execute();
+
+		// Then
+		assertThat(first, equalTo(Arrays.<Object> asList(3, 3)));
+		assertThat(results, equalTo(Arrays.<Object> asList(3, 3)));
+	}
+
+	@Test
+	public void testNoItems() {
+		// When
+		Commands.forEach(Collections.emptyList(), ChunkSumCommand.class).results(callback).execute();
+
+		// Then
+		assertThat(results, is(empty()));
+	}
+
+	/**
+	 * Completes the held chunks in the specified order, each chunk given by its first item.
+	 */
+	private void release(int... firstItems) {
+		for (int first : firstItems) {
+			for (HeldChunkCommand command : HeldChunkCommand.instances) {
+				if (command.chunk.get(0) == first) {
+					command.release();
+				}
+			}
+		}
+	}
+
+	// Java 1.8 forward compatibility.
+	private final ResultCallback<List<Object>> callback = new ResultCallback<List<Object>>() {
+		@Override
+		public void result(List<Object> result) {
+			results = new ArrayList<Object>(result);
+		}
+	};
+}
@@ -0,0 +1,233 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.spicefactory.lib.command.builder.CommandGroupBuilder;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.callback.ExceptionCallback;
+import org.spicefactory.lib.command.data.CommandData;
+import org.spicefactory.lib.command.data.DefaultCommandData;
+import org.spicefactory.lib.command.group.CommandParallel;
+import org.spicefactory.lib.command.impl.BarrierCommand;
+import org.spicefactory.lib.command.impl.ParseCommand;
+import org.spicefactory.lib.command.impl.SynchronousCommand;
+import org.spicefactory.lib.command.lifecycle.DefaultCommandLifecycle;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandForkTest {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testForkedCommandsRunConcurrently() throws Exception {
+		// Given
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		BarrierCommand com1 = new BarrierCommand(barrier);
+		BarrierCommand com2 = new BarrierCommand(barrier);
+
+		// When
+		CommandProxy proxy = Commands.inParallel().add(com1).add(com2).fork(executor).execute();
+		awaitCompletion(proxy);
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(com1.thread, not(equalTo(com2.thread)));
+	}
+
+	@Test
+	public void testNestedGroups() throws Exception {
+		// Given
+		SynchronousCommand[] leaves = new SynchronousCommand[8];
+		CommandParallel root = new CommandParallel(false, false);
+		root.setExecutor(executor);
+		for (int i = 0; i < 2; i++) {
+			CommandParallel inner = new CommandParallel(false, false);
+			inner.setExecutor(executor);
+			for (int j = 0; j < 4; j++) {
+				leaves[i * 4 + j] = new SynchronousCommand();
+				inner.addCommand(leaves[i * 4 + j]);
+			}
+			root.addCommand(inner);
+		}
+
+		// When
+		root.execute();
+		for (int i = 0; i < 500 && root.isActive(); i++) {
+			Thread.sleep(10);
+		}
+
+		// Then
+		assertThat(root.isActive(), is(false));
+		for (SynchronousCommand leaf : leaves) {
+			assertThat(leaf.executions, equalTo(1));
+		}
+	}
+
+	@Test
+	public void testForkedCommandsReadDataWhileResultsAreAdded() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			for (int run = 0; run < 20; run++) {
+				// Given
+				final AtomicInteger exceptions = new AtomicInteger(0);
+				CommandGroupBuilder builder = Commands.inParallel().data("7").fork(pool);
+				for (int i = 0; i < 200; i++) {
+					builder.add(ParseCommand.class);
+				}
+
+				// When
+				CommandProxy proxy = builder.exception(new ExceptionCallback<Throwable>() {
+					@Override
+					public void exception(Throwable cause) {
+						exceptions.incrementAndGet();
+					}
+				}).execute();
+				awaitCompletion(proxy);
+
+				// Then
+				assertThat(proxy.isActive(), is(false));
+				assertThat(exceptions.get(), equalTo(0));
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testForkedCommandsReportedOnce() throws Exception {
+		// Given
+		final AtomicInteger before = new AtomicInteger(0);
+		final AtomicInteger after = new AtomicInteger(0);
+		CommandParallel group = new CommandParallel(false, false);
+		group.setExecutor(executor);
+		group.addCommand(new SynchronousCommand());
+		group.addCommand(new SynchronousCommand());
+		group.prepare(new DefaultCommandLifecycle() {
+			@Override
+			public void beforeExecution(Object command, CommandData data) {
+				before.incrementAndGet();
+			}
+
+			@Override
+			public void afterCompletion(Object command, CommandResult result) {
+				after.incrementAndGet();
+			}
+		}, new DefaultCommandData());
+
+		// When
+		group.execute();
+		for (int i = 0; i < 500 && group.isActive(); i++) {
+			Thread.sleep(10);
+		}
+
+		// Then
+		assertThat(group.isActive(), is(false));
+		assertThat(before.get(), equalTo(2));
+		assertThat(after.get(), equalTo(2));
+	}
+
+	@Test
+	public void testCancelledBeforeStart() throws Exception {
+		// Given
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		final CountDownLatch blocked = new CountDownLatch(1);
+		// Java 1.8 forward compatibility.
+		single.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					blocked.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		SynchronousCommand command = new SynchronousCommand();
+		CommandProxy proxy = Commands.inParallel().add(command).fork(single).execute();
+
+		// When
+		proxy.cancel();
+		blocked.countDown();
+		single.shutdown();
+		single.awaitTermination(5, TimeUnit.SECONDS);
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(command.executions, equalTo(0));
+	}
+
+	@Test
+	public void testCancelledWhileStarting() throws Exception {
+		// Given
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		final CountDownLatch starting = new CountDownLatch(1);
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		final List<String> reported = new CopyOnWriteArrayList<String>();
+		SynchronousCommand command = new SynchronousCommand();
+		CommandParallel group = new CommandParallel(false, false);
+		group.setExecutor(single);
+		group.addCommand(command);
+		group.prepare(new DefaultCommandLifecycle() {
+			@Override
+			public void beforeExecution(Object command, CommandData data) {
+				reported.add("before");
+				starting.countDown();
+				try {
+					cancelled.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			@Override
+			public void afterCompletion(Object command, CommandResult result) {
+				reported.add("after");
+			}
+		}, new DefaultCommandData());
+		group.execute();
+		assertThat(starting.await(5, TimeUnit.SECONDS), is(true));
+
+		// When
+		group.cancel();
+		cancelled.countDown();
+		single.shutdown();
+		single.awaitTermination(5, TimeUnit.SECONDS);
+
+		// Then
+		assertThat(group.isActive(), is(false));
+		assertThat(command.executions, equalTo(0));
+		assertThat(reported, equalTo(Arrays.asList("before", "after")));
+	}
+
+	private void awaitCompletion(CommandProxy proxy) throws InterruptedException {
+		for (int i = 0; i < 500 && proxy.isActive(); i++) {
+			Thread.sleep(10);
+		}
+	}
+}
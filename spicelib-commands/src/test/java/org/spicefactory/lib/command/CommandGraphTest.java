@@ -0,0 +1,180 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.builder.CommandPlan;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.callback.ResultCallback;
+import org.spicefactory.lib.command.data.CommandData;
+import org.spicefactory.lib.command.impl.CommandEventCounter;
+import org.spicefactory.lib.command.impl.DescribeCommand;
+import org.spicefactory.lib.command.impl.ParseCommand;
+import org.spicefactory.lib.command.impl.SquareCommand;
+import org.spicefactory.lib.command.impl.TrackedCommand;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandGraphTest {
+
+	private final Results results = new Results();
+
+	@Before
+	public void resetInstances() {
+		TrackedCommand.instances.clear();
+		ParseCommand.executions.set(0);
+		SquareCommand.executions.set(0);
+		DescribeCommand.executions.set(0);
+	}
+
+	@Test
+	public void testDependencyOrder() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy =
+				Commands.graph().add(DescribeCommand.class, StringBuilder.class).add(SquareCommand.class, Long.class)
+						.add(ParseCommand.class, Integer.class).data("21").build();
+		events.setTarget(proxy);
+
+		// When
+		proxy.execute();
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		CommandData results = (CommandData) events.getResults().get(0);
+		assertThat(results.getObject(StringBuilder.class).toString(), equalTo("21^2=441"));
+	}
+
+	@Test
+	public void testIndependentCommandsStartTogether() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy =
+				Commands.graph().add(TrackedCommand.class, Long.class).add(TrackedCommand.class, Boolean.class)
+						.add(ParseCommand.class, Integer.class).add(DescribeCommand.class, StringBuilder.class).data("3").build();
+		events.setTarget(proxy);
+
+		// When
+		proxy.execute();
+
+		// Then
+		assertThat(TrackedCommand.instances, hasSize(2));
+		assertThat(proxy.isActive(), is(true));
+
+		// When
+		TrackedCommand.instances.get(1).forceCompletion(true);
+		TrackedCommand.instances.get(0).forceCompletion(9L);
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		CommandData results = (CommandData) events.getResults().get(0);
+		assertThat(results.getObject(StringBuilder.class).toString(), equalTo("3^2=9"));
+	}
+
+	@Test
+	public void testPlanExecutedTwice() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandPlan plan =
+				Commands.graph().add(DescribeCommand.class, StringBuilder.class).add(SquareCommand.class, Long.class)
+						.add(ParseCommand.class, Integer.class).data("4").results(events.resultCallback).compile();
+
+		// When
+		plan.execute();
+		plan.execute();
+
+		// Then
+		events.assertCallbacks(2);
+	}
+
+	@Test
+	public void testIncrementalSkipsUnchangedInputs() {
+		// Given
+		CommandPlan plan =
+				Commands.graph().add(DescribeCommand.class, StringBuilder.class).add(SquareCommand.class, Long.class)
+						.add(ParseCommand.class, Integer.class).input(String.class).incremental().results(results).compile();
+
+		// When
+		plan.execute("21");
+		plan.execute("21");
+
+		// Then
+		assertThat(ParseCommand.executions.get(), equalTo(1));
+		assertThat(SquareCommand.executions.get(), equalTo(1));
+		assertThat(DescribeCommand.executions.get(), equalTo(1));
+		assertThat(results.getValues(), hasSize(2));
+		assertThat(results.last(), equalTo("21^2=441"));
+
+		// When
+		plan.execute("4");
+
+		// Then
+		assertThat(ParseCommand.executions.get(), equalTo(2));
+		assertThat(SquareCommand.executions.get(), equalTo(2));
+		assertThat(DescribeCommand.executions.get(), equalTo(2));
+		assertThat(results.last(), equalTo("4^2=16"));
+	}
+
+	@Test
+	public void testIncrementalStopsAtEqualResults() {
+		// Given
+		CommandPlan plan =
+				Commands.graph().add(DescribeCommand.class, StringBuilder.class).add(SquareCommand.class, Long.class)
+						.add(ParseCommand.class, Integer.class).input(String.class).incremental().results(results).compile();
+
+		// When
+		plan.execute("21");
+		plan.execute("021");
+
+		// Then
+		assertThat(ParseCommand.executions.get(), equalTo(2));
+		assertThat(SquareCommand.executions.get(), equalTo(1));
+		assertThat(DescribeCommand.executions.get(), equalTo(1));
+		assertThat(results.last(), equalTo("21^2=441"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testMissingProducer() {
+		Commands.graph().add(SquareCommand.class, Long.class).build();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAmbiguousProducers() {
+		Commands.graph().add(ParseCommand.class, Integer.class).add(ParseCommand.class, Integer.class).add(SquareCommand.class, Long.class)
+				.data("21").build();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCycle() {
+		Commands.graph().add(SquareCommand.class, Long.class).add(DescribeCommand.class, Integer.class).input(Integer.class).build();
+	}
+
+	private static class Results implements ResultCallback<CommandData> {
+
+		private final List<String> values = new ArrayList<String>();
+
+		@Override
+		public void result(CommandData data) {
+			values.add(data.getObject(StringBuilder.class).toString());
+		}
+
+		List<String> getValues() {
+			return values;
+		}
+
+		String last() {
+			return values.get(values.size() - 1);
+		}
+
+	}
+
+}
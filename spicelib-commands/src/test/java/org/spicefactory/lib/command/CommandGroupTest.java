@@ -12,6 +12,7 @@ import org.spicefactory.lib.command.builder.Commands;
 import org.spicefactory.lib.command.events.CommandException;
 import org.spicefactory.lib.command.events.CommandTimeoutException;
 import org.spicefactory.lib.command.group.CommandGroup;
+import org.spicefactory.lib.command.group.CommandParallel;
 import org.spicefactory.lib.command.impl.AsynchronousCommand;
 import org.spicefactory.lib.command.impl.CommandEventCounter;
 import org.spicefactory.lib.command.impl.FullCommand;
@@ -328,11 +329,201 @@ public class CommandGroupTest {
 		events.assertCallbacks(1);
 	}
 
-	@Test(expected = IllegalStateException.class)
-	public void testIllegalSuspension() {
-		AsynchronousCommand async = new AsynchronousCommand();
-		CommandProxy proxy = Commands.asSequence().add(async).execute();
+	@Test
+	public void testSuspensionBuffersCompletion() {
+		// Given
+		AsynchronousCommand com1 = new AsynchronousCommand();
+		AsynchronousCommand com2 = new AsynchronousCommand();
+		CommandEventCounter events = new CommandEventCounter();
+		CommandGroupBuilder builder = Commands.asSequence().add(com1).add(com2);
+		addCallbacks(builder, events);
+		CommandProxy proxy = builder.execute();
+		assertThat(proxy.isSuspendable(), is(true));
+
+		// When
 		proxy.suspend();
+		com1.forceCompletion();
+
+		// Then
+		assertActive(com1, false);
+		assertActive(com2, false);
+		assertThat(com2.executions, equalTo(0));
+		assertThat(proxy.isActive(), is(true));
+		events.assertCallbacks(0);
+
+		// When
+		proxy.resume();
+
+		// Then
+		assertActive(com2, true);
+
+		// When
+		com2.forceCompletion();
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		events.assertCallbacks(1);
+	}
+
+	@Test
+	public void testParallelSuspensionDefersAddedCommands() {
+		// Given
+		AsynchronousCommand com1 = new AsynchronousCommand();
+		AsynchronousCommand com2 = new AsynchronousCommand();
+		CommandParallel group = new CommandParallel(false, false);
+		group.addCommand(com1);
+		group.execute();
+
+		// When
+		group.suspend();
+		com1.forceCompletion();
+		group.addCommand(com2);
+
+		// Then
+		assertActive(com2, false);
+		assertThat(group.isActive(), is(true));
+
+		// When
+		group.resume();
+
+		// Then
+		assertActive(com2, true);
+
+		// When
+		com2.forceCompletion();
+
+		// Then
+		assertThat(group.isActive(), is(false));
+	}
+
+	@Test
+	public void testCapabilitiesFollowActiveCommands() {
+		// Given
+		FullCommand full = new FullCommand();
+		AsynchronousCommand async = new AsynchronousCommand();
+		CommandProxy nested = Commands.inParallel().add(new FullCommand()).build();
+		CommandProxy proxy = Commands.inParallel().add(full).add(async).add(nested).execute();
+
+		// Then
+		assertThat(proxy.isCancellable(), is(false));
+		// Groups can be paused whatever their children are.
+		assertThat(proxy.isSuspendable(), is(true));
+
+		// When
+		async.forceCompletion();
+
+		// Then
+		assertThat(proxy.isCancellable(), is(true));
+		assertThat(proxy.isSuspendable(), is(true));
+
+		// When
+		proxy.cancel();
+
+		// Then
+		assertActive(full, false);
+		assertActive(nested, false);
+	}
+
+	@Test
+	public void testCapabilitiesFollowNestedExecutors() {
+		// Given
+		AsynchronousCommand first = new AsynchronousCommand();
+		AsynchronousCommand second = new AsynchronousCommand();
+		CommandProxy firstGroup = Commands.inParallel().add(first).build();
+		CommandProxy secondGroup = Commands.inParallel().add(second).build();
+		CommandProxy proxy = Commands.inParallel().add(firstGroup).add(new FullCommand()).add(secondGroup).execute();
+
+		// Then
+		assertThat(proxy.isCancellable(), is(false));
+
+		// When
+		first.forceCompletion();
+
+		// Then
+		assertActive(firstGroup, false);
+		assertThat(proxy.isCancellable(), is(false));
+
+		// When
+		second.forceCompletion();
+
+		// Then
+		assertActive(secondGroup, false);
+		assertThat(proxy.isCancellable(), is(true));
+	}
+
+	@Test
+	public void testQuorumCompletesEarly() {
+		// Given
+		FullCommand com1 = new FullCommand();
+		FullCommand com2 = new FullCommand();
+		FullCommand com3 = new FullCommand();
+		CommandEventCounter events = new CommandEventCounter();
+		CommandGroupBuilder builder = Commands.quorum(2).add(com1).add(com2).add(com3);
+		addCallbacks(builder, events);
+		CommandProxy proxy = builder.execute();
+
+		// When
+		com2.forceException();
+		com1.forceCompletion();
+
+		// Then
+		assertActive(proxy, true);
+		events.assertCallbacks(0);
+
+		// When
+		com3.forceCompletion();
+
+		// Then
+		assertActive(proxy, false);
+		events.assertCallbacks(1);
+	}
+
+	@Test
+	public void testRaceCancelsStragglers() {
+		// Given
+		FullCommand com1 = new FullCommand();
+		FullCommand com2 = new FullCommand();
+		CommandEventCounter events = new CommandEventCounter();
+		CommandGroupBuilder builder = Commands.quorum(1).add(com1).add(com2);
+		addCallbacks(builder, events);
+		builder.execute();
+
+		// When
+		com2.forceCompletion();
+
+		// Then
+		com1.assertStatus(false, 1, 0, 0, 1);
+		events.assertCallbacks(1);
+	}
+
+	@Test
+	public void testQuorumFailsFast() {
+		// Given
+		FullCommand com1 = new FullCommand();
+		FullCommand com2 = new FullCommand();
+		FullCommand com3 = new FullCommand();
+		CommandEventCounter events = new CommandEventCounter();
+		CommandGroupBuilder builder = Commands.quorum(2).add(com1).add(com2).add(com3);
+		addCallbacks(builder, events);
+		builder.execute();
+
+		// When
+		com1.forceException(new RuntimeException("This is expected"));
+		com2.forceException(new RuntimeException("This is expected"));
+
+		// Then
+		com3.assertStatus(false, 1, 0, 0, 1);
+		events.assertCallbacks(0, 1);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testQuorumRejectsSkipExceptions() {
+		Commands.quorum(1).skipExceptions();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testQuorumRejectsSkipCancellations() {
+		Commands.quorum(1).skipCancellations();
 	}
 
 	@Test
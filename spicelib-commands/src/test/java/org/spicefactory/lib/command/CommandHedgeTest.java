@@ -0,0 +1,118 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.impl.CommandEventCounter;
+import org.spicefactory.lib.command.impl.SynchronousCommand;
+import org.spicefactory.lib.command.impl.TrackedCommand;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandHedgeTest {
+
+	@Before
+	public void resetInstances() {
+		TrackedCommand.instances.clear();
+	}
+
+	@Test
+	public void testHedgeWins() throws InterruptedException {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy = Commands.create(TrackedCommand.class).hedge(10).result(events.resultCallback).build();
+		events.setTarget(proxy);
+		proxy.execute();
+
+		// When
+		awaitInstances(2);
+		TrackedCommand.instances.get(1).forceCompletion("hedge");
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(events.getResult(), equalTo((Object) "hedge"));
+		TrackedCommand.instances.get(0).assertStatus(false, 1, 0, 0, 1);
+	}
+
+	@Test
+	public void testFirstWins() throws InterruptedException {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy = Commands.create(TrackedCommand.class).hedge(10).result(events.resultCallback).execute();
+
+		// When
+		awaitInstances(2);
+		TrackedCommand.instances.get(0).forceCompletion();
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		events.assertCallbacks(1);
+		TrackedCommand.instances.get(1).assertStatus(false, 1, 0, 0, 1);
+	}
+
+	@Test
+	public void testExceptionWaitsForOtherInstance() throws InterruptedException {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy =
+				Commands.create(TrackedCommand.class).hedge(10).result(events.resultCallback).exception(events.exceptionCallback).execute();
+		awaitInstances(2);
+
+		// When
+		TrackedCommand.instances.get(0).forceException(new RuntimeException("This is expected"));
+
+		// Then
+		assertThat(proxy.isActive(), is(true));
+		TrackedCommand.instances.get(1).forceCompletion();
+		events.assertCallbacks(1, 0);
+	}
+
+	@Test
+	public void testNoHedgeBeforeDelay() throws InterruptedException {
+		// Given
+		CommandProxy proxy = Commands.create(TrackedCommand.class).hedge(10).execute();
+
+		// When
+		TrackedCommand.instances.get(0).forceCompletion();
+		Thread.sleep(50);
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(TrackedCommand.instances, hasSize(1));
+	}
+
+	@Test
+	public void testHedgeOffSchedulerThread() throws InterruptedException {
+		// Given
+		Commands.create(TrackedCommand.class).hedge(10).execute();
+
+		// When
+		awaitInstances(2);
+
+		// Then
+		assertThat(TrackedCommand.instances.get(0).thread, equalTo(Thread.currentThread()));
+		assertThat(TrackedCommand.instances.get(1).thread.getName().startsWith("spicelib-command-worker-"), is(true));
+		TrackedCommand.instances.get(1).forceCompletion();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testInstanceRejected() {
+		Commands.wrap(new SynchronousCommand()).hedge(10);
+	}
+
+	private void awaitInstances(int count) throws InterruptedException {
+		// The hedge gets created on a worker thread, wait until it is executing as well.
+		for (int i = 0; i < 100 && (TrackedCommand.instances.size() < count || !TrackedCommand.instances.get(count - 1).isActive()); i++) {
+			Thread.sleep(10);
+		}
+		assertThat(TrackedCommand.instances, hasSize(count));
+	}
+
+}
@@ -0,0 +1,157 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.base.DefaultCommandResult;
+import org.spicefactory.lib.command.builder.CommandGroupBuilder;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.data.DefaultCommandData;
+import org.spicefactory.lib.command.group.CommandSequence;
+import org.spicefactory.lib.command.impl.SynchronousCommand;
+import org.spicefactory.lib.command.lifecycle.DefaultCommandLifecycle;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+import org.spicefactory.lib.command.trace.CommandJournal;
+import org.spicefactory.lib.command.trace.JournalReplay;
+import org.spicefactory.lib.command.trace.JournalReplay.Execution;
+import org.spicefactory.lib.command.trace.JournalReplay.Statistics;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandJournalTest {
+
+	private File directory;
+
+	@Before
+	public void setup() throws Exception {
+		directory = File.createTempFile("journal", "");
+		directory.delete();
+		directory.mkdir();
+	}
+
+	@After
+	public void cleanup() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testReplay() throws Exception {
+		// Given
+		CommandJournal journal = new CommandJournal(directory, "test");
+		CommandProxy proxy = Commands.asSequence().add(new SynchronousCommand()).add(new SynchronousCommand()).add(new SynchronousCommand(true))
+				.build();
+		proxy.prepare(journal, new DefaultCommandData());
+
+		// When
+		proxy.execute();
+		journal.close();
+		List<Execution> executions = JournalReplay.read(directory, "test");
+		Map<String, Statistics> statistics = JournalReplay.statistics(executions);
+
+		// Then
+		assertThat(executions, hasSize(4));
+		assertThat(executions.get(0).getType(), equalTo(CommandSequence.class.getName()));
+		assertThat(executions.get(0).getOutcome(), equalTo("exception"));
+		Statistics commands = statistics.get(SynchronousCommand.class.getName());
+		assertThat(commands.getCount(), is(3));
+		assertThat(commands.getCompleted(), is(2));
+		assertThat(commands.getExceptions(), is(1));
+		assertThat(commands.getMax() >= commands.percentile(0.5), is(true));
+	}
+
+	@Test
+	public void testRollingSegments() throws Exception {
+		// Given
+		CommandJournal journal = new CommandJournal(directory, "test", 1024, 2, new DefaultCommandLifecycle());
+		CommandGroupBuilder builder = Commands.asSequence();
+		for (int i = 0; i < 100; i++) {
+			builder.add(new SynchronousCommand());
+		}
+		CommandProxy proxy = builder.build();
+		proxy.prepare(journal, new DefaultCommandData());
+
+		// When
+		proxy.execute();
+		journal.close();
+		List<Execution> executions = JournalReplay.read(directory, "test");
+
+		// Then
+		assertThat(directory.list().length, is(2));
+		assertThat(executions.size() < 100, is(true));
+		for (Execution execution : executions) {
+			assertThat(execution.getType().equals("?"), is(false));
+		}
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		// Given
+		final CommandJournal journal = new CommandJournal(directory, "test", 4096, 1000, new DefaultCommandLifecycle());
+		final int threads = 8;
+		final int commands = 1000;
+		final List<List<SynchronousCommand>> started = new ArrayList<List<SynchronousCommand>>();
+		for (int t = 0; t < threads; t++) {
+			started.add(new ArrayList<SynchronousCommand>());
+		}
+		final CountDownLatch allStarted = new CountDownLatch(threads);
+		Thread[] workers = new Thread[threads];
+
+		// When
+		for (int t = 0; t < threads; t++) {
+			final int index = t;
+			// Java 1.8 forward compatibility.
+			workers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					List<SynchronousCommand> own = started.get(index);
+					for (int i = 0; i < commands; i++) {
+						SynchronousCommand command = new SynchronousCommand();
+						journal.beforeExecution(command, null);
+						own.add(command);
+					}
+					allStarted.countDown();
+					try {
+						allStarted.await();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					// Completes the commands started by another thread, last started first.
+					List<SynchronousCommand> other = started.get((index + 1) % threads);
+					for (int i = other.size() - 1; i >= 0; i--) {
+						journal.afterCompletion(other.get(i), DefaultCommandResult.forCompletion(other.get(i), null));
+					}
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		journal.close();
+		List<Execution> executions = JournalReplay.read(directory, "test");
+
+		// Then
+		assertThat(executions, hasSize(threads * commands));
+		for (Execution execution : executions) {
+			assertThat(execution.getType(), equalTo(SynchronousCommand.class.getName()));
+		}
+	}
+
+}
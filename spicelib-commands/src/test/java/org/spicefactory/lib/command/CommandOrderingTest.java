@@ -0,0 +1,145 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.spicefactory.lib.command.base.ConcurrencyLimit;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.group.DurationHistory;
+import org.spicefactory.lib.command.impl.AsynchronousCommand;
+import org.spicefactory.lib.command.impl.FullCommand;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandOrderingTest {
+
+	@Test
+	public void testLongestFirst() {
+		// Given
+		DurationHistory history = new DurationHistory();
+		history.record(FullCommand.class, 1000);
+		history.record(AsynchronousCommand.class, 5000);
+		FullCommand shortCommand = new FullCommand();
+		AsynchronousCommand longCommand = new AsynchronousCommand();
+
+		// When
+		CommandProxy proxy = Commands.inParallel().add(shortCommand).add(longCommand).concurrency(new ConcurrencyLimit(1))
+				.longestFirst(history).execute();
+
+		// Then
+		assertThat(longCommand.isActive(), is(true));
+		assertThat(shortCommand.isActive(), is(false));
+
+		// When
+		longCommand.forceCompletion();
+
+		// Then
+		assertThat(shortCommand.isActive(), is(true));
+		assertThat(proxy.isActive(), is(true));
+	}
+
+	@Test
+	public void testUnknownFirst() {
+		// Given
+		DurationHistory history = new DurationHistory();
+		history.record(FullCommand.class, 5000);
+		FullCommand knownCommand = new FullCommand();
+		AsynchronousCommand unknownCommand = new AsynchronousCommand();
+
+		// When
+		Commands.inParallel().add(knownCommand).add(unknownCommand).concurrency(new ConcurrencyLimit(1)).longestFirst(history).execute();
+		unknownCommand.forceCompletion();
+
+		// Then
+		assertThat(history.getExpected(AsynchronousCommand.class), greaterThan(-1L));
+	}
+
+	@Test
+	public void testMovingAverage() {
+		// Given
+		DurationHistory history = new DurationHistory();
+
+		// When
+		history.record(FullCommand.class, 1000);
+		history.record(FullCommand.class, 2000);
+
+		// Then
+		assertThat(history.getExpected(FullCommand.class), equalTo(1200L));
+		assertThat(history.getExpected(AsynchronousCommand.class), equalTo(-1L));
+	}
+
+	@Test
+	public void testPersistence() throws IOException {
+		// Given
+		File file = File.createTempFile("durations", ".properties");
+		file.delete();
+		try {
+			DurationHistory history = new DurationHistory(file);
+			history.record(FullCommand.class, 1000);
+
+			// When
+			history.save();
+			DurationHistory reloaded = new DurationHistory(file);
+
+			// Then
+			assertThat(reloaded.getExpected(FullCommand.class), equalTo(1000L));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testConcurrentSaves() throws Exception {
+		// Given
+		File file = File.createTempFile("durations", ".properties");
+		file.delete();
+		try {
+			final DurationHistory history = new DurationHistory(file);
+			final AtomicInteger failures = new AtomicInteger(0);
+			Thread[] threads = new Thread[8];
+			for (int i = 0; i < threads.length; i++) {
+				// Java 1.8 forward compatibility.
+				threads[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						for (int j = 0; j < 500; j++) {
+							// Every 100th record saves the history as well.
+							history.record(FullCommand.class, 1000);
+							try {
+								history.save();
+							}
+							catch (IOException e) {
+								failures.incrementAndGet();
+							}
+						}
+					}
+				});
+			}
+
+			// When
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			// Then
+			assertThat(failures.get(), equalTo(0));
+			assertThat(new DurationHistory(file).getExpected(FullCommand.class), equalTo(1000L));
+		}
+		finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.data.CommandData;
+import org.spicefactory.lib.command.data.DefaultCommandData;
+import org.spicefactory.lib.command.events.CommandException;
+import org.spicefactory.lib.command.group.CommandPipeline;
+import org.spicefactory.lib.command.impl.CommandEventCounter;
+import org.spicefactory.lib.command.impl.DoublingCommand;
+import org.spicefactory.lib.command.impl.TrackedCommand;
+import org.spicefactory.lib.command.lifecycle.DefaultCommandLifecycle;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandPipelineTest {
+
+	private final Executor direct = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Before
+	public void resetCounters() {
+		DoublingCommand.executions.set(0);
+		TrackedCommand.instances.clear();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testResultsInItemOrder() throws InterruptedException {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy =
+				Commands.pipeline().stage(DoublingCommand.class, 4, 2).stage(DoublingCommand.class, 2, 2).items(Arrays.asList(1, 2, 3, 4, 5))
+						.build();
+		events.setTarget(proxy);
+
+		// When
+		proxy.execute();
+		for (int i = 0; i < 100 && proxy.isActive(); i++) {
+			Thread.sleep(10);
+		}
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat((List<Object>) events.getResults().get(0), contains((Object) 4, 8, 12, 16, 20));
+		assertThat(DoublingCommand.executions.get(), equalTo(10));
+	}
+
+	@Test
+	public void testBoundedQueue() {
+		// Given
+		CommandProxy proxy =
+				Commands.pipeline().executor(direct).stage(DoublingCommand.class, 1, 1).stage(TrackedCommand.class, 1, 1)
+						.items(Arrays.asList(1, 2, 3, 4, 5)).execute();
+
+		// Then
+		assertThat(DoublingCommand.executions.get(), equalTo(2));
+		assertThat(TrackedCommand.instances, hasSize(1));
+
+		// When
+		TrackedCommand.instances.get(0).forceCompletion();
+
+		// Then
+		assertThat(DoublingCommand.executions.get(), equalTo(3));
+		assertThat(TrackedCommand.instances, hasSize(2));
+		assertThat(proxy.isActive(), is(true));
+	}
+
+	@Test
+	public void testStageException() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy =
+				Commands.pipeline().executor(direct).stage(TrackedCommand.class, 2, 1).stage(DoublingCommand.class, 1, 2)
+						.items(Arrays.asList(1, -2, 3)).exception(events.exceptionCallback).execute();
+		TrackedCommand.instances.get(0).forceCompletion(-1);
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		events.assertCallbacks(0, 1);
+		assertThat(events.getExceptionFromCallback(), is(instanceOf(CommandException.class)));
+		TrackedCommand.instances.get(1).assertStatus(false, 1, 0, 0, 1);
+	}
+
+	@Test
+	public void testStagesReported() {
+		// Given
+		final List<Object> before = Collections.synchronizedList(new ArrayList<Object>());
+		final List<Object> after = Collections.synchronizedList(new ArrayList<Object>());
+		CommandPipeline pipeline = new CommandPipeline(direct);
+		pipeline.addStage(DoublingCommand.class, 1, 1);
+		pipeline.addStage(DoublingCommand.class, 1, 1);
+		pipeline.addItem(1);
+		pipeline.addItem(2);
+		pipeline.prepare(new DefaultCommandLifecycle() {
+			@Override
+			public void beforeExecution(Object command, CommandData data) {
+				before.add(command);
+			}
+
+			@Override
+			public void afterCompletion(Object command, CommandResult result) {
+				after.add(command);
+			}
+		}, new DefaultCommandData());
+
+		// When
+		pipeline.execute();
+
+		// Then
+		assertThat(pipeline.isActive(), is(false));
+		assertThat(DoublingCommand.executions.get(), equalTo(4));
+		assertThat(count(before, DoublingCommand.class), equalTo(4));
+		assertThat(count(after, DoublingCommand.class), equalTo(4));
+		assertThat(before, hasSize(after.size()));
+	}
+
+	private static int count(List<Object> commands, Class<?> type) {
+		int count = 0;
+		for (Object command : commands) {
+			if (type.isInstance(command)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
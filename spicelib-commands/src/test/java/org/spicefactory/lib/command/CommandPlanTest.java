@@ -0,0 +1,86 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.builder.CommandPlan;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.impl.CommandEventCounter;
+import org.spicefactory.lib.command.impl.FullCommand;
+import org.spicefactory.lib.command.impl.SynchronousCommand;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandPlanTest {
+
+	@Before
+	public void resetExecutions() {
+		SynchronousCommand.resetTotalExecutions();
+	}
+
+	@Test
+	public void testPlanExecutedTwice() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandPlan plan =
+				Commands.asSequence().create(SynchronousCommand.class).add(Commands.create(SynchronousCommand.class))
+						.allResults(events.resultCallback).compile();
+
+		// When
+		CommandProxy first = plan.execute();
+		CommandProxy second = plan.execute();
+
+		// Then
+		assertThat(first, not(sameInstance(second)));
+		assertThat(first.getTarget(), not(sameInstance(second.getTarget())));
+		assertThat(SynchronousCommand.totalExecutions, equalTo(4));
+		events.assertCallbacks(2);
+	}
+
+	@Test
+	public void testConcurrentRuns() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		CommandPlan plan =
+				Commands.inParallel().create(FullCommand.class).allResults(events.resultCallback).cancel(events.cancelCallback).compile();
+
+		// When
+		CommandProxy first = plan.execute();
+		CommandProxy second = plan.execute();
+		assertThat(first.isActive(), is(true));
+		assertThat(second.isActive(), is(true));
+
+		// Then
+		events.assertCallbacks(0);
+		first.cancel();
+		assertThat(second.isActive(), is(true));
+		events.assertCallbacks(0, 0, 1);
+	}
+
+	@Test
+	public void testBuilderStillUsable() {
+		// Given
+		CommandEventCounter events = new CommandEventCounter();
+		Commands.wrap(SynchronousCommand.class).result(events.resultCallback).compile().execute();
+
+		// When
+		Commands.wrap(new SynchronousCommand()).result(events.resultCallback).execute();
+
+		// Then
+		assertThat(SynchronousCommand.totalExecutions, equalTo(2));
+		events.assertCallbacks(2);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testInstanceRejected() {
+		Commands.asSequence().add(new SynchronousCommand()).compile();
+	}
+
+}
@@ -0,0 +1,164 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spicefactory.lib.command.base.PriorityCommandScheduler;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.impl.CommandEventCounter;
+import org.spicefactory.lib.command.impl.TrackedCommand;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandPriorityTest {
+
+	private final List<Integer> started = new CopyOnWriteArrayList<Integer>();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private PriorityCommandScheduler scheduler;
+
+	@Before
+	public void resetInstances() {
+		TrackedCommand.instances.clear();
+	}
+
+	@After
+	public void shutdown() {
+		release.countDown();
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testPriorityOrder() throws InterruptedException {
+		// Given
+		scheduler = new PriorityCommandScheduler(1, 0);
+		block();
+
+		// When
+		submit(1);
+		submit(5);
+		submit(3);
+		submit(5);
+		release.countDown();
+		awaitStarted(4);
+
+		// Then
+		assertThat(started, contains(5, 5, 3, 1));
+	}
+
+	@Test
+	public void testAgingPreventsStarvation() throws InterruptedException {
+		// Given
+		scheduler = new PriorityCommandScheduler(1, 10);
+		block();
+
+		// When
+		submit(0);
+		Thread.sleep(100);
+		submit(3);
+		release.countDown();
+		awaitStarted(2);
+
+		// Then
+		assertThat(started, contains(0, 3));
+	}
+
+	@Test
+	public void testPrioritizedCommand() throws InterruptedException {
+		// Given
+		scheduler = new PriorityCommandScheduler(1, 0);
+		block();
+		CommandEventCounter events = new CommandEventCounter();
+		CommandProxy proxy = Commands.create(TrackedCommand.class).priority(1, scheduler).result(events.resultCallback).build();
+		events.setTarget(proxy);
+
+		// When
+		proxy.execute();
+
+		// Then
+		assertThat(proxy.isActive(), is(true));
+		assertThat(TrackedCommand.instances, hasSize(0));
+
+		// When
+		release.countDown();
+		awaitInstances(1);
+		TrackedCommand.instances.get(0).forceCompletion("done");
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(events.getResult(), equalTo((Object) "done"));
+	}
+
+	@Test
+	public void testCancelWhileQueued() throws InterruptedException {
+		// Given
+		scheduler = new PriorityCommandScheduler(1, 0);
+		block();
+		CommandProxy proxy = Commands.create(TrackedCommand.class).priority(1, scheduler).execute();
+
+		// When
+		proxy.cancel();
+
+		// Then
+		assertThat(scheduler.getQueueSize(), equalTo(0));
+		release.countDown();
+		submit(0);
+		awaitStarted(1);
+		assertThat(TrackedCommand.instances, hasSize(0));
+	}
+
+	private void block() throws InterruptedException {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		// Java 1.8 forward compatibility.
+		scheduler.submit(new Runnable() {
+			@Override
+			public void run() {
+				blocked.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, Integer.MAX_VALUE);
+		blocked.await(5, TimeUnit.SECONDS);
+	}
+
+	private void submit(final int priority) {
+		// Java 1.8 forward compatibility.
+		scheduler.submit(new Runnable() {
+			@Override
+			public void run() {
+				started.add(priority);
+			}
+		}, priority);
+	}
+
+	private void awaitStarted(int count) throws InterruptedException {
+		for (int i = 0; i < 100 && started.size() < count; i++) {
+			Thread.sleep(10);
+		}
+		assertThat(started, hasSize(count));
+	}
+
+	private void awaitInstances(int count) throws InterruptedException {
+		for (int i = 0; i < 100 && (TrackedCommand.instances.size() < count || !TrackedCommand.instances.get(count - 1).isActive()); i++) {
+			Thread.sleep(10);
+		}
+		assertThat(TrackedCommand.instances, hasSize(count));
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.spicefactory.lib.command.base.TokenBucket;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.impl.AsynchronousCommand;
+import org.spicefactory.lib.command.impl.FullCommand;
+import org.spicefactory.lib.command.impl.ThreadRecordingCommand;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandRateLimitTest {
+
+	@Test
+	public void testBurst() {
+		// Given
+		TokenBucket bucket = new TokenBucket(1, 2);
+
+		// Then
+		assertThat(bucket.tryAcquire(), equalTo(0L));
+		assertThat(bucket.tryAcquire(), equalTo(0L));
+		assertThat(bucket.tryAcquire(), greaterThan(0L));
+	}
+
+	@Test
+	public void testStartsSpacedOut() throws Exception {
+		// Given
+		AsynchronousCommand com1 = new AsynchronousCommand();
+		AsynchronousCommand com2 = new AsynchronousCommand();
+		AsynchronousCommand com3 = new AsynchronousCommand();
+		long start = System.nanoTime();
+
+		// When
+		CommandProxy proxy = Commands.inParallel().add(com1).add(com2).add(com3).rateLimit(20).execute();
+
+		// Then
+		assertThat(com1.isActive(), is(true));
+		assertThat(com2.isActive(), is(false));
+		awaitActive(com3);
+		assertThat(com2.isActive(), is(true));
+		assertThat((System.nanoTime() - start) / 1000000, greaterThan(80L));
+
+		// When
+		com1.forceCompletion();
+		com2.forceCompletion();
+		com3.forceCompletion();
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+	}
+
+	@Test
+	public void testCancelWhileWaiting() throws Exception {
+		// Given
+		FullCommand com1 = new FullCommand();
+		FullCommand com2 = new FullCommand();
+		CommandProxy proxy = Commands.inParallel().add(com1).add(com2).rateLimit(5).execute();
+
+		// When
+		proxy.cancel();
+		Thread.sleep(300);
+
+		// Then
+		assertThat(com1.isActive(), is(false));
+		assertThat(com1.cancellations, equalTo(1));
+		assertThat(com2.executions, equalTo(0));
+	}
+
+	private void awaitActive(AsynchronousCommand com) throws InterruptedException {
+		for (int i = 0; i < 100 && !com.isActive(); i++) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testDelayedStartOffSchedulerThread() throws Exception {
+		// Given
+		ThreadRecordingCommand com1 = new ThreadRecordingCommand();
+		ThreadRecordingCommand com2 = new ThreadRecordingCommand();
+
+		// When
+		CommandProxy proxy = Commands.inParallel().add(com1).add(com2).rateLimit(20).execute();
+		for (int i = 0; i < 100 && proxy.isActive(); i++) {
+			Thread.sleep(10);
+		}
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(com1.thread, equalTo(Thread.currentThread()));
+		assertThat(com2.thread.getName().startsWith("spicelib-command-worker-"), is(true));
+	}
+
+}
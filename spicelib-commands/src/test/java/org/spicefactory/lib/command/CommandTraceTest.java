@@ -0,0 +1,134 @@
+package org.spicefactory.lib.command;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Test;
+import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.impl.AsynchronousCommand;
+import org.spicefactory.lib.command.impl.FullCommand;
+import org.spicefactory.lib.command.impl.SynchronousCommand;
+import org.spicefactory.lib.command.proxy.CommandProxy;
+import org.spicefactory.lib.command.trace.ChromeTraceRecorder;
+import org.spicefactory.lib.command.trace.CommandTracers;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CommandTraceTest {
+
+	@After
+	public void disableTracing() {
+		CommandTracers.setTracer(null);
+	}
+
+	@Test
+	public void testNestedSpans() throws IOException {
+		// Given
+		StringWriter out = new StringWriter();
+		ChromeTraceRecorder recorder = new ChromeTraceRecorder(out, 1.0);
+		CommandTracers.setTracer(recorder);
+		AsynchronousCommand async = new AsynchronousCommand();
+
+		// When
+		Commands.asSequence().add(new SynchronousCommand()).add(Commands.inParallel().add(async)).execute();
+		async.forceCompletion();
+		recorder.close();
+
+		// Then
+		String trace = out.toString();
+		assertThat(trace, startsWith("["));
+		assertThat(trace, endsWith("]\n"));
+		assertThat(trace, containsString("\"name\":\"CommandSequence\""));
+		assertThat(trace, containsString("\"name\":\"SynchronousCommand\""));
+		assertThat(trace, containsString("\"name\":\"AsynchronousCommand\""));
+		assertThat(trace, containsString("\"ph\":\"M\""));
+		assertThat(trace, containsString("\"parent\":1"));
+		assertThat(trace, containsString("\"outcome\":\"complete\""));
+	}
+
+	@Test
+	public void testCancelledSpans() throws IOException {
+		// Given
+		StringWriter out = new StringWriter();
+		ChromeTraceRecorder recorder = new ChromeTraceRecorder(out, 1.0);
+		CommandTracers.setTracer(recorder);
+
+		// When
+		CommandProxy proxy = Commands.inParallel().add(new FullCommand()).add(new FullCommand()).execute();
+		proxy.cancel();
+		recorder.close();
+
+		// Then
+		assertThat(out.toString(), containsString("\"outcome\":\"cancel\""));
+	}
+
+	@Test
+	public void testRootSpanRecorded() throws IOException {
+		// Given
+		StringWriter out = new StringWriter();
+		ChromeTraceRecorder recorder = new ChromeTraceRecorder(out, 1.0);
+		CommandTracers.setTracer(recorder);
+
+		// When
+		Commands.asSequence().add(new SynchronousCommand()).add(new SynchronousCommand()).execute();
+		recorder.close();
+
+		// Then
+		String trace = out.toString();
+		assertThat(trace, containsString("\"args\":{\"id\":1,\"outcome\":\"complete\"}"));
+		assertThat(count(trace, "\"ph\":\"X\""), equalTo(4));
+		assertThat(count(trace, "\"parent\":"), equalTo(3));
+	}
+
+	@Test
+	public void testSampledPerTree() throws IOException {
+		// Given
+		StringWriter out = new StringWriter();
+		ChromeTraceRecorder recorder = new ChromeTraceRecorder(out, 0.5);
+		CommandTracers.setTracer(recorder);
+
+		// When
+		for (int i = 0; i < 50; i++) {
+			Commands.asSequence().add(new SynchronousCommand()).add(new SynchronousCommand()).execute();
+		}
+		recorder.close();
+
+		// Then
+		String trace = out.toString();
+		assertThat(count(trace, "\"ph\":\"X\"") % 4, equalTo(0));
+		assertThat(count(trace, "\"ph\":\"X\"") - count(trace, "\"parent\":"), equalTo(count(trace, "\"ph\":\"X\"") / 4));
+	}
+
+	@Test
+	public void testNotSampled() throws IOException {
+		// Given
+		StringWriter out = new StringWriter();
+		ChromeTraceRecorder recorder = new ChromeTraceRecorder(out, 0.0);
+		CommandTracers.setTracer(recorder);
+
+		// When
+		Commands.asSequence().add(new SynchronousCommand()).add(new SynchronousCommand()).execute();
+		recorder.close();
+
+		// Then
+		assertThat(out.toString(), not(containsString("\"ph\":\"X\"")));
+	}
+
+	private static int count(String trace, String token) {
+		int count = 0;
+		for (int i = trace.indexOf(token); i >= 0; i = trace.indexOf(token, i + token.length())) {
+			count++;
+		}
+		return count;
+	}
+
+}
@@ -8,29 +8,44 @@ import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.spicefactory.lib.command.adapter.CommandAdapters;
+import org.spicefactory.lib.command.base.CommandPools;
 import org.spicefactory.lib.command.builder.CommandProxyBuilder;
 import org.spicefactory.lib.command.builder.Commands;
+import org.spicefactory.lib.command.events.CommandEvent;
 import org.spicefactory.lib.command.events.CommandException;
 import org.spicefactory.lib.command.events.CommandResultEvent;
 import org.spicefactory.lib.command.impl.AsyncResultProcessor;
 import org.spicefactory.lib.command.impl.AsyncSwingCommand;
+import org.spicefactory.lib.command.impl.BackgroundSwingCommand;
 import org.spicefactory.lib.command.impl.CancellableSwingCommand;
 import org.spicefactory.lib.command.impl.CommandEventCounter;
 import org.spicefactory.lib.command.impl.CommandWithProcessor;
+import org.spicefactory.lib.command.impl.IoSwingCommand;
 import org.spicefactory.lib.command.impl.SyncResultProcessor;
 import org.spicefactory.lib.command.impl.SyncSwingCommand;
 import org.spicefactory.lib.command.impl.SyncSwingConstructorInjectionCommand;
 import org.spicefactory.lib.command.impl.SyncSwingDataCommand;
 import org.spicefactory.lib.command.impl.SyncSwingOptionalDataCommand;
+import org.spicefactory.lib.command.impl.SyncSwingResultCommand;
+import org.spicefactory.lib.command.light.LightCommandAdapterFactory;
 import org.spicefactory.lib.command.model.AsyncResult;
 import org.spicefactory.lib.command.model.CommandModel;
 import org.spicefactory.lib.command.proxy.CommandProxy;
+import org.spicefactory.lib.command.proxy.DefaultCommandProxy;
 import org.spicefactory.lib.command.result.ResultProcessors;
 import org.spicefactory.lib.command.swing.SwingCommandAdapterFactory;
+import org.spicefactory.lib.event.EventListener;
 
 /**
  * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
@@ -211,7 +226,202 @@ public class SwingCommandTest {
 	}
 
 	@Test
-	public void testCancellationOnTarget() {
+	public void testResultProcessor() throws Exception {
+		// Given
+		AsyncResult async = new AsyncResult();
+		build(new SyncSwingResultCommand(async));
+		assertInactive();
+
+		CountDownLatch completed = completionOf(proxy);
+
+		// When
+		proxy.execute();
+		assertThat(async.awaitHandler(1, TimeUnit.SECONDS), is(true));
+		async.invokeCompleteHandler("foo");
+		awaitCompletion(completed);
+
+		// Then
+		assertResult("foo");
+	}
+
+	@Test
+	public void testCustomExecutor() throws Exception {
+		// Given
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		final CountDownLatch blocked = new CountDownLatch(1);
+		// Java 1.8 forward compatibility.
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					blocked.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		SwingCommandAdapterFactory factory = new SwingCommandAdapterFactory(executor);
+		BackgroundSwingCommand first = new BackgroundSwingCommand();
+		BackgroundSwingCommand second = new BackgroundSwingCommand();
+		CommandProxy firstProxy = proxyFor(factory.createAdapter(first));
+		CommandProxy secondProxy = proxyFor(factory.createAdapter(second));
+		CountDownLatch completed = completionOf(firstProxy, secondProxy);
+
+		// When
+		firstProxy.execute();
+		secondProxy.execute();
+
+		// Then
+		assertThat(factory.getQueueDepth(), is(2));
+		assertThat(factory.getActiveCount(), is(0));
+
+		// When
+		blocked.countDown();
+		awaitCompletion(completed);
+
+		// Then
+		assertThat(firstProxy.isActive(), is(false));
+		assertThat(secondProxy.isActive(), is(false));
+		assertThat(factory.getQueueDepth(), is(0));
+		assertThat(factory.getActiveCount(), is(0));
+		assertThat(first.thread.getName().startsWith("pool-"), is(true));
+		executor.shutdown();
+	}
+
+	@Test
+	public void testNamedPool() throws Exception {
+		// Given
+		CommandPools.register("io", 1);
+		SwingCommandAdapterFactory factory = new SwingCommandAdapterFactory();
+		IoSwingCommand command = new IoSwingCommand();
+		CommandProxy proxy = proxyFor(factory.createAdapter(command));
+		CountDownLatch completed = completionOf(proxy);
+
+		try {
+			// When
+			proxy.execute();
+			awaitCompletion(completed);
+
+			// Then
+			assertThat(proxy.isActive(), is(false));
+			assertThat(command.thread.getName(), equalTo("spicelib-pool-io-1"));
+			assertThat(factory.getQueueDepth("io"), is(0));
+			assertThat(factory.getActiveCount("io"), is(0));
+		}
+		finally {
+			CommandPools.shutdown("io");
+		}
+	}
+
+	@Test
+	public void testPoolRegisteredAgain() throws Exception {
+		// Given
+		CommandPools.register("io", 1);
+		SwingCommandAdapterFactory factory = new SwingCommandAdapterFactory();
+		factory.createAdapter(new IoSwingCommand());
+		CommandPools.shutdown("io");
+		ExecutorService pool = CommandPools.register("io", 1);
+		IoSwingCommand command = new IoSwingCommand();
+		CommandProxy proxy = proxyFor(factory.createAdapter(command));
+		CountDownLatch completed = completionOf(proxy);
+
+		try {
+			// When
+			proxy.execute();
+			awaitCompletion(completed);
+
+			// Then
+			assertThat(proxy.isActive(), is(false));
+			assertThat(command.thread, notNullValue());
+			assertThat(pool.isShutdown(), is(false));
+		}
+		finally {
+			CommandPools.shutdown("io");
+		}
+	}
+
+	@Test
+	public void testNamedPoolForLightCommands() throws Exception {
+		// Given
+		CommandPools.register("io", 1);
+		IoSwingCommand command = new IoSwingCommand();
+		CommandProxy proxy = proxyFor(new LightCommandAdapterFactory().createAdapter(command));
+		CountDownLatch completed = completionOf(proxy);
+
+		try {
+			// When
+			proxy.execute();
+			awaitCompletion(completed);
+
+			// Then
+			assertThat(proxy.isActive(), is(false));
+			assertThat(command.thread.getName(), equalTo("spicelib-pool-io-1"));
+		}
+		finally {
+			CommandPools.shutdown("io");
+		}
+	}
+
+	@Test
+	public void testLightCommandWithoutPool() {
+		// Given
+		BackgroundSwingCommand command = new BackgroundSwingCommand();
+		CommandProxy proxy = proxyFor(new LightCommandAdapterFactory().createAdapter(command));
+
+		// When
+		proxy.execute();
+
+		// Then
+		assertThat(proxy.isActive(), is(false));
+		assertThat(command.thread, sameInstance(Thread.currentThread()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnknownPoolForLightCommands() {
+		new LightCommandAdapterFactory().createAdapter(new IoSwingCommand());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnknownPool() {
+		new SwingCommandAdapterFactory().createAdapter(new IoSwingCommand());
+	}
+
+	@Test
+	public void testCancelledWhileQueued() throws Exception {
+		// Given
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		final CountDownLatch blocked = new CountDownLatch(1);
+		// Java 1.8 forward compatibility.
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					blocked.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		SwingCommandAdapterFactory factory = new SwingCommandAdapterFactory(executor);
+		BackgroundSwingCommand command = new BackgroundSwingCommand();
+		CommandProxy commandProxy = proxyFor(factory.createAdapter(command));
+		commandProxy.execute();
+
+		// When
+		commandProxy.cancel();
+		flushEventQueue();
+
+		// Then
+		assertThat(factory.getQueueDepth(), is(0));
+		blocked.countDown();
+		executor.shutdown();
+		assertThat(command.thread, is(nullValue()));
+	}
+
+	@Test
+	public void testCancellationOnTarget() throws Exception {
 		// Given
 		CancellableSwingCommand async = new CancellableSwingCommand();
 		build(async);
@@ -221,6 +431,7 @@ public class SwingCommandTest {
 
 		// When
 		async.cancel();
+		flushEventQueue();
 
 		// Then
 		assertCancelled();
@@ -271,6 +482,48 @@ public class SwingCommandTest {
 		assertCompleted();
 	}
 
+	private CommandProxy proxyFor(Command command) {
+		DefaultCommandProxy commandProxy = new DefaultCommandProxy();
+		commandProxy.setTarget(command);
+		return commandProxy;
+	}
+
+	/**
+	 * Registers a listener released once all the specified proxies completed, failed or got cancelled.
+	 */
+	private CountDownLatch completionOf(CommandProxy... proxies) {
+		final CountDownLatch latch = new CountDownLatch(proxies.length);
+		// Java 1.8 forward compatibility.
+		EventListener<CommandEvent> listener = new EventListener<CommandEvent>() {
+			@Override
+			public void process(CommandEvent event) {
+				latch.countDown();
+			}
+		};
+		for (CommandProxy proxy : proxies) {
+			proxy.addEventListener(CommandResultEvent.COMPLETE, listener);
+			proxy.addEventListener(CommandResultEvent.EXCEPTION, listener);
+			proxy.addEventListener(CommandEvent.CANCEL, listener);
+		}
+		return latch;
+	}
+
+	private void awaitCompletion(CountDownLatch completed) throws Exception {
+		assertThat(completed.await(1, TimeUnit.SECONDS), is(true));
+		// The completion is dispatched on the EDT, a single task queued behind it runs once all listeners are done.
+		flushEventQueue();
+	}
+
+	private void flushEventQueue() throws Exception {
+		// Completions are handed over with invokeLater, so an empty task runs after them.
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				// Nothing to do.
+			}
+		});
+	}
+
 	private void build(Object com) {
 		proxy = prepare(Commands.wrap(com)).build();
 		events.setTarget(proxy);
@@ -0,0 +1,18 @@
+package org.spicefactory.lib.command.impl;
+
+import org.spicefactory.lib.command.Async;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+@Async
+public class BackgroundSwingCommand {
+
+	public Thread thread;
+
+	// Executed in background thread.
+	public Object execute() {
+		thread = Thread.currentThread();
+		return "done";
+	}
+}
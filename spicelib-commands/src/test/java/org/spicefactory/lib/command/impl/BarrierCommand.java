@@ -0,0 +1,32 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.spicefactory.lib.command.Command;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class BarrierCommand implements Command {
+
+	private final CyclicBarrier barrier;
+
+	public volatile Thread thread;
+
+	public BarrierCommand(CyclicBarrier barrier) {
+		this.barrier = barrier;
+	}
+
+	// Completes only once all the commands sharing the barrier run at the same time.
+	@Override
+	public void execute() {
+		try {
+			barrier.await(5, TimeUnit.SECONDS);
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Commands did not run concurrently.", e);
+		}
+		thread = Thread.currentThread();
+	}
+}
@@ -0,0 +1,36 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.spicefactory.lib.command.base.AbstractAsyncCommand;
+import org.spicefactory.lib.command.base.Deadline;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class BudgetCommand extends AbstractAsyncCommand {
+
+	private final Deadline deadline;
+
+	public BudgetCommand(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		complete(deadline.remaining(TimeUnit.MILLISECONDS));
+	}
+
+}
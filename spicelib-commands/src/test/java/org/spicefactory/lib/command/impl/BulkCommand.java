@@ -0,0 +1,46 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.spicefactory.lib.command.base.AbstractAsyncCommand;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class BulkCommand extends AbstractAsyncCommand {
+
+	public static final List<List<?>> batches = new CopyOnWriteArrayList<List<?>>();
+	public static final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+
+	private final List<?> inputs;
+
+	public BulkCommand(List<?> inputs) {
+		this.inputs = inputs;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		threads.add(Thread.currentThread());
+		batches.add(inputs);
+		List<Object> results = new ArrayList<Object>(inputs.size());
+		for (Object input : inputs) {
+			results.add(input + "!");
+		}
+		complete(results);
+	}
+
+}
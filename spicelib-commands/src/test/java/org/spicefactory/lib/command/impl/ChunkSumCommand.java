@@ -0,0 +1,26 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.List;
+
+import org.spicefactory.lib.command.base.AbstractAsyncCommand;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class ChunkSumCommand extends AbstractAsyncCommand {
+
+	private final List<Integer> chunk;
+
+	public ChunkSumCommand(List<Integer> chunk) {
+		this.chunk = chunk;
+	}
+
+	@Override
+	protected void doExecute() {
+		int sum = 0;
+		for (int item : chunk) {
+			sum += item;
+		}
+		complete(sum);
+	}
+}
@@ -152,6 +152,11 @@ public class CommandEventCounter {
 		return exceptions.get(0);
 	}
 
+	public Object getResultFromCallback() {
+		assertThat(resultCallbacks, hasSize(1));
+		return resultCallbacks.get(0);
+	}
+
 	public Object getExceptionFromCallback() {
 		assertThat(exceptionCallbacks, hasSize(1));
 		return exceptionCallbacks.get(0);
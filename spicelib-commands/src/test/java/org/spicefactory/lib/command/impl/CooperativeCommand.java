@@ -0,0 +1,39 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.spicefactory.lib.command.base.CancellationToken;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class CooperativeCommand {
+
+	public final CountDownLatch started = new CountDownLatch(1);
+	public volatile boolean stopped;
+
+	private final boolean blocking;
+
+	public CooperativeCommand(boolean blocking) {
+		this.blocking = blocking;
+	}
+
+	public Object execute(CancellationToken token) {
+		token.setInterruptible(blocking);
+		started.countDown();
+		if (blocking) {
+			try {
+				Thread.sleep(10000); // Simulates a blocking call.
+			}
+			catch (InterruptedException e) {
+				stopped = token.isCancellationRequested();
+			}
+		} else {
+			while (!token.isCancellationRequested()) {
+				// Simulates a CPU-bound computation.
+			}
+			stopped = true;
+		}
+		return "late";
+	}
+}
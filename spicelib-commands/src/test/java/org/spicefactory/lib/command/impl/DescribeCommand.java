@@ -0,0 +1,40 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spicefactory.lib.command.base.AbstractAsyncCommand;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class DescribeCommand extends AbstractAsyncCommand {
+
+	public static final AtomicInteger executions = new AtomicInteger(0);
+
+	private final Integer value;
+	private final Long square;
+
+	public DescribeCommand(Integer value, Long square) {
+		this.value = value;
+		this.square = square;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		executions.incrementAndGet();
+		complete(new StringBuilder().append(value).append('^').append(2).append('=').append(square));
+	}
+
+}
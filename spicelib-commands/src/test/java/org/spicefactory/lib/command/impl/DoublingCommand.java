@@ -0,0 +1,42 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spicefactory.lib.command.base.AbstractAsyncCommand;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class DoublingCommand extends AbstractAsyncCommand {
+
+	public static final AtomicInteger executions = new AtomicInteger(0);
+
+	private final Integer value;
+
+	public DoublingCommand(Integer value) {
+		this.value = value;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		executions.incrementAndGet();
+		if (value < 0) {
+			exception(new IllegalArgumentException("This is expected"));
+		} else {
+			complete(value * 2);
+		}
+	}
+
+}
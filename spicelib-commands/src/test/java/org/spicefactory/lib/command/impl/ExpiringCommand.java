@@ -0,0 +1,16 @@
+package org.spicefactory.lib.command.impl;
+
+import org.spicefactory.lib.command.base.CancellationToken;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class ExpiringCommand {
+
+	public Object execute(CancellationToken token) {
+		while (true) {
+			// Simulates a computation checking the token until its deadline expires.
+			token.throwIfCancellationRequested();
+		}
+	}
+}
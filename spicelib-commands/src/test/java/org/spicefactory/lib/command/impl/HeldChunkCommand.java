@@ -0,0 +1,36 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.spicefactory.lib.command.base.AbstractAsyncCommand;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class HeldChunkCommand extends AbstractAsyncCommand {
+
+	public static final List<HeldChunkCommand> instances = new CopyOnWriteArrayList<HeldChunkCommand>();
+
+	public final List<Integer> chunk;
+
+	public HeldChunkCommand(List<Integer> chunk) {
+		this.chunk = chunk;
+	}
+
+	/**
+	 * Completes this command with the sum of its chunk.
+	 */
+	public void release() {
+		int sum = 0;
+		for (int item : chunk) {
+			sum += item;
+		}
+		complete(sum);
+	}
+
+	@Override
+	protected void doExecute() {
+		instances.add(this);
+	}
+}
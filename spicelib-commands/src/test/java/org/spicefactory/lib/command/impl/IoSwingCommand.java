@@ -0,0 +1,11 @@
+package org.spicefactory.lib.command.impl;
+
+import org.spicefactory.lib.command.Async;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+@Async(pool = "io")
+public class IoSwingCommand extends BackgroundSwingCommand {
+
+}
@@ -0,0 +1,38 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spicefactory.lib.command.base.AbstractAsyncCommand;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class ParseCommand extends AbstractAsyncCommand {
+
+	public static final AtomicInteger executions = new AtomicInteger(0);
+
+	private final String value;
+
+	public ParseCommand(String value) {
+		this.value = value;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		executions.incrementAndGet();
+		complete(Integer.valueOf(value));
+	}
+
+}
@@ -0,0 +1,38 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spicefactory.lib.command.base.AbstractAsyncCommand;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class SquareCommand extends AbstractAsyncCommand {
+
+	public static final AtomicInteger executions = new AtomicInteger(0);
+
+	private final Integer value;
+
+	public SquareCommand(Integer value) {
+		this.value = value;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Package-private.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Public API.
+	/////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////
+	// Internal implementation.
+	/////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected void doExecute() {
+		executions.incrementAndGet();
+		complete((long) value * value);
+	}
+
+}
@@ -0,0 +1,16 @@
+package org.spicefactory.lib.command.impl;
+
+import org.spicefactory.lib.command.Command;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class ThreadRecordingCommand implements Command {
+
+	public volatile Thread thread;
+
+	@Override
+	public void execute() {
+		thread = Thread.currentThread();
+	}
+}
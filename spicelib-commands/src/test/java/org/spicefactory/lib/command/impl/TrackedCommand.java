@@ -0,0 +1,20 @@
+package org.spicefactory.lib.command.impl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author Sylvain Lecoy <sylvain.lecoy@swissquote.ch>
+ */
+public class TrackedCommand extends FullCommand {
+
+	public static final List<TrackedCommand> instances = new CopyOnWriteArrayList<TrackedCommand>();
+
+	/** The thread that created this instance. */
+	public final Thread thread = Thread.currentThread();
+
+	public TrackedCommand() {
+		instances.add(this);
+	}
+
+}
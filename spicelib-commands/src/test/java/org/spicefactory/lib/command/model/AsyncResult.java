@@ -1,5 +1,8 @@
 package org.spicefactory.lib.command.model;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.spicefactory.lib.command.callback.ExceptionCallback;
 import org.spicefactory.lib.command.callback.ResultCallback;
 
@@ -7,10 +10,20 @@ public class AsyncResult {
 
 	private ResultCallback<Object> complete;
 	private ExceptionCallback<Throwable> exception;
+	private final CountDownLatch handled = new CountDownLatch(1);
 
 	public void addHandler(ResultCallback<Object> result, ExceptionCallback<Throwable> exception) {
 		this.complete = result;
 		this.exception = exception;
+		handled.countDown();
+	}
+
+	public boolean hasHandler() {
+		return complete != null;
+	}
+
+	public boolean awaitHandler(long timeout, TimeUnit unit) throws InterruptedException {
+		return handled.await(timeout, unit);
 	}
 
 	public void invokeCompleteHandler(Object result) {